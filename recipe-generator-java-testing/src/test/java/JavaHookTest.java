@@ -1,6 +1,7 @@
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -13,6 +14,7 @@ import ca.derekcormier.recipe.BaseIngredientHook;
 import ca.derekcormier.recipe.Cake;
 import testdomain.hooks.AbstractAllParamsIngredientHook;
 import testdomain.hooks.AbstractEmptyIngredientHook;
+import testdomain.hooks.AbstractIngredientWithCakeKeysHook;
 import testdomain.hooks.AbstractIngredientWithCompoundOptionalHook;
 import testdomain.hooks.AbstractIngredientWithConstantHook;
 import testdomain.hooks.AbstractIngredientWithDefaultRequiredNoInitializersHook;
@@ -27,6 +29,7 @@ import testdomain.hooks.AbstractIngredientWithStringDefaultContainingQuotesHook;
 import testdomain.hooks.AbstractKeyedTestIngredientHook;
 import testdomain.hooks.AllParamsIngredientData;
 import testdomain.hooks.EmptyIngredientData;
+import testdomain.hooks.IngredientWithCakeKeysData;
 import testdomain.hooks.IngredientWithCompoundOptionalData;
 import testdomain.hooks.IngredientWithDefaultRequiredNoInitializersData;
 import testdomain.hooks.IngredientWithNullStringDefaultData;
@@ -40,6 +43,11 @@ import testdomain.hooks.IngredientWithStringDefaultContainingQuotesData;
 import testdomain.hooks.KeyedTestIngredientData;
 import testdomain.hooks.TestEnum;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class JavaHookTest {
     @Test
     public void testGeneration_generatesIngredientHook_emptyIngredient() {
@@ -282,6 +290,41 @@ public class JavaHookTest {
         verify(spy).run();
     }
 
+    @Test
+    public void testBake_bakesRunOfIngredientsAsBatch() {
+        List<Integer> batches = new ArrayList<>();
+        BackendOven oven = new BackendOven();
+        oven.registerHook(new AbstractEmptyIngredientHook() {
+            @Override
+            public void bake(EmptyIngredientData data, Cake cake) {}
+
+            @Override
+            public void bakeBatch(List<EmptyIngredientData> data, Cake cake) {
+                batches.add(data.size());
+            }
+        });
+
+        oven.bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"EmptyIngredient\":{}}"));
+        assertEquals(Collections.singletonList(2), batches);
+    }
+
+    @Test
+    public void testGeneration_hookDeclaresCakeKeys() {
+        AbstractIngredientWithCakeKeysHook hook = new AbstractIngredientWithCakeKeysHook() {
+            @Override
+            public void bake(IngredientWithCakeKeysData data, Cake cake) {}
+        };
+        assertEquals(Arrays.asList("user.id", "group"), hook.getCakeReads());
+        assertEquals(Collections.singletonList("user.roles"), hook.getCakePublishes());
+
+        AbstractEmptyIngredientHook undeclared = new AbstractEmptyIngredientHook() {
+            @Override
+            public void bake(EmptyIngredientData data, Cake cake) {}
+        };
+        assertNull(undeclared.getCakeReads());
+        assertNull(undeclared.getCakePublishes());
+    }
+
     @Test
     public void testBake_deserialization_ingredientWithRequired() {
         Runnable spy = spy(Runnable.class);
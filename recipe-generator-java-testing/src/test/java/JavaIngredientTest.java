@@ -1,5 +1,6 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -17,6 +18,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 
 import ca.derekcormier.recipe.Cake;
@@ -25,6 +27,7 @@ import ca.derekcormier.recipe.Oven;
 import ca.derekcormier.recipe.Recipe;
 import testdomain.ingredients.AllParamsIngredient;
 import testdomain.ingredients.EmptyIngredient;
+import testdomain.ingredients.IngredientWithCakeKeys;
 import testdomain.ingredients.IngredientWithCompoundOptional;
 import testdomain.ingredients.IngredientWithCompoundOptionalWithOneParam;
 import testdomain.ingredients.IngredientWithDefaultRequired;
@@ -466,6 +469,24 @@ public class JavaIngredientTest {
         ));
     }
 
+    @Test
+    public void testGeneration_ingredientWithCakeKeys() {
+        assertEquals(Arrays.asList("user.id", "group"), new IngredientWithCakeKeys().getCakeReads());
+        assertEquals(Arrays.asList("user.roles"), new IngredientWithCakeKeys().getCakePublishes());
+        assertNull(new EmptyIngredient().getCakeReads());
+        assertNull(new EmptyIngredient().getCakePublishes());
+    }
+
+    @Test
+    public void testBake_serialization_ingredientWithCakeKeys() {
+        setupDispatcherSpy("TestDomain");
+        oven.bake(Recipe.prepare(
+            new IngredientWithCakeKeys()
+        ));
+
+        assertDispatchedJson(payloadJson("{\"IngredientWithCakeKeys\":{}}"));
+    }
+
     @Test
     public void testBake_recipeWithContextButNoIngredientsDoesNotDispatch() {
         setupDispatcherSpy("TestDomain");
@@ -492,7 +513,7 @@ public class JavaIngredientTest {
 
         oven.bake(Recipe.context(new KeyedTestIngredient()));
 
-        assertDispatchedJson("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"KeyedTestIngredient\":{}}]}},\"cake\":{}}");
+        assertDispatchedJson("{\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"KeyedTestIngredient\":{}}]}},\"cake\":{}}");
     }
 
     @Test
@@ -501,7 +522,7 @@ public class JavaIngredientTest {
 
         oven.bake(Recipe.context(new KeyedTestIngredient().keyed("foo")));
 
-        assertDispatchedJson("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"KeyedTestIngredient\":{\"key\":\"foo\"}}]}},\"cake\":{}}");
+        assertDispatchedJson("{\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"KeyedTestIngredient\":{\"key\":\"foo\"}}]}},\"cake\":{}}");
     }
 
     @Test
@@ -512,7 +533,7 @@ public class JavaIngredientTest {
             new EmptyIngredient()
         ));
 
-        assertDispatchedJson("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"KeyedTestIngredient\":{\"key\":\"foo\"}},{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}}]}},\"cake\":{}}");
+        assertDispatchedJson("{\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"KeyedTestIngredient\":{\"key\":\"foo\"}},{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}}]}},\"cake\":{}}");
     }
 
     @Test
@@ -574,10 +595,10 @@ public class JavaIngredientTest {
     }
 
     private String payloadJson(String... ingredientJson) {
-        return "{\"recipe\":{\"Recipe\":{\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}},\"cake\":{}}";
+        return "{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}}}";
     }
 
     private String payloadJsonWithCake(String cake, String... ingredientJson) {
-        return "{\"recipe\":{\"Recipe\":{\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}},\"cake\":" + cake + "}";
+        return "{\"cake\":" + cake + ",\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}}}";
     }
 }
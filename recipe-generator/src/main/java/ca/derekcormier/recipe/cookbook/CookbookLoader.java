@@ -6,6 +6,7 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +45,7 @@ public class CookbookLoader {
         validateConstantNames(cookbook);
         validateNoDuplicateConstantNames(cookbook);
         validateDefaultKey(cookbook);
+        validateCakeKeys(cookbook);
     }
 
     private void validateEnums(Cookbook cookbook) {
@@ -184,6 +186,18 @@ public class CookbookLoader {
         }
     }
 
+    private void validateCakeKeys(Cookbook cookbook) {
+        for (Ingredient ingredient: cookbook.getIngredients()) {
+            List<String> keys = new ArrayList<>(ingredient.getReads());
+            keys.addAll(ingredient.getPublishes());
+            for (String key: keys) {
+                if (key == null || Arrays.stream(key.split("\\.", -1)).anyMatch(subKey -> subKey.trim().isEmpty()) || key.contains("\"") || key.contains("\\")) {
+                    throw new RuntimeException("ingredient '" + ingredient.getName() + "' has invalid cake key " + key);
+                }
+            }
+        }
+    }
+
     private void validateNoDuplicateEnumNames(Cookbook cookbook) {
         Set<String> enumNames = cookbook.getEnums().stream().map(Enum::getName).collect(Collectors.toSet());
         if (enumNames.size() != cookbook.getEnums().size()) {
@@ -16,6 +16,9 @@ public class Ingredient {
     private final List<Initializer> initializers;
     private final List<Optional> optionals;
     private final Map<String,String> constants;
+    private final boolean cakeAccessDeclared;
+    private final List<String> reads;
+    private final List<String> publishes;
 
     @JsonCreator
     public Ingredient(
@@ -25,7 +28,9 @@ public class Ingredient {
         @JsonProperty(value = "required") List<Required> required,
         @JsonProperty(value = "initializers") List<Initializer> initializers,
         @JsonProperty(value = "optionals") List<Optional> optionals,
-        @JsonProperty(value = "constants") Map<String,String> constants
+        @JsonProperty(value = "constants") Map<String,String> constants,
+        @JsonProperty(value = "reads") List<String> reads,
+        @JsonProperty(value = "publishes") List<String> publishes
     ) {
         this.name = name;
         this.keyed = keyed;
@@ -34,6 +39,9 @@ public class Ingredient {
         this.initializers = initializers == null ? new ArrayList<>() : initializers;
         this.optionals = optionals == null ? new ArrayList<>() : optionals;
         this.constants = constants == null ? new HashMap<>() : constants;
+        this.cakeAccessDeclared = reads != null || publishes != null;
+        this.reads = reads == null ? new ArrayList<>() : reads;
+        this.publishes = publishes == null ? new ArrayList<>() : publishes;
     }
 
     public String getName() {
@@ -63,4 +71,17 @@ public class Ingredient {
     public Map<String,String> getConstants() {
         return constants;
     }
+
+    // whether the cookbook declares the cake keys the ingredient reads or publishes, even if none
+    public boolean isCakeAccessDeclared() {
+        return cakeAccessDeclared;
+    }
+
+    public List<String> getReads() {
+        return reads;
+    }
+
+    public List<String> getPublishes() {
+        return publishes;
+    }
 }
@@ -1013,6 +1013,45 @@ public class CookbookLoaderTest {
         assertEquals("required", cookbook.getIngredients().get(0).getDefaultKey());
     }
 
+    @Test
+    public void testLoad_ingredientWithCakeKeys() {
+        String yaml = String.join("\n",
+            "ingredients:",
+            "  - name: 'ingredient'",
+            "    reads: ['user.id']",
+            "    publishes: []"
+        );
+
+        Cookbook cookbook = loader.load(toStream(yaml));
+        assertTrue(cookbook.getIngredients().get(0).isCakeAccessDeclared());
+        assertEquals(1, cookbook.getIngredients().get(0).getReads().size());
+        assertEquals("user.id", cookbook.getIngredients().get(0).getReads().get(0));
+        assertEquals(0, cookbook.getIngredients().get(0).getPublishes().size());
+    }
+
+    @Test
+    public void testLoad_cakeKeysUndeclaredByDefault() {
+        String yaml = String.join("\n",
+            "ingredients:",
+            "  - name: 'ingredient'"
+        );
+
+        Cookbook cookbook = loader.load(toStream(yaml));
+        assertFalse(cookbook.getIngredients().get(0).isCakeAccessDeclared());
+        assertEquals(0, cookbook.getIngredients().get(0).getReads().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testLoad_throwsOnEmptySubKeyInCakeKey() {
+        String yaml = String.join("\n",
+            "ingredients:",
+            "  - name: 'ingredient'",
+            "    publishes: ['user..id']"
+        );
+
+        loader.load(toStream(yaml));
+    }
+
     private InputStream toStream(String str) {
         return new ByteArrayInputStream(str.getBytes());
     }
@@ -0,0 +1,111 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// A suite baking many three-segment recipes at once against backends that take a millisecond to answer: blocking
+// bakes on a pool of threads, or asynchronous bakes whose replies are all completed by one scheduler thread.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncBakeBenchmark {
+    private static final String[] DOMAINS = {"A", "B"};
+
+    @Param({"1000"})
+    public int bakes;
+
+    @Param({"16"})
+    public int threads;
+
+    private Oven oven;
+    private Oven asyncOven;
+    private ExecutorService pool;
+    private ScheduledExecutorService scheduler;
+
+    @Setup
+    public void setup() {
+        pool = Executors.newFixedThreadPool(threads);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        oven = new Oven();
+        asyncOven = new Oven();
+        for (String domain: DOMAINS) {
+            oven.addDispatcher(domain, payload -> {
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "{}";
+            });
+            asyncOven.addAsyncDispatcher(domain, payload -> {
+                CompletableFuture<String> reply = new CompletableFuture<>();
+                scheduler.schedule(() -> reply.complete("{}"), 1, TimeUnit.MILLISECONDS);
+                return reply;
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public void bakeOnThreadPool() throws Exception {
+        List<Future<Cake>> cakes = new ArrayList<>();
+        for (int i = 0; i < bakes; i++) {
+            cakes.add(pool.submit(() -> oven.bake(recipe())));
+        }
+        for (Future<Cake> cake: cakes) {
+            cake.get();
+        }
+    }
+
+    @Benchmark
+    public void bakeAsync() {
+        List<CompletableFuture<Cake>> cakes = new ArrayList<>();
+        for (int i = 0; i < bakes; i++) {
+            cakes.add(asyncOven.bakeAsync(recipe()));
+        }
+        CompletableFuture.allOf(cakes.toArray(new CompletableFuture[0])).join();
+    }
+
+    private static Recipe recipe() {
+        return Recipe.prepare(
+            new TestIngredient("A"),
+            new TestIngredient("B"),
+            new TestIngredient("A")
+        );
+    }
+
+    public static class TestIngredient extends Ingredient {
+        public TestIngredient(String domain) {
+            super("TestIngredient", domain);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A suite baking its independent setup recipes at startup, one after another or all together with bakeAll, against
+// in-process backends that take a millisecond per request on top of baking.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BakeAllBenchmark {
+    private static final String[] DOMAINS = {"A", "B"};
+
+    @Param({"200"})
+    public int recipes;
+
+    @Param({"3"})
+    public int segments;
+
+    private Oven oven;
+    private List<Recipe> setupRecipes;
+
+    @Setup
+    public void setup() {
+        oven = new Oven();
+        for (String domain: DOMAINS) {
+            BackendOven backendOven = new BackendOven();
+            backendOven.registerHook(new PublishHook());
+            oven.addDispatcher(domain, payload -> {
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return backendOven.bake(payload);
+            });
+        }
+
+        setupRecipes = new ArrayList<>();
+        for (int i = 0; i < recipes; i++) {
+            Ingredient[] ingredients = new Ingredient[segments];
+            for (int j = 0; j < segments; j++) {
+                ingredients[j] = new Ingredient("Publish", DOMAINS[j % DOMAINS.length]) {};
+            }
+            setupRecipes.add(Recipe.prepare(ingredients));
+        }
+    }
+
+    @Benchmark
+    public List<Cake> bakeEach() {
+        List<Cake> cakes = new ArrayList<>();
+        for (Recipe recipe: setupRecipes) {
+            cakes.add(oven.bake(recipe));
+        }
+        return cakes;
+    }
+
+    @Benchmark
+    public List<Cake> bakeAll() {
+        return oven.bakeAll(setupRecipes);
+    }
+
+    public static class PublishData extends IngredientSnapshot {
+        public PublishData() {
+            super("Publish");
+        }
+    }
+
+    public static class PublishHook extends BaseIngredientHook<PublishData> {
+        public PublishHook() {
+            super("Publish", PublishData.class);
+        }
+
+        @Override
+        public void bake(PublishData ingredient, Cake cake) {
+            cake.publish("entry" + cake.getEntries().size(), "value");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Planning a test's recipe: a shared base scenario (nested contexts over three domains) followed by a few ingredients
+// of the test's own. The base is either frozen once, as a suite would, or left unfrozen.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BakePlanBenchmark {
+    private static final String[] DOMAINS = {"A", "B", "C"};
+
+    @Param({"500"})
+    public int baseIngredients;
+
+    private Recipe base;
+    private Recipe frozenBase;
+
+    @Setup
+    public void setup() {
+        base = scenario();
+        frozenBase = scenario();
+        frozenBase.freeze();
+    }
+
+    @Benchmark
+    public BakePlan planWithBase() {
+        return testRecipe(base).plan();
+    }
+
+    @Benchmark
+    public BakePlan planWithFrozenBase() {
+        return testRecipe(frozenBase).plan();
+    }
+
+    private Recipe scenario() {
+        List<Ingredient> groups = new ArrayList<>();
+        for (int i = 0; i < baseIngredients / 10; i++) {
+            Ingredient[] ingredients = new Ingredient[10];
+            for (int j = 0; j < ingredients.length; j++) {
+                ingredients[j] = new Ingredient("Setup" + j, DOMAINS[(j / 3) % DOMAINS.length]) {};
+            }
+            groups.add(Recipe.context("group" + i, ingredients));
+        }
+        return Recipe.context("base", groups.toArray(new Ingredient[0]));
+    }
+
+    private Recipe testRecipe(Recipe base) {
+        return Recipe.prepare(
+            new Ingredient("Arrange", "A") {},
+            base,
+            new Ingredient("Act", "B") {},
+            new Ingredient("Assert", "C") {}
+        );
+    }
+}
@@ -0,0 +1,70 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Many publisher threads sharing one cake: ConcurrentCake against a plain cake behind a single lock.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class CakeContentionBenchmark {
+    @State(Scope.Benchmark)
+    public static class SharedCakes {
+        private final AtomicInteger threadIds = new AtomicInteger();
+        private ConcurrentCake concurrentCake;
+        private Cake lockedCake;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            concurrentCake = new ConcurrentCake();
+            lockedCake = new Cake();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Publisher {
+        private String namespace;
+        private int next;
+
+        @Setup
+        public void setup(SharedCakes cakes) {
+            namespace = "publisher" + cakes.threadIds.getAndIncrement();
+        }
+
+        private String nextKey() {
+            return Cake.key(namespace, "entity" + (next++ % 100000));
+        }
+    }
+
+    @Benchmark
+    public Object publishAndGet_concurrentCake(SharedCakes cakes, Publisher publisher) {
+        String key = publisher.nextKey();
+        cakes.concurrentCake.publish(key, publisher.next);
+        return cakes.concurrentCake.get(key);
+    }
+
+    @Benchmark
+    public Object publishAndGet_lockedCake(SharedCakes cakes, Publisher publisher) {
+        String key = publisher.nextKey();
+        synchronized (cakes.lockedCake) {
+            cakes.lockedCake.publish(key, publisher.next);
+            return cakes.lockedCake.get(key);
+        }
+    }
+}
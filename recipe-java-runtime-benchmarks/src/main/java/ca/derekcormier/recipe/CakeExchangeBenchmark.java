@@ -0,0 +1,128 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Bakes a recipe alternating between two in-process backends, each segment publishing a batch of entries, with the
+// full, delta and session cake exchanges. The *BytesPerSegment counters report bytes on the wire per segment; JMH sums
+// event counters over the measurement iterations in its summary, so read them from the per-iteration output.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CakeExchangeBenchmark {
+    @Param({"40"})
+    public int segments;
+
+    @Param({"50"})
+    public int entriesPerSegment;
+
+    @Param({"FULL", "DELTA", "SESSION"})
+    public CakeExchange cakeExchange;
+
+    private Oven oven;
+    private Recipe recipe;
+    private WireCounters counters;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireCounters {
+        public long requestBytes;
+        public long responseBytes;
+        public long segments;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestBytes = 0;
+            responseBytes = 0;
+            segments = 0;
+        }
+
+        public double requestBytesPerSegment() {
+            return segments == 0 ? 0 : (double)requestBytes / segments;
+        }
+
+        public double responseBytesPerSegment() {
+            return segments == 0 ? 0 : (double)responseBytes / segments;
+        }
+    }
+
+    @Setup
+    public void setup(WireCounters counters) {
+        this.counters = counters;
+        oven = new Oven();
+        oven.addDispatcher("A", backend(), cakeExchange);
+        oven.addDispatcher("B", backend(), cakeExchange);
+
+        List<Ingredient> ingredients = new ArrayList<>();
+        for (int i = 0; i < segments; i++) {
+            Ingredient ingredient = new Ingredient("Publish", i % 2 == 0 ? "A" : "B") {};
+            ingredient.setRequired("segment", i);
+            ingredients.add(ingredient);
+        }
+        recipe = Recipe.prepare(ingredients.toArray(new Ingredient[0]));
+    }
+
+    @Benchmark
+    public Cake bake() {
+        return oven.bake(recipe);
+    }
+
+    private Dispatcher backend() {
+        BackendOven backendOven = new BackendOven();
+        backendOven.registerHook(new PublishHook(entriesPerSegment));
+        backendOven.enableSessions(Duration.ofMinutes(1), 16);
+        return payload -> {
+            String cake = backendOven.bake(payload);
+            counters.requestBytes += payload.getBytes(StandardCharsets.UTF_8).length;
+            counters.responseBytes += cake.getBytes(StandardCharsets.UTF_8).length;
+            counters.segments++;
+            return cake;
+        };
+    }
+
+    public static class PublishData extends IngredientSnapshot {
+        public PublishData() {
+            super("Publish");
+        }
+
+        public int getSegment() {
+            return getProperty(int.class, "segment");
+        }
+    }
+
+    public static class PublishHook extends BaseIngredientHook<PublishData> {
+        private final int entries;
+
+        public PublishHook(int entries) {
+            super("Publish", PublishData.class);
+            this.entries = entries;
+        }
+
+        @Override
+        public void bake(PublishData ingredient, Cake cake) {
+            for (int i = 0; i < entries; i++) {
+                cake.publish(Cake.key("segment" + ingredient.getSegment(), "entity" + i), "value" + i);
+            }
+        }
+    }
+}
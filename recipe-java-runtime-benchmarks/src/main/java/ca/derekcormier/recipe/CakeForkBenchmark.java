@@ -0,0 +1,57 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of deriving a new cake from a baked one and writing to it: copying a HashMap-backed cake the way the ovens
+// used to (setEntries) against forking a persistent cake. Run with "-prof gc" to compare allocated bytes per op.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CakeForkBenchmark {
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private Cake hashCake;
+    private Cake persistentCake;
+
+    @Setup
+    public void setup() {
+        hashCake = new Cake();
+        persistentCake = Cake.persistent();
+        for (int i = 0; i < entries; i++) {
+            String key = Cake.key("ns" + (i % 100), "entity" + i);
+            hashCake.publish(key, i);
+            persistentCake.publish(key, i);
+        }
+    }
+
+    @Benchmark
+    public Cake copy_hashCake() {
+        Cake cake = new Cake();
+        cake.setEntries(hashCake.getEntries());
+        cake.publish("extra", 0);
+        return cake;
+    }
+
+    @Benchmark
+    public Cake fork_persistentCake() {
+        Cake cake = persistentCake.fork();
+        cake.publish("extra", 0);
+        return cake;
+    }
+}
@@ -0,0 +1,70 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Oven side cost of a bake whose backends return a cake of object values, of which the test reads one at the end.
+// The backends return a fixed cake, so only the oven's parsing and writing of the cake is measured.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CakeLazyBenchmark {
+    @Param({"10"})
+    public int segments;
+
+    @Param({"500"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private Oven oven;
+    private Recipe recipe;
+
+    @Setup
+    public void setup() {
+        StringBuilder cake = new StringBuilder("{");
+        for (int i = 0; i < entries; i++) {
+            cake.append(i == 0 ? "" : ",")
+                .append("\"user").append(i).append("\":{\"id\":").append(i)
+                .append(",\"name\":\"user ").append(i).append("\",\"roles\":[\"reader\",\"writer\"],\"active\":true}");
+        }
+        String json = cake.append("}").toString();
+
+        oven = new Oven();
+        if (lazy) {
+            oven.enableLazyCake();
+        }
+        oven.addDispatcher("A", payload -> json);
+        oven.addDispatcher("B", payload -> json);
+
+        List<Ingredient> ingredients = new ArrayList<>();
+        for (int i = 0; i < segments; i++) {
+            ingredients.add(new Ingredient("Noop", i % 2 == 0 ? "A" : "B") {});
+        }
+        recipe = Recipe.prepare(ingredients.toArray(new Ingredient[0]));
+    }
+
+    @Benchmark
+    public Object bakeAndReadOne() {
+        Cake cake = oven.bake(recipe);
+        return cake.<Map<String,Object>>get("user0").get("name");
+    }
+}
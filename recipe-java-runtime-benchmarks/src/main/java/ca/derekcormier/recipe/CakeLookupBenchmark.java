@@ -0,0 +1,155 @@
+package ca.derekcormier.recipe;
+
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Compares cake lookups through the string API (parsed on every call) against pre-built CakeKeys, for keys found in
+// the current namespace, in an ancestor namespace and only through the partial key search. The split-and-scan
+// variants run the lookup the cake used before its key index, over the same entries, as a baseline.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CakeLookupBenchmark {
+    private static final CakeKey LOCAL_KEY = CakeKey.of("local");
+    private static final CakeKey PARENT_KEY = CakeKey.of("parent");
+    private static final CakeKey ELSEWHERE_KEY = CakeKey.of("entity5", "id");
+    private static final CakeKey NAMESPACE = CakeKey.of("tenant0", "user0", "session0");
+
+    @Param({"10000"})
+    public int entries;
+
+    private Cake cake;
+    private SplitAndScanLookup baseline;
+
+    @Setup
+    public void setup() {
+        cake = new Cake();
+        for (int i = 0; i < entries; i++) {
+            cake.publish(Cake.key("tenant" + (i % 10), "user" + i, "entity" + i, "id"), i);
+        }
+        cake.publish(Cake.key("tenant0", "user0", "parent"), "parent");
+        cake.publish(Cake.key("tenant0", "user0", "session0", "local"), "local");
+        baseline = new SplitAndScanLookup(cake.getEntries(), Arrays.asList("tenant0", "user0", "session0"));
+    }
+
+    @Benchmark
+    public void currentNamespace_string(Blackhole blackhole) {
+        cake.inNamespace("tenant0.user0.session0", () -> blackhole.consume(cake.get("local")));
+    }
+
+    @Benchmark
+    public void currentNamespace_cakeKey(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> blackhole.consume(cake.resolve(LOCAL_KEY)));
+    }
+
+    @Benchmark
+    public void currentNamespace_splitAndScan(Blackhole blackhole) {
+        blackhole.consume(baseline.get("local"));
+    }
+
+    @Benchmark
+    public void ancestorNamespace_string(Blackhole blackhole) {
+        cake.inNamespace("tenant0.user0.session0", () -> blackhole.consume(cake.get("parent")));
+    }
+
+    @Benchmark
+    public void ancestorNamespace_cakeKey(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> blackhole.consume(cake.resolve(PARENT_KEY)));
+    }
+
+    @Benchmark
+    public void ancestorNamespace_splitAndScan(Blackhole blackhole) {
+        blackhole.consume(baseline.get("parent"));
+    }
+
+    @Benchmark
+    public void otherNamespace_string(Blackhole blackhole) {
+        cake.inNamespace("tenant0.user0.session0", () -> blackhole.consume(cake.get("entity5", "id")));
+    }
+
+    @Benchmark
+    public void otherNamespace_cakeKey(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> blackhole.consume(cake.resolve(ELSEWHERE_KEY)));
+    }
+
+    @Benchmark
+    public void otherNamespace_splitAndScan(Blackhole blackhole) {
+        blackhole.consume(baseline.get("entity5", "id"));
+    }
+
+    // the lookup as the cake did it before its key index: the key is split and joined on every call, each namespace
+    // from the current one up is probed, and a partial key is matched by splitting every published key
+    private static class SplitAndScanLookup {
+        private final Map<String,Object> entries;
+        private final List<String> prefixStack;
+
+        SplitAndScanLookup(Map<String,Object> entries, List<String> prefixStack) {
+            this.entries = new HashMap<>(entries);
+            this.prefixStack = prefixStack;
+        }
+
+        Object get(String... key) {
+            List<String> keys = Arrays.stream(key)
+                .flatMap(k -> Arrays.stream(StringUtils.split(k, Cake.SEPARATOR)))
+                .collect(Collectors.toList());
+            String fullKey = StringUtils.join(keys, Cake.SEPARATOR);
+
+            String searchKey = prefix(prefixStack) + fullKey;
+            if (entries.containsKey(searchKey)) {
+                return entries.get(searchKey);
+            }
+
+            LinkedList<String> namespaces = new LinkedList<>(prefixStack);
+            while (!namespaces.isEmpty()) {
+                namespaces.removeLast();
+                searchKey = prefix(namespaces) + fullKey;
+                if (entries.containsKey(searchKey)) {
+                    return entries.get(searchKey);
+                }
+            }
+
+            List<String> candidates = new ArrayList<>();
+            for (String k: entries.keySet()) {
+                String[] subkeys = StringUtils.split(k, Cake.SEPARATOR);
+                boolean matches = keys.size() <= subkeys.length;
+                for (int i = 0; matches && i < keys.size(); i++) {
+                    matches = keys.get(keys.size() - 1 - i).equals(subkeys[subkeys.length - 1 - i]);
+                }
+                if (matches) {
+                    candidates.add(k);
+                }
+            }
+            if (candidates.size() != 1) {
+                throw new RuntimeException("cannot retrieve key '" + fullKey + "'");
+            }
+            return entries.get(candidates.get(0));
+        }
+
+        private static String prefix(List<String> namespaces) {
+            return StringUtils.join(namespaces, Cake.SEPARATOR) + (namespaces.size() > 0 ? Cake.SEPARATOR : "");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// An id-heavy cake: publishing, reading back and round tripping through JSON a cake of long ids, stored boxed in a
+// HashMap the way cakes used to be against the default unboxed storage. Run with "-prof gc" to compare allocations.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CakeNumericBenchmark {
+    @Param({"10000"})
+    public int entries;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // parsed up front, so that both storages skip key parsing
+    private CakeKey[] keys;
+    private String json;
+
+    @Setup
+    public void setup() throws IOException {
+        keys = new CakeKey[entries];
+        Cake cake = new Cake();
+        for (int i = 0; i < entries; i++) {
+            keys[i] = CakeKey.of("row" + i, "id");
+            cake.publishLongAt(keys[i], 1000000000000L + i);
+        }
+        json = objectMapper.writeValueAsString(cake);
+    }
+
+    @Benchmark
+    public long publishAndGet_boxed() {
+        Cake cake = new Cake(new HashMap<>(), new HashCakeIndex());
+        for (int i = 0; i < entries; i++) {
+            cake.publishAt(keys[i], 1000000000000L + i);
+        }
+        long sum = 0;
+        for (int i = 0; i < entries; i++) {
+            sum += cake.<Long>resolve(keys[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long publishAndGet_primitive() {
+        Cake cake = new Cake();
+        for (int i = 0; i < entries; i++) {
+            cake.publishLongAt(keys[i], 1000000000000L + i);
+        }
+        long sum = 0;
+        for (int i = 0; i < entries; i++) {
+            sum += cake.resolveLong(keys[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public String jsonRoundTrip_boxed() throws IOException {
+        Cake cake = objectMapper.readerForUpdating(new Cake(new HashMap<>(), new HashCakeIndex())).readValue(json);
+        return objectMapper.writeValueAsString(cake);
+    }
+
+    @Benchmark
+    public String jsonRoundTrip_primitive() throws IOException {
+        Cake cake = objectMapper.readValue(json, Cake.class);
+        return objectMapper.writeValueAsString(cake);
+    }
+}
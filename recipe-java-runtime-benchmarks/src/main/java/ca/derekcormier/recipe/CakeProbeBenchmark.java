@@ -0,0 +1,77 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Probing a cake for optional keys and contexts that are missing: catching the exception thrown by get and
+// getContext (which hasContext and getOrGetContext used to do internally) against the non-throwing lookups.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CakeProbeBenchmark {
+    private static final CakeKey NAMESPACE = CakeKey.of("tenant0", "user0");
+    private static final CakeKey CONTEXT_NAMESPACE = CakeKey.of("tenant0", "user0", "id");
+
+    private Cake cake;
+
+    @Setup
+    public void setup() {
+        cake = new Cake();
+        for (int i = 0; i < 1000; i++) {
+            cake.publish(Cake.key("tenant" + (i % 10), "user" + i, "id"), i);
+        }
+    }
+
+    @Benchmark
+    public void missingKey_catchException(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> {
+            try {
+                blackhole.consume(cake.get("optional"));
+            }
+            catch (RuntimeException e) {
+                blackhole.consume(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public void missingKey_tryGet(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> blackhole.consume(cake.tryGet("optional")));
+    }
+
+    @Benchmark
+    public void missingContext_catchException(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> {
+            try {
+                blackhole.consume(cake.getContext());
+            }
+            catch (RuntimeException e) {
+                blackhole.consume(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public void missingContext_hasContext(Blackhole blackhole) {
+        cake.inNamespace(NAMESPACE, () -> blackhole.consume(cake.hasContext()));
+    }
+
+    @Benchmark
+    public void missingKeyWithContext_getOrGetContext(Blackhole blackhole) {
+        cake.inNamespace(CONTEXT_NAMESPACE, () -> blackhole.consume(cake.getOrGetContext("optional")));
+    }
+}
@@ -0,0 +1,66 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Bakes the setup recipe of PayloadCodecBenchmark against backend ovens in the same process, through dispatchers
+// calling BackendOven.bake with JSON text and through local dispatchers calling BackendOven.bakeLocal. The cake the
+// hooks publish to grows with each ingredient, and is carried to every segment; run with -prof gc to compare the
+// allocations per bake.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalBakeBenchmark {
+    @Param({"12"})
+    public int users;
+
+    private Oven jsonOven;
+    private Oven localOven;
+    private Recipe recipe;
+
+    @Setup
+    public void setup() {
+        jsonOven = new Oven();
+        localOven = new Oven();
+        for (String domain: new String[]{"Users", "Orders"}) {
+            BackendOven backendOven = new BackendOven();
+            backendOven.registerHook(new PayloadCodecBenchmark.CreateUserHook());
+            backendOven.registerHook(new PayloadCodecBenchmark.CreateOrderHook());
+            jsonOven.addDispatcher(domain, backendOven::bake);
+            localOven.addLocalDispatcher(domain, backendOven::bakeLocal);
+        }
+
+        List<Ingredient> ingredients = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            ingredients.add(new PayloadCodecBenchmark.CreateUser(i));
+            ingredients.add(new PayloadCodecBenchmark.CreateOrder(i));
+        }
+        recipe = Recipe.prepare(ingredients.toArray(new Ingredient[0]));
+    }
+
+    @Benchmark
+    public Cake bakeWithDispatcher() {
+        return jsonOven.bake(recipe);
+    }
+
+    @Benchmark
+    public Cake bakeWithLocalDispatcher() {
+        return localOven.bake(recipe);
+    }
+}
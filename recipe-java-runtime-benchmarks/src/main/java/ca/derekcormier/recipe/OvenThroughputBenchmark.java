@@ -0,0 +1,86 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Test threads baking small recipes with an oven shared by all of them, or an oven each. The dispatchers return an
+// empty cake right away, so the score is the oven's own cost per bake.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class OvenThroughputBenchmark {
+    private static final String[] DOMAINS = {"A", "B"};
+
+    @State(Scope.Benchmark)
+    public static class SharedOven {
+        private Oven oven;
+
+        @Setup
+        public void setup() {
+            oven = oven();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadOven {
+        private Oven oven;
+
+        @Setup
+        public void setup() {
+            oven = oven();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TestRecipe {
+        private Recipe recipe;
+
+        @Setup
+        public void setup() {
+            Ingredient[] ingredients = new Ingredient[20];
+            for (int i = 0; i < ingredients.length; i++) {
+                ingredients[i] = new TestIngredient(i, DOMAINS[(i / 5) % DOMAINS.length]);
+            }
+            recipe = Recipe.prepare(ingredients);
+        }
+    }
+
+    @Benchmark
+    public Cake bakeWithSharedOven(SharedOven sharedOven, TestRecipe testRecipe) {
+        return sharedOven.oven.bake(testRecipe.recipe);
+    }
+
+    @Benchmark
+    public Cake bakeWithOvenPerThread(ThreadOven threadOven, TestRecipe testRecipe) {
+        return threadOven.oven.bake(testRecipe.recipe);
+    }
+
+    private static Oven oven() {
+        Oven oven = new Oven();
+        for (String domain: DOMAINS) {
+            oven.addDispatcher(domain, payload -> "{}");
+        }
+        return oven;
+    }
+
+    public static class TestIngredient extends Ingredient {
+        public TestIngredient(int i, String domain) {
+            super("TestIngredient", domain);
+            setRequired("index", i);
+        }
+    }
+}
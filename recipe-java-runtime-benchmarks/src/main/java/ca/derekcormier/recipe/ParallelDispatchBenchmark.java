@@ -0,0 +1,87 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// A wide fixture: the same setup in each of several backends, then an ingredient of the test that depends on all of
+// them. Each dispatch takes 5 milliseconds, so parallel dispatch should bring a bake down to two dispatches.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelDispatchBenchmark {
+    @Param({"4"})
+    public int domains;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private ExecutorService executor;
+    private Oven oven;
+    private Recipe recipe;
+
+    @Setup
+    public void setup() {
+        oven = new Oven();
+        if (parallel) {
+            executor = Executors.newFixedThreadPool(domains);
+            oven.enableParallelDispatch(executor);
+        }
+
+        List<Ingredient> branches = new ArrayList<>();
+        for (int i = 0; i < domains; i++) {
+            String domain = "Domain" + i;
+            oven.addDispatcher(domain, payload -> dispatch(domain));
+            branches.add(Recipe.prepare(
+                new Ingredient("CreateUser", domain) {},
+                new Ingredient("CreateGroup", domain) {}
+            ));
+        }
+        oven.addDispatcher("Test", payload -> dispatch("Test"));
+
+        recipe = Recipe.prepare(
+            Recipe.parallel(branches.toArray(new Ingredient[0])),
+            new Ingredient("Act", "Test") {}
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Cake bake() {
+        return oven.bake(recipe);
+    }
+
+    private String dispatch(String domain) {
+        try {
+            Thread.sleep(5);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return "{\"" + domain + "\":\"done\"}";
+    }
+}
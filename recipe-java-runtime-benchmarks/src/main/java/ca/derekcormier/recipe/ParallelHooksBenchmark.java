@@ -0,0 +1,113 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Bakes a payload of products and warehouses, alternating, whose hooks each wait a millisecond as an insert into a
+// database would, with a backend oven baking hooks one after another and one baking them in parallel. Each hook
+// declares the namespace it publishes to, so products wait for the products before them, and warehouses for the
+// warehouses, but products and warehouses are inserted at the same time.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelHooksBenchmark {
+    @Param({"16"})
+    public int ingredients;
+
+    @Param({"4"})
+    public int threads;
+
+    private BackendOven serialOven;
+    private BackendOven parallelOven;
+    private ExecutorService executor;
+    private String payload;
+
+    @Setup
+    public void setup() {
+        serialOven = new BackendOven();
+        parallelOven = new BackendOven();
+        executor = Executors.newFixedThreadPool(threads);
+        parallelOven.enableParallelHooks(executor);
+        for (BackendOven oven: new BackendOven[]{serialOven, parallelOven}) {
+            oven.registerHook(new InsertHook<>("Product", ProductData.class, "products"));
+            oven.registerHook(new InsertHook<>("Warehouse", WarehouseData.class, "warehouses"));
+        }
+
+        StringBuilder recipe = new StringBuilder();
+        for (int i = 0; i < ingredients; i++) {
+            recipe.append(i == 0 ? "" : ",").append(i % 2 == 0 ? "{\"Product\":{}}" : "{\"Warehouse\":{}}");
+        }
+        payload = "{\"recipe\":{\"Recipe\":{\"ingredients\":[" + recipe + "]}}}";
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public String bakeSerially() {
+        return serialOven.bake(payload);
+    }
+
+    @Benchmark
+    public String bakeInParallel() {
+        return parallelOven.bake(payload);
+    }
+
+    public static class ProductData extends IngredientSnapshot {
+        public ProductData() {
+            super("Product");
+        }
+    }
+
+    public static class WarehouseData extends IngredientSnapshot {
+        public WarehouseData() {
+            super("Warehouse");
+        }
+    }
+
+    public static class InsertHook<T> extends BaseIngredientHook<T> {
+        private final List<String> publishes;
+
+        public InsertHook(String name, Class<T> dataClass, String namespace) {
+            super(name, dataClass);
+            this.publishes = Collections.singletonList(namespace);
+        }
+
+        @Override
+        public List<String> getCakePublishes() {
+            return publishes;
+        }
+
+        @Override
+        public void bake(T ingredient, Cake cake) {
+            try {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            cake.publish(Cake.key(publishes.get(0), "inserted"), true);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.impl.StdSubtypeResolver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Payloads of a setup recipe creating users and their orders, with a cake of the ids, names and addresses published so
+// far, exchanged as JSON text through a dispatcher or as Smile through a binary dispatcher. encodePayload and
+// decodePayload time the oven writing a payload and the backend oven reading it; bake times a whole bake against
+// in-process backends. The *BytesPerPayload counters report the size of the payloads and of the cakes returned; JMH
+// sums event counters over the measurement iterations in its summary, so read them from the per-iteration output.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCodecBenchmark {
+    @Param({"JSON", "SMILE"})
+    public String codec;
+
+    @Param({"60"})
+    public int cakeEntries;
+
+    private Oven oven;
+    private Recipe recipe;
+    private Payload payload;
+    private ObjectMapper ovenMapper;
+    private ObjectMapper backendMapper;
+    private Object encodedPayload;
+    private WireCounters counters;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireCounters {
+        public long requestBytes;
+        public long responseBytes;
+        public long payloads;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestBytes = 0;
+            responseBytes = 0;
+            payloads = 0;
+        }
+
+        public double requestBytesPerPayload() {
+            return payloads == 0 ? 0 : (double)requestBytes / payloads;
+        }
+
+        public double responseBytesPerPayload() {
+            return payloads == 0 ? 0 : (double)responseBytes / payloads;
+        }
+    }
+
+    @Setup
+    public void setup(WireCounters counters) throws IOException {
+        this.counters = counters;
+        boolean smile = codec.equals("SMILE");
+        PayloadCodec payloadCodec = smile ? PayloadCodec.SMILE : PayloadCodec.JSON;
+
+        List<Ingredient> ingredients = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            ingredients.add(new CreateUser(i));
+            ingredients.add(new CreateOrder(i));
+        }
+        recipe = Recipe.prepare(ingredients.toArray(new Ingredient[0]));
+
+        oven = new Oven();
+        for (String domain: new String[]{"Users", "Orders"}) {
+            BackendOven backendOven = new BackendOven();
+            backendOven.registerHook(new CreateUserHook());
+            backendOven.registerHook(new CreateOrderHook());
+            if (smile) {
+                oven.addBinaryDispatcher(domain, request -> {
+                    byte[] response = backendOven.bake(request);
+                    count(request.length, response.length);
+                    return response;
+                }, PayloadCodec.SMILE);
+            }
+            else {
+                oven.addDispatcher(domain, request -> {
+                    String response = backendOven.bake(request);
+                    count(request.getBytes(StandardCharsets.UTF_8).length, response.getBytes(StandardCharsets.UTF_8).length);
+                    return response;
+                });
+            }
+        }
+
+        Cake cake = new Cake();
+        for (int i = 0; i < cakeEntries / 3; i++) {
+            cake.publish(Cake.key("user" + i, "id"), 100000 + i);
+            cake.publish(Cake.key("user" + i, "name"), "User Name " + i);
+            Map<String,Object> address = new HashMap<>();
+            address.put("street", i + " Main Street");
+            address.put("city", "Springfield");
+            address.put("postcode", "A1B 2C" + (i % 10));
+            address.put("coordinates", Arrays.asList(45.5 + i / 100.0, -73.6 - i / 100.0));
+            cake.publish(Cake.key("user" + i, "address"), address);
+        }
+        payload = new Payload(recipe, cake);
+
+        SubtypeRegistry subtypeRegistry = new SubtypeRegistry();
+        ovenMapper = subtypeRegistry.mapperFor(subtypeRegistry.mapperFor(recipe.plan().getSubtypes()), payloadCodec);
+
+        StdSubtypeResolver subtypeResolver = new StdSubtypeResolver();
+        subtypeResolver.registerSubtypes(
+            new NamedType(RecipeSnapshot.class, "Recipe"),
+            new NamedType(CreateUserData.class, "CreateUser"),
+            new NamedType(CreateOrderData.class, "CreateOrder")
+        );
+        backendMapper = new ObjectMapper(payloadCodec.createFactory());
+        backendMapper.setSubtypeResolver(subtypeResolver);
+
+        encodedPayload = encodePayload();
+    }
+
+    private void count(int requestBytes, int responseBytes) {
+        counters.requestBytes += requestBytes;
+        counters.responseBytes += responseBytes;
+        counters.payloads++;
+    }
+
+    @Benchmark
+    public Object encodePayload() throws IOException {
+        return codec.equals("SMILE") ? ovenMapper.writeValueAsBytes(payload) : ovenMapper.writeValueAsString(payload);
+    }
+
+    @Benchmark
+    public BackendPayload decodePayload() throws IOException {
+        return encodedPayload instanceof byte[]
+            ? backendMapper.readValue((byte[])encodedPayload, BackendPayload.class)
+            : backendMapper.readValue((String)encodedPayload, BackendPayload.class);
+    }
+
+    @Benchmark
+    public Cake bake() {
+        return oven.bake(recipe);
+    }
+
+    public static class CreateUser extends Ingredient {
+        public CreateUser(int i) {
+            super("CreateUser", "Users");
+            setRequired("key", "user" + i);
+            setRequired("name", "User Name " + i);
+            setOptional("email", false, "user" + i + "@example.com");
+            setOptional("roles", true, "admin");
+            setOptional("roles", true, "billing");
+            setCompoundOptional("address", false, "street", i + " Main Street", "city", "Springfield", "postcode", "A1B 2C3");
+        }
+    }
+
+    public static class CreateOrder extends Ingredient {
+        public CreateOrder(int i) {
+            super("CreateOrder", "Orders");
+            setRequired("user", "user" + i);
+            setRequired("quantity", i + 1);
+            setRequired("price", 19.99 + i);
+            setOptional("note", false, "leave at the door");
+        }
+    }
+
+    public static class CreateUserData extends IngredientSnapshot {
+        public CreateUserData() {
+            super("CreateUser");
+        }
+    }
+
+    public static class CreateOrderData extends IngredientSnapshot {
+        public CreateOrderData() {
+            super("CreateOrder");
+        }
+    }
+
+    public static class CreateUserHook extends BaseIngredientHook<CreateUserData> {
+        public CreateUserHook() {
+            super("CreateUser", CreateUserData.class);
+        }
+
+        @Override
+        public void bake(CreateUserData ingredient, Cake cake) {
+            String key = ingredient.getProperty(String.class, "key");
+            cake.publish(Cake.key(key, "id"), 100000 + cake.getEntries().size());
+            cake.publish(Cake.key(key, "name"), ingredient.getProperty(String.class, "name"));
+        }
+    }
+
+    public static class CreateOrderHook extends BaseIngredientHook<CreateOrderData> {
+        public CreateOrderHook() {
+            super("CreateOrder", CreateOrderData.class);
+        }
+
+        @Override
+        public void bake(CreateOrderData ingredient, Cake cake) {
+            String user = ingredient.getProperty(String.class, "user");
+            Map<String,Object> order = new HashMap<>();
+            order.put("user", cake.get(Cake.key(user, "id")));
+            order.put("total", ingredient.getProperty(int.class, "quantity") * ingredient.getProperty(double.class, "price"));
+            cake.publish(Cake.key(user, "order"), order);
+        }
+    }
+}
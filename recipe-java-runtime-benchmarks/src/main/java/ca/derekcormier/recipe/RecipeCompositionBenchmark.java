@@ -0,0 +1,70 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Composing recipes out of context-free recipes: a test recipe built step by step from a shared base, each step
+// preparing the recipe so far with another ingredient, and a test recipe preparing the shared base with a few of its
+// own ingredients.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipeCompositionBenchmark {
+    private static final String[] DOMAINS = {"A", "B", "C"};
+
+    @Param({"5000"})
+    public int baseIngredients;
+
+    @Param({"500"})
+    public int steps;
+
+    private Recipe base;
+    private Ingredient[] ingredients;
+
+    @Setup
+    public void setup() {
+        Ingredient[] baseIngredients = new Ingredient[this.baseIngredients];
+        for (int i = 0; i < baseIngredients.length; i++) {
+            baseIngredients[i] = new Ingredient("Setup" + (i % 10), DOMAINS[i % DOMAINS.length]) {};
+        }
+        base = Recipe.prepare(baseIngredients);
+
+        ingredients = new Ingredient[steps];
+        for (int i = 0; i < ingredients.length; i++) {
+            ingredients[i] = new Ingredient("Step" + (i % 10), DOMAINS[i % DOMAINS.length]) {};
+        }
+    }
+
+    @Benchmark
+    public Recipe composeStepByStep() {
+        Recipe recipe = base;
+        for (Ingredient ingredient: ingredients) {
+            recipe = Recipe.prepare(recipe, ingredient);
+        }
+        return recipe;
+    }
+
+    @Benchmark
+    public Recipe prepareWithBase() {
+        return Recipe.prepare(
+            new Ingredient("Arrange", "A") {},
+            base,
+            new Ingredient("Act", "B") {},
+            new Ingredient("Assert", "C") {}
+        );
+    }
+}
@@ -0,0 +1,90 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A recipe alternating between two backends, each dispatch taking a millisecond, baked in its own order or reordered
+// by the segment optimizer. Every third ingredient reads the key published by the one before it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentOptimizerBenchmark {
+    @Param({"30"})
+    public int ingredients;
+
+    @Param({"false", "true"})
+    public boolean optimize;
+
+    private Oven oven;
+    private Recipe recipe;
+
+    @Setup
+    public void setup() {
+        oven = new Oven();
+        if (optimize) {
+            oven.enableSegmentOptimizer();
+        }
+        oven.addDispatcher("A", this::dispatch);
+        oven.addDispatcher("B", this::dispatch);
+
+        List<Ingredient> list = new ArrayList<>();
+        for (int i = 0; i < ingredients; i++) {
+            List<String> reads = i % 3 == 2 ? Arrays.asList("key" + (i - 1)) : Arrays.asList();
+            list.add(new DeclaredIngredient(i % 2 == 0 ? "A" : "B", reads, Arrays.asList("key" + i)));
+        }
+        recipe = Recipe.prepare(list.toArray(new Ingredient[0]));
+    }
+
+    @Benchmark
+    public Cake bake() {
+        return oven.bake(recipe);
+    }
+
+    private String dispatch(String payload) {
+        try {
+            Thread.sleep(1);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return "{}";
+    }
+
+    private static class DeclaredIngredient extends Ingredient {
+        private final List<String> reads;
+        private final List<String> publishes;
+
+        DeclaredIngredient(String domain, List<String> reads, List<String> publishes) {
+            super("Declared", domain);
+            this.reads = reads;
+            this.publishes = publishes;
+        }
+
+        @Override
+        public List<String> getCakeReads() {
+            return reads;
+        }
+
+        @Override
+        public List<String> getCakePublishes() {
+            return publishes;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Segmenting a generated data-seeding recipe: groups of 100 ingredients, switching between two domains every five
+// ingredients, each group nested in a chain of contexts of the given depth.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentationBenchmark {
+    @Param({"100000"})
+    public int ingredients;
+
+    @Param({"1", "10", "100"})
+    public int depth;
+
+    private Recipe recipe;
+
+    @Setup
+    public void setup() {
+        Ingredient[] groups = new Ingredient[ingredients / 100];
+        for (int i = 0; i < groups.length; i++) {
+            Ingredient[] group = new Ingredient[100];
+            for (int j = 0; j < group.length; j++) {
+                group[j] = new Ingredient("Seed", (j / 5) % 2 == 0 ? "A" : "B") {};
+            }
+
+            Recipe nested = Recipe.context("level" + depth, group);
+            for (int level = depth - 1; level > 0; level--) {
+                nested = Recipe.context("level" + level, nested);
+            }
+            groups[i] = nested;
+        }
+        recipe = Recipe.prepare(groups);
+    }
+
+    @Benchmark
+    public List<Recipe.Segment> segment() {
+        return recipe.segment();
+    }
+}
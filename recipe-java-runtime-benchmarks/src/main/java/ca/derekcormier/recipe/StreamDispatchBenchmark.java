@@ -0,0 +1,117 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Bakes a recipe whose first segment publishes a cake of several megabytes, which the segments after it carry back and
+// forth, through transports that move bytes as sockets do. A dispatcher encodes each payload from a String and decodes
+// each response into one, and the backend does the same; a stream dispatcher hands the oven's pooled payload buffer to
+// the backend as a stream and the backend writes its response straight to the transport. Run with -prof gc to compare
+// the allocations per bake.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamDispatchBenchmark {
+    @Param({"20000"})
+    public int entries;
+
+    @Param({"4"})
+    public int segments;
+
+    private Oven stringOven;
+    private Oven streamOven;
+    private Recipe recipe;
+
+    @Setup
+    public void setup() {
+        stringOven = new Oven();
+        streamOven = new Oven();
+        for (String domain: new String[]{"A", "B"}) {
+            BackendOven backendOven = new BackendOven();
+            backendOven.registerHook(new PublishHook(entries));
+            backendOven.registerHook(new ReadHook());
+            stringOven.addDispatcher(domain, payload -> {
+                byte[] request = payload.getBytes(StandardCharsets.UTF_8);
+                String response = backendOven.bake(new String(request, StandardCharsets.UTF_8));
+                return new String(response.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            });
+            streamOven.addStreamDispatcher(domain, payload -> {
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                backendOven.bake(payload, response);
+                return new ByteArrayInputStream(response.toByteArray());
+            });
+        }
+
+        Ingredient[] ingredients = new Ingredient[segments];
+        ingredients[0] = new Ingredient("Publish", "A") {};
+        for (int i = 1; i < segments; i++) {
+            ingredients[i] = new Ingredient("Read", i % 2 == 0 ? "A" : "B") {};
+        }
+        recipe = Recipe.prepare(ingredients);
+    }
+
+    @Benchmark
+    public Cake bakeWithStringDispatcher() {
+        return stringOven.bake(recipe);
+    }
+
+    @Benchmark
+    public Cake bakeWithStreamDispatcher() {
+        return streamOven.bake(recipe);
+    }
+
+    public static class PublishData extends IngredientSnapshot {
+        public PublishData() {
+            super("Publish");
+        }
+    }
+
+    public static class ReadData extends IngredientSnapshot {
+        public ReadData() {
+            super("Read");
+        }
+    }
+
+    public static class ReadHook extends BaseIngredientHook<ReadData> {
+        public ReadHook() {
+            super("Read", ReadData.class);
+        }
+
+        @Override
+        public void bake(ReadData ingredient, Cake cake) {
+        }
+    }
+
+    public static class PublishHook extends BaseIngredientHook<PublishData> {
+        private final int entries;
+
+        public PublishHook(int entries) {
+            super("Publish", PublishData.class);
+            this.entries = entries;
+        }
+
+        @Override
+        public void bake(PublishData ingredient, Cake cake) {
+            for (int i = 0; i < entries; i++) {
+                cake.publish(Cake.key("entity" + i, "description"), "a description of entity number " + i + " for the test");
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ca.derekcormier.recipe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Bakes a seeding payload of many ingredients, alternating between two types in nested recipes with contexts, from a
+// stream as a stream dispatcher hands it to a backend, with the payload read whole and with streaming payloads.
+// Run with -prof gc to compare the allocations per bake; a streaming backend holds one ingredient of the recipe at a
+// time rather than the whole snapshot tree.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingPayloadBenchmark {
+    @Param({"20000"})
+    public int ingredients;
+
+    private BackendOven wholeOven;
+    private BackendOven streamingOven;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws Exception {
+        wholeOven = new BackendOven();
+        streamingOven = new BackendOven();
+        streamingOven.enableStreamingPayloads();
+        for (BackendOven oven: new BackendOven[]{wholeOven, streamingOven}) {
+            oven.registerHook(new SeedHook("SeedUser", SeedUserData.class));
+            oven.registerHook(new SeedHook("SeedOrder", SeedOrderData.class));
+        }
+
+        List<Object> recipes = new ArrayList<>();
+        for (int r = 0; r < ingredients / 100; r++) {
+            List<Object> recipeIngredients = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                Map<String,Object> properties = new HashMap<>();
+                properties.put("name", "seeded entity " + r + "-" + i);
+                properties.put("description", "a description long enough to look like seeding data for entity " + i);
+                recipeIngredients.add(Collections.singletonMap(i % 2 == 0 ? "SeedUser" : "SeedOrder", properties));
+            }
+            Map<String,Object> recipe = new LinkedHashMap<>();
+            recipe.put("context", "tenant" + r);
+            recipe.put("ingredients", recipeIngredients);
+            recipes.add(Collections.singletonMap("Recipe", recipe));
+        }
+        // written as an oven writes it, with the cake first and the recipe opening with its context
+        Map<String,Object> topRecipe = new LinkedHashMap<>();
+        topRecipe.put("context", null);
+        topRecipe.put("ingredients", recipes);
+        Map<String,Object> payloadMap = new LinkedHashMap<>();
+        payloadMap.put("cake", Collections.emptyMap());
+        payloadMap.put("recipe", Collections.singletonMap("Recipe", topRecipe));
+        payload = new ObjectMapper().writeValueAsBytes(payloadMap);
+    }
+
+    @Benchmark
+    public byte[] bakeWholePayload() {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        wholeOven.bake(new ByteArrayInputStream(payload), response);
+        return response.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] bakeStreamingPayload() {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        streamingOven.bake(new ByteArrayInputStream(payload), response);
+        return response.toByteArray();
+    }
+
+    public static class SeedUserData extends SeedData {
+        public SeedUserData() {
+            super("SeedUser");
+        }
+    }
+
+    public static class SeedOrderData extends SeedData {
+        public SeedOrderData() {
+            super("SeedOrder");
+        }
+    }
+
+    public static class SeedData extends IngredientSnapshot {
+        @JsonProperty("name")
+        public String name;
+        @JsonProperty("description")
+        public String description;
+
+        public SeedData(String type) {
+            super(type);
+        }
+    }
+
+    public static class SeedHook extends BaseIngredientHook<SeedData> {
+        @SuppressWarnings("unchecked")
+        public SeedHook(String name, Class<? extends SeedData> dataClass) {
+            super(name, (Class<SeedData>)dataClass);
+        }
+
+        @Override
+        public void bake(SeedData ingredient, Cake cake) {
+            cake.publish(ingredient.name, ingredient.name.length());
+        }
+    }
+}
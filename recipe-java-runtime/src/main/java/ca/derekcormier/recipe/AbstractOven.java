@@ -1,7 +1,18 @@
 package ca.derekcormier.recipe;
 
+import java.util.Objects;
+import java.util.function.Supplier;
+
 public abstract class AbstractOven {
+    private Supplier<Cake> cakeFactory = Cake::new;
+
+    // Selects the cake implementation used while baking, e.g. ConcurrentCake::new for hooks that publish from
+    // several threads.
+    public void setCakeFactory(Supplier<Cake> cakeFactory) {
+        this.cakeFactory = Objects.requireNonNull(cakeFactory);
+    }
+
     protected Cake createCake() {
-        return new Cake();
+        return cakeFactory.get();
     }
 }
@@ -0,0 +1,9 @@
+package ca.derekcormier.recipe;
+
+import java.util.concurrent.CompletionStage;
+
+// A dispatcher that does not block while the payload is delivered, for Oven.bakeAsync
+@FunctionalInterface
+public interface AsyncDispatcher {
+    CompletionStage<String> dispatch(String payload);
+}
@@ -1,17 +1,44 @@
 package ca.derekcormier.recipe;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.jsontype.NamedType;
 import com.fasterxml.jackson.databind.jsontype.SubtypeResolver;
 import com.fasterxml.jackson.databind.jsontype.impl.StdSubtypeResolver;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class BackendOven extends AbstractOven {
     private final Map<String,BaseIngredientHook> hooks = new HashMap<>();
+    private final List<SegmentListener> segmentListeners = new ArrayList<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<PayloadCodec,ObjectMapper> codecMappers = new ConcurrentHashMap<>();
     private final SubtypeResolver subtypeResolver = new StdSubtypeResolver();
+    // writes the recipes of local bakes, as an oven would for a payload
+    private final SubtypeRegistry recipeSubtypes = new SubtypeRegistry();
+    private CakeSessionCache sessions;
+    private volatile Executor hookExecutor;
+    private volatile boolean streamingPayloads;
 
     public BackendOven() {
         objectMapper.setSubtypeResolver(subtypeResolver);
@@ -20,42 +47,404 @@ public class BackendOven extends AbstractOven {
 
     public String bake(String json) {
         try {
-            BackendPayload payload = objectMapper.readValue(json, BackendPayload.class);
-            Cake deserializedCake = payload.getCake();
+            if (streamsPayloads()) {
+                try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+                    return objectMapper.writeValueAsString(streamPayload(objectMapper, parser));
+                }
+            }
+            BackendPayload payload = payloadReader(objectMapper).readValue(json);
+            return objectMapper.writeValueAsString(respond(payload));
+        }
+        catch (Exception e) {
+            throw new RuntimeException("payload serialization error", e);
+        }
+    }
+
+    // Bakes a payload from an oven's binary dispatcher, and answers in the same format. Smile payloads are told apart
+    // by their header; any other payload is read as JSON.
+    public byte[] bake(byte[] payload) {
+        boolean smile = payload.length >= 3 && payload[0] == SmileConstants.HEADER_BYTE_1
+            && payload[1] == SmileConstants.HEADER_BYTE_2 && payload[2] == SmileConstants.HEADER_BYTE_3;
+        return bake(payload, smile ? PayloadCodec.SMILE : PayloadCodec.JSON);
+    }
+
+    // bakes a payload from a binary dispatcher of the given codec
+    public byte[] bake(byte[] payload, PayloadCodec codec) {
+        try {
+            ObjectMapper codecMapper = mapperFor(codec);
+            if (streamsPayloads()) {
+                try (JsonParser parser = codecMapper.getFactory().createParser(payload)) {
+                    return codecMapper.writeValueAsBytes(streamPayload(codecMapper, parser));
+                }
+            }
+            BackendPayload backendPayload = payloadReader(codecMapper).readValue(payload);
+            return codecMapper.writeValueAsBytes(respond(backendPayload));
+        }
+        catch (Exception e) {
+            throw new RuntimeException("payload serialization error", e);
+        }
+    }
 
-            Cake cake = createCake();
-            cake.setEntries(deserializedCake.getEntries());
-            bakeIngredient(payload.getRecipe(), cake);
+    public void bake(InputStream payload, OutputStream response) {
+        bake(payload, response, PayloadCodec.JSON);
+    }
 
-            Cake cakeToSerialize = new Cake();
-            cakeToSerialize.setEntries(cake.getEntries());
-            return objectMapper.writeValueAsString(cakeToSerialize);
+    // Bakes a payload read from a stream and writes the response to another, e.g. straight from and to the bodies of
+    // the request and response of an oven's stream dispatcher, without holding either in memory as a whole. Neither
+    // stream is closed.
+    public void bake(InputStream payload, OutputStream response, PayloadCodec codec) {
+        try {
+            ObjectMapper codecMapper = mapperFor(codec);
+            Object answer;
+            if (streamsPayloads()) {
+                try (JsonParser parser = codecMapper.getFactory().createParser(payload)) {
+                    parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                    answer = streamPayload(codecMapper, parser);
+                }
+            }
+            else {
+                answer = respond(payloadReader(codecMapper).without(JsonParser.Feature.AUTO_CLOSE_SOURCE).readValue(payload));
+            }
+            codecMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(response, answer);
         }
         catch (Exception e) {
             throw new RuntimeException("payload serialization error", e);
         }
     }
 
+    // Bakes a recipe from an oven in the same process into its cake, see Oven.addLocalDispatcher. The recipe is turned
+    // into the hooks' data classes through a token buffer rather than text, so that properties convert as they do
+    // from a JSON payload, and the cake is baked into as it is. Values hooks publish are kept as published, where the
+    // JSON path would hand the oven their serialized form.
+    public void bakeLocal(Recipe recipe, Cake cake) {
+        RecipeSnapshot snapshot;
+        try {
+            TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+            recipeSubtypes.mapperFor(recipe.getSubtypes()).writeValue(buffer, recipe);
+            snapshot = objectMapper.readValue(buffer.asParser(objectMapper), RecipeSnapshot.class);
+        }
+        catch (Exception e) {
+            throw new RuntimeException("recipe conversion error", e);
+        }
+        inSegment(() -> {
+            bakeIngredient(snapshot, cake);
+            return null;
+        });
+    }
+
+    private ObjectMapper mapperFor(PayloadCodec codec) {
+        return codecMappers.computeIfAbsent(codec, c -> SubtypeRegistry.codecMapper(c, subtypeResolver));
+    }
+
+    // the payload's cake is read straight into a cake from the cake factory
+    private ObjectReader payloadReader(ObjectMapper mapper) {
+        return mapper.readerFor(BackendPayload.class)
+            .withAttribute(CakeDeserializer.CAKE_FACTORY, (Supplier<Cake>)this::createCake);
+    }
+
+    private Object respond(BackendPayload payload) {
+        if (payload.getPayloads() != null) {
+            // a batch from Oven.bakeAll, answered with the response to each of its payloads in order
+            List<Object> results = new ArrayList<>();
+            for (BackendPayload batchedPayload: payload.getPayloads()) {
+                results.add(bake(batchedPayload));
+            }
+            return Collections.singletonMap("results", results);
+        }
+        return bake(payload);
+    }
+
+    // the response to the payload, before serialization
+    private Object bake(BackendPayload payload) {
+        return bake(payload, cake -> bakeIngredient(payload.getRecipe(), cake));
+    }
+
+    // the response to the payload, its recipe being baked into the cake by bakeRecipe
+    private Object bake(BackendPayload payload, Consumer<Cake> bakeRecipe) {
+        return inSegment(() -> bakeSegment(payload, bakeRecipe));
+    }
+
+    private Object bakeSegment(BackendPayload payload, Consumer<Cake> bakeRecipe) {
+        if (payload.getCakeExchange() == CakeExchange.SESSION) {
+            return bakeInSession(payload, bakeRecipe);
+        }
+
+        Cake cake = payload.hasCake() ? payload.getCake() : createCake();
+
+        if (payload.getCakeExchange() == CakeExchange.DELTA) {
+            cake.trackChanges();
+            long version = cake.getVersion();
+            bakeRecipe.accept(cake);
+            return cake.getEntriesChangedSince(version);
+        }
+
+        bakeRecipe.accept(cake);
+        return cake;
+    }
+
+    // Bakes each ingredient of a payload as soon as it is read, rather than once the whole payload is, so that no more
+    // of a recipe is held than the ingredients a hook is about to bake; runs of an ingredient type are handed to hooks
+    // in batches of a few hundred at most. This needs the rest of a payload to come before its recipe, and a recipe's
+    // context before its ingredients, as Java ovens write them. The recipe of a payload from an older or TypeScript
+    // oven is buffered until the rest of the payload is read, and the ingredients of a recipe until its context is.
+    // Parallel hooks are scheduled from the whole recipe, so while they are enabled payloads are read whole.
+    public void enableStreamingPayloads() {
+        streamingPayloads = true;
+    }
+
+    private boolean streamsPayloads() {
+        return streamingPayloads && hookExecutor == null;
+    }
+
+    // the response to the payload the parser is at the start of, or has yet to reach
+    private Object streamPayload(ObjectMapper mapper, JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == null) {
+            parser.nextToken();
+        }
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("payload must be an object");
+        }
+
+        ObjectReader reader = payloadReader(mapper);
+        Cake cake = null;
+        CakeExchange cakeExchange = null;
+        BakeSession session = null;
+        List<Object> results = null;
+        TokenBuffer bufferedRecipe = null;
+        Object response = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (response != null) {
+                // the recipe opened with its context, which only ovens that write it last do
+                throw new IllegalArgumentException("cannot bake payload as it is read; its " + field + " comes after its recipe");
+            }
+
+            switch (field) {
+                case "cake":
+                    cake = reader.forType(Cake.class).readValue(parser);
+                    break;
+                case "cakeExchange":
+                    cakeExchange = reader.forType(CakeExchange.class).readValue(parser);
+                    break;
+                case "session":
+                    session = reader.forType(BakeSession.class).readValue(parser);
+                    break;
+                case "payloads":
+                    // a batch from Oven.bakeAll, each of its payloads streamed in turn
+                    results = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        results.add(streamPayload(mapper, parser));
+                    }
+                    break;
+                case "recipe":
+                    TokenBuffer recipeStart = new TokenBuffer(parser);
+                    boolean recipeLast = cake != null && opensWithContext(parser, recipeStart);
+                    JsonParser recipeParser = JsonParserSequence.createFlattened(true, recipeStart.asParser(mapper), parser);
+                    recipeParser.nextToken();
+                    if (recipeLast) {
+                        response = streamRecipe(new BackendPayload(null, cake, cakeExchange, session), recipeParser);
+                    }
+                    else {
+                        // a payload from an older oven, or the TypeScript oven, that may have fields after its recipe
+                        bufferedRecipe = new TokenBuffer(parser);
+                        bufferedRecipe.copyCurrentStructure(recipeParser);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown payload field '" + field + "'");
+            }
+        }
+
+        if (results != null) {
+            return Collections.singletonMap("results", results);
+        }
+        if (bufferedRecipe != null) {
+            JsonParser recipeParser = bufferedRecipe.asParser(mapper);
+            recipeParser.nextToken();
+            return streamRecipe(new BackendPayload(null, cake, cakeExchange, session), recipeParser);
+        }
+        if (response == null) {
+            throw new IllegalArgumentException("payload must have a recipe");
+        }
+        return response;
+    }
+
+    // Reads the recipe the parser is at up to its first field, copying what is read into start, and tells whether that
+    // field is the recipe's context. Ovens that write the payload's other fields before its recipe open their recipes
+    // with their context, even a null one, so such a recipe is known to be the last field of the payload.
+    private static boolean opensWithContext(JsonParser parser, TokenBuffer start) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        start.copyCurrentEvent(parser);
+        if (parser.nextToken() != JsonToken.FIELD_NAME) {
+            return false;
+        }
+        start.copyCurrentEvent(parser);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        start.copyCurrentEvent(parser);
+        return parser.nextToken() == JsonToken.FIELD_NAME && parser.getCurrentName().equals("context");
+    }
+
+    private Object streamRecipe(BackendPayload payload, JsonParser parser) {
+        ObjectReader ingredientReader = objectMapper.readerFor(IngredientSnapshot.class);
+        return bake(payload, cake -> new RecipeStream(this::hookFor, ingredientReader, parser, cake).bake());
+    }
+
+    // Lets ovens keep bake sessions on this backend (CakeExchange.SESSION). Sessions not used for the ttl are evicted,
+    // as is the least recently used session once there are maxSessions.
+    public void enableSessions(Duration ttl, int maxSessions) {
+        enableSessions(ttl, maxSessions, Clock.systemUTC());
+    }
+
+    void enableSessions(Duration ttl, int maxSessions, Clock clock) {
+        sessions = new CakeSessionCache(ttl, maxSessions, clock);
+    }
+
+    private SessionReply bakeInSession(BackendPayload payload, Consumer<Cake> bakeRecipe) {
+        BakeSession bakeSession = payload.getSession();
+        if (sessions == null) {
+            if (bakeSession.getEpoch() != 0) {
+                return SessionReply.resync();
+            }
+
+            // the payload holds the full cake, so bake it as a delta exchange and let the oven stop asking
+            Cake cake = payload.hasCake() ? payload.getCake() : createCake();
+            cake.trackChanges();
+            long version = cake.getVersion();
+            bakeRecipe.accept(cake);
+            return new SessionReply(CakeExchange.DELTA, cake.getEntriesChangedSince(version), false);
+        }
+
+        CakeSessionCache.Session session;
+        if (bakeSession.getEpoch() == 0) {
+            session = new CakeSessionCache.Session(createCake());
+            session.cake.trackChanges();
+        }
+        else {
+            session = sessions.get(bakeSession.getId());
+            if (session == null || session.epoch != bakeSession.getEpoch()) {
+                sessions.remove(bakeSession.getId());
+                return SessionReply.resync();
+            }
+        }
+
+        Map<String,Object> changed;
+        try {
+            synchronized (session) {
+                session.cake.mergeEntries(payload.getCake().getEntries());
+                long version = session.cake.getVersion();
+                bakeRecipe.accept(session.cake);
+                changed = session.cake.getEntriesChangedSince(version);
+                // the oven's cake version after it merges the changed entries
+                session.epoch = bakeSession.getVersion() + changed.size();
+            }
+        }
+        catch (RuntimeException e) {
+            sessions.remove(bakeSession.getId());
+            throw e;
+        }
+
+        if (bakeSession.isClose()) {
+            sessions.remove(bakeSession.getId());
+        }
+        else {
+            sessions.put(bakeSession.getId(), session);
+        }
+        return new SessionReply(CakeExchange.SESSION, changed, false);
+    }
+
+    // Listeners are told of each segment in the order they were added; each payload of a batch is a segment of its own
+    public void addSegmentListener(SegmentListener listener) {
+        segmentListeners.add(Objects.requireNonNull(listener));
+    }
+
+    private <T> T inSegment(Supplier<T> bake) {
+        BakeSegment segment = new BakeSegment();
+        BakeSegment previous = segment.enter();
+        // the listeners told of the segment's start but not yet of its end
+        List<SegmentListener> started = new ArrayList<>();
+        try {
+            for (SegmentListener listener: segmentListeners) {
+                listener.beforeSegment(segment);
+                started.add(listener);
+            }
+            T result = bake.get();
+            while (!started.isEmpty()) {
+                started.get(0).afterSegment(segment);
+                started.remove(0);
+            }
+            return result;
+        }
+        catch (Throwable e) {
+            for (SegmentListener listener: started) {
+                try {
+                    listener.onSegmentFailure(segment, e);
+                }
+                catch (Throwable failure) {
+                    e.addSuppressed(failure);
+                }
+            }
+            throw e;
+        }
+        finally {
+            BakeSegment.exit(previous);
+        }
+    }
+
     public void registerHook(BaseIngredientHook hook) {
         hooks.put(hook.getIngredientName(), hook);
         subtypeResolver.registerSubtypes(new NamedType(hook.getDataClass(), hook.getIngredientName()));
     }
 
+    // Bakes the runs of ingredients handed to hooks on the executor, as soon as the runs before them that they depend on
+    // through the cake are baked, rather than one after another. Runs depend on each other as declared by their hooks
+    // (see BaseIngredientHook.getCakeReads); those of hooks that declare nothing wait for every run before them.
+    // Payloads are baked into concurrent cakes, so a cake factory set later must create ConcurrentCakes for hooks to
+    // run in parallel; local bakes run them in parallel if the oven's cake is one.
+    public void enableParallelHooks(Executor executor) {
+        hookExecutor = Objects.requireNonNull(executor);
+        setCakeFactory(ConcurrentCake::new);
+    }
+
     private void bakeIngredient(IngredientSnapshot ingredient, Cake cake) {
+        Executor executor = hookExecutor;
+        if (executor != null && cake instanceof ConcurrentCake) {
+            new ParallelHooks(this::hookFor, (ConcurrentCake)cake, executor).bake(ingredient);
+            return;
+        }
+
+        Batch batch = new Batch();
+        bakeIngredient(ingredient, cake, batch);
+        batch.bake(cake);
+    }
+
+    // Ingredients are collected in the batch while the run of their type goes on; it is baked before the namespace
+    // changes or an ingredient of another type comes, so that hooks bake in the order of the payload.
+    private void bakeIngredient(IngredientSnapshot ingredient, Cake cake, Batch batch) {
         if (ingredient instanceof RecipeSnapshot) {
             RecipeSnapshot recipe = (RecipeSnapshot)ingredient;
 
             Runnable bakeRecipeIngredients = () -> {
+                Batch recipeBatch = new Batch();
                 for (IngredientSnapshot i: recipe.getIngredients()) {
-                    bakeIngredient(i, cake);
+                    bakeIngredient(i, cake, recipeBatch);
                 }
+                recipeBatch.bake(cake);
             };
 
             if (recipe.getContext() != null) {
+                batch.bake(cake);
                 cake.inNamespace(recipe.getContext(), bakeRecipeIngredients);
             }
             else if (recipe.getContextIngredient() != null) {
-                bakeIngredient(recipe.getContextIngredient(), cake);
+                batch.bake(cake);
+                // the context ingredient is baked on its own, as its hook may set the key
+                bakeRun(hookFor(recipe.getContextIngredient()), Collections.singletonList(recipe.getContextIngredient()), cake);
                 if (recipe.getContextIngredient().getKey() != null) {
                     cake.inNamespace(recipe.getContextIngredient().getKey(), bakeRecipeIngredients);
                 }
@@ -64,11 +453,57 @@ public class BackendOven extends AbstractOven {
                 }
             }
             else {
-                bakeRecipeIngredients.run();
+                // same namespace, so the run goes on into the recipe
+                for (IngredientSnapshot i: recipe.getIngredients()) {
+                    bakeIngredient(i, cake, batch);
+                }
             }
         }
         else {
-            hooks.get(ingredient.getIngredientType()).bake(ingredient, cake);
+            batch.add(hookFor(ingredient), ingredient, cake);
+        }
+    }
+
+    private BaseIngredientHook hookFor(IngredientSnapshot ingredient) {
+        BaseIngredientHook hook = hooks.get(ingredient.getIngredientType());
+        if (hook == null) {
+            throw new RuntimeException("cannot bake ingredient; no hook registered for ingredient type '" + ingredient.getIngredientType() + "'");
+        }
+        return hook;
+    }
+
+    // a run of ingredients of the hook's type, a lone ingredient being given to bake
+    @SuppressWarnings("unchecked")
+    static void bakeRun(BaseIngredientHook hook, List<IngredientSnapshot> ingredients, Cake cake) {
+        if (ingredients.size() == 1) {
+            hook.bake(ingredients.get(0), cake);
+        }
+        else if (!ingredients.isEmpty()) {
+            hook.bakeBatch(new ArrayList<>(ingredients), cake);
+        }
+    }
+
+    // a run of ingredients of one type, in the same namespace
+    static class Batch {
+        private BaseIngredientHook hook;
+        private final List<IngredientSnapshot> ingredients = new ArrayList<>();
+
+        void add(BaseIngredientHook ingredientHook, IngredientSnapshot ingredient, Cake cake) {
+            if (ingredientHook != hook) {
+                bake(cake);
+                hook = ingredientHook;
+            }
+            ingredients.add(ingredient);
+        }
+
+        int size() {
+            return ingredients.size();
+        }
+
+        void bake(Cake cake) {
+            bakeRun(hook, ingredients, cake);
+            ingredients.clear();
+            hook = null;
         }
     }
 }
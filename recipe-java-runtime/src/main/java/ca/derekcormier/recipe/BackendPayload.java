@@ -3,17 +3,42 @@ package ca.derekcormier.recipe;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
+
 public class BackendPayload {
     private RecipeSnapshot recipe;
     private Cake cake;
+    private boolean hasCake;
+    private CakeExchange cakeExchange;
+    private BakeSession session;
+    private List<BackendPayload> payloads;
+
+    public BackendPayload(RecipeSnapshot recipe, Cake cake) {
+        this(recipe, cake, null, null);
+    }
+
+    public BackendPayload(RecipeSnapshot recipe, Cake cake, CakeExchange cakeExchange, BakeSession session) {
+        this(recipe, cake, cakeExchange, session, null);
+    }
 
     @JsonCreator
-    public BackendPayload(
+    BackendPayload(
         @JsonProperty("recipe") RecipeSnapshot recipe,
-        @JsonProperty("cake") Cake cake
+        @JsonProperty("cake") Cake cake,
+        @JsonProperty("cakeExchange") CakeExchange cakeExchange,
+        @JsonProperty("session") BakeSession session,
+        @JsonProperty("payloads") List<BackendPayload> payloads
     ) {
         this.recipe = recipe;
+        this.payloads = payloads;
         this.cake = cake == null ? new Cake(): cake;
+        this.hasCake = cake != null;
+        this.cakeExchange = cakeExchange == null ? CakeExchange.FULL : cakeExchange;
+        this.session = session;
+
+        if (this.cakeExchange == CakeExchange.SESSION && session == null) {
+            throw new IllegalArgumentException("session payload must identify its session");
+        }
     }
 
     public RecipeSnapshot getRecipe() {
@@ -23,4 +48,21 @@ public class BackendPayload {
     public Cake getCake() {
         return cake;
     }
+
+    boolean hasCake() {
+        return hasCake;
+    }
+
+    public CakeExchange getCakeExchange() {
+        return cakeExchange;
+    }
+
+    public BakeSession getSession() {
+        return session;
+    }
+
+    // the payloads of a batch from Oven.bakeAll, or null if this is a single payload
+    public List<BackendPayload> getPayloads() {
+        return payloads;
+    }
 }
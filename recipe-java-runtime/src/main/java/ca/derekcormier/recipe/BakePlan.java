@@ -0,0 +1,56 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+
+import java.util.Collections;
+import java.util.List;
+
+// The segments of a recipe and the ingredient subtypes an oven registers to serialize them, computed once by
+// Recipe.freeze so that the recipe can be baked any number of times without walking it again.
+public final class BakePlan {
+    private final Recipe recipe;
+    private final List<Recipe.Segment> segments;
+    private final NamedType[] subtypes;
+    private final int roundTripsSaved;
+    // computed on first parallel bake
+    private volatile int[][] dependencies;
+
+    BakePlan(Recipe recipe, List<Recipe.Segment> segments, NamedType[] subtypes) {
+        this(recipe, segments, subtypes, 0);
+    }
+
+    BakePlan(Recipe recipe, List<Recipe.Segment> segments, NamedType[] subtypes, int roundTripsSaved) {
+        this.recipe = recipe;
+        this.segments = Collections.unmodifiableList(segments);
+        this.subtypes = subtypes;
+        this.roundTripsSaved = roundTripsSaved;
+    }
+
+    // the number of dispatches a bake of the plan makes
+    public int getRoundTrips() {
+        return segments.size();
+    }
+
+    // how many fewer dispatches a bake of the plan makes than a bake of the recipe in its own order
+    public int getRoundTripsSaved() {
+        return roundTripsSaved;
+    }
+
+    List<Recipe.Segment> getSegments() {
+        return segments;
+    }
+
+    NamedType[] getSubtypes() {
+        return subtypes;
+    }
+
+    // for each segment, the earlier segments it has to wait for
+    int[][] getDependencies() {
+        int[][] segmentDependencies = dependencies;
+        if (segmentDependencies == null) {
+            segmentDependencies = new SegmentDependencies(recipe).of(segments);
+            dependencies = segmentDependencies;
+        }
+        return segmentDependencies;
+    }
+}
@@ -0,0 +1,56 @@
+package ca.derekcormier.recipe;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// A segment being baked by a backend oven, with attributes that hooks and segment listeners share for as long as the
+// segment is baked, e.g. a transaction or the rows waiting to be written.
+public final class BakeSegment {
+    private static final ThreadLocal<BakeSegment> CURRENT = new ThreadLocal<>();
+
+    private final Map<String,Object> attributes = new ConcurrentHashMap<>();
+
+    BakeSegment() {
+    }
+
+    // the segment being baked on this thread, or null outside of a bake
+    public static BakeSegment current() {
+        return CURRENT.get();
+    }
+
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        }
+        else {
+            attributes.put(name, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T computeAttributeIfAbsent(String name, Function<String,T> create) {
+        return (T)attributes.computeIfAbsent(Objects.requireNonNull(name), create);
+    }
+
+    // makes this the current segment of the thread, returning the segment it was before
+    BakeSegment enter() {
+        BakeSegment previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    static void exit(BakeSegment previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Identifies the backend session a payload continues. The epoch is the version of the oven's cake that the session
+// already holds (0 opens a new session) and the version is the oven's cake version when the payload was sent.
+public class BakeSession {
+    private final String id;
+    private final long epoch;
+    private final long version;
+    private final boolean close;
+
+    @JsonCreator
+    public BakeSession(
+        @JsonProperty("id") String id,
+        @JsonProperty("epoch") long epoch,
+        @JsonProperty("version") long version,
+        @JsonProperty("close") boolean close
+    ) {
+        if (id == null) {
+            throw new IllegalArgumentException("bake session must have an id");
+        }
+        this.id = id;
+        this.epoch = epoch;
+        this.version = version;
+        this.close = close;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // set on the last segment of the bake for the session's domain, so the backend can drop the session right away
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isClose() {
+        return close;
+    }
+}
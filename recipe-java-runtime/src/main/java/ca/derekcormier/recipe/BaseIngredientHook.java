@@ -1,5 +1,7 @@
 package ca.derekcormier.recipe;
 
+import java.util.List;
+
 public abstract class BaseIngredientHook<T> {
     private final String ingredientName;
     private final Class<T> dataClass;
@@ -17,5 +19,26 @@ public abstract class BaseIngredientHook<T> {
         return dataClass;
     }
 
+    // Cake keys or namespaces the hook reads from the cake, relative to the namespace it bakes in, or null if they are
+    // not declared. Used by backend ovens with parallel hooks enabled to tell which ingredients can bake at once.
+    public List<String> getCakeReads() {
+        return null;
+    }
+
+    // cake keys or namespaces the hook publishes, besides the ingredient's key if keyed, or null if they are not declared
+    public List<String> getCakePublishes() {
+        return null;
+    }
+
     public abstract void bake(T ingredient, Cake cake);
+
+    // Bakes a run of ingredients of this hook's type that follow one another in the same namespace of a payload, in
+    // order; a lone ingredient is given to bake instead. Hooks writing to a store can override it to write the run in
+    // batches of whatever size suits the store, as long as the keys of each ingredient are published as bake would
+    // publish them, in order.
+    public void bakeBatch(List<T> ingredients, Cake cake) {
+        for (T ingredient: ingredients) {
+            bake(ingredient, cake);
+        }
+    }
 }
@@ -0,0 +1,7 @@
+package ca.derekcormier.recipe;
+
+// A dispatcher sent payloads in the bytes of a payload codec rather than as JSON text, see Oven.addBinaryDispatcher
+@FunctionalInterface
+public interface BinaryDispatcher {
+    byte[] dispatch(byte[] payload);
+}
@@ -0,0 +1,60 @@
+package ca.derekcormier.recipe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Buffers that payloads are written into, kept between bakes so that each payload does not grow a new buffer from a
+// few bytes up to its size. At most MAX_POOLED buffers are kept, and none larger than MAX_RETAINED bytes, so that a
+// single huge payload is not held on to for good.
+final class BufferPool {
+    private static final int MAX_POOLED = 16;
+    private static final int MAX_RETAINED = 8 * 1024 * 1024;
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    private final Deque<Buffer> buffers = new ArrayDeque<>();
+
+    Buffer acquire() {
+        Buffer buffer;
+        synchronized (buffers) {
+            buffer = buffers.pollFirst();
+        }
+        return buffer != null ? buffer : new Buffer();
+    }
+
+    // the buffer must not be used once released
+    void release(Buffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED) {
+            return;
+        }
+        buffer.reset();
+        synchronized (buffers) {
+            if (buffers.size() < MAX_POOLED) {
+                buffers.addFirst(buffer);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (buffers) {
+            return buffers.size();
+        }
+    }
+
+    static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(INITIAL_SIZE);
+        }
+
+        // reads what was written, without copying it
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
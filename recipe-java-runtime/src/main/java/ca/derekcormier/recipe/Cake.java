@@ -2,22 +2,69 @@ package ca.derekcormier.recipe;
 
 import org.apache.commons.lang.StringUtils;
 
-import com.fasterxml.jackson.annotation.JsonAnyGetter;
-import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
+// Cakes are written and read as a JSON object of their entries, without boxing numbers where the entries keep them
+// unboxed. Subclasses serialize as plain cakes so that ovens can write them to payloads without copying.
+@JsonSerialize(using = CakeSerializer.class)
+@JsonDeserialize(using = CakeDeserializer.class)
 public class Cake {
     public static final String SEPARATOR = ".";
-    private final Map<String,Object> entries = new HashMap<>();
-    private final LinkedList<String> prefixStack = new LinkedList<>();
+    private final Map<String,Object> entries;
+    // the entries, if they are stored in a map that keeps numbers unboxed
+    private final PrimitiveEntryMap primitiveEntries;
+    private final CakeIndex index;
+    private final CakeNamespace namespace = new CakeNamespace();
+    private CakeValueIndex valueIndex;
+    // keys in the order they were written, once change tracking is on; the cake version is the size of the log
+    private List<String> changeLog;
+
+    // How getPublishedKeyForValue matches values when the cake keeps a reverse value index
+    public enum ValueIndex {
+        IDENTITY,
+        EQUALITY
+    }
+
+    public Cake() {
+        this(new PrimitiveEntryMap(), new HashCakeIndex());
+    }
+
+    Cake(Map<String,Object> entries, CakeIndex index) {
+        this.entries = entries;
+        this.primitiveEntries = entries instanceof PrimitiveEntryMap ? (PrimitiveEntryMap)entries : null;
+        this.index = index;
+    }
+
+    // Creates a cake whose entries are kept in persistent (structurally shared) storage, making fork O(1).
+    public static Cake persistent() {
+        return new Cake(new PersistentEntryMap(), new PersistentCakeIndex());
+    }
+
+    // Returns an independent cake with the same entries, in the root namespace. Persistent cakes share their storage
+    // with the fork until either one is written to; other cakes copy their entries. A value index is rebuilt.
+    public Cake fork() {
+        Cake forked;
+        if (entries instanceof PersistentEntryMap) {
+            forked = new Cake(((PersistentEntryMap)entries).fork(), ((PersistentCakeIndex)index).fork());
+        }
+        else {
+            forked = new Cake();
+            forked.setEntries(entries);
+        }
+        copyValueIndexTo(forked);
+        return forked;
+    }
 
     public static String key(String...subKeys) {
         if (subKeys.length == 0) {
@@ -27,85 +74,174 @@ public class Cake {
         return StringUtils.join(subKeys, Cake.SEPARATOR);
     }
 
-    @SuppressWarnings("unchecked")
     public <T> T get(String... key) {
-        List<String> keys = ((key == null) ? new ArrayList<String>() : Arrays.asList(key)).stream()
-            .flatMap(k -> Arrays.stream(k == null ? new String[]{null} : StringUtils.split(k, Cake.SEPARATOR)))
-            .collect(Collectors.toList());
+        return resolve(CakeKey.of(key));
+    }
 
-        if (keys.isEmpty()) {
-            throw new IllegalArgumentException("cannot get value for empty key");
-        }
+    // Same as get, for a key parsed up front with CakeKey.of
+    @SuppressWarnings("unchecked")
+    public <T> T resolve(CakeKey key) {
+        return (T)valueOf(resolveKey(key));
+    }
 
-        keys.forEach(Cake::validateKey);
-        String fullKey = StringUtils.join(keys, Cake.SEPARATOR);
+    // Same as get, but returns null instead of throwing if the key is missing, ambiguous or invalid
+    public <T> T tryGet(String... key) {
+        CakeKey cakeKey = CakeKey.tryOf(key);
+        return cakeKey == null ? null : tryResolve(cakeKey);
+    }
 
-        // search within current namespace
-        String searchKey = getPrefixWithSeparator(prefixStack) + fullKey;
-        if (entries.containsKey(searchKey)) {
-            return (T)entries.get(searchKey);
-        }
+    @SuppressWarnings("unchecked")
+    public <T> T tryResolve(CakeKey key) {
+        String fullKey = findKey(key);
+        return fullKey == null ? null : (T)valueOf(fullKey);
+    }
 
-        // search within each ancestor namespace up to the root
-        LinkedList<String> namespaces = new LinkedList<>(prefixStack);
-        while (!namespaces.isEmpty()) {
-            namespaces.removeLast();
-            searchKey = getPrefixWithSeparator(namespaces) + fullKey;
-            if (entries.containsKey(searchKey)) {
-                return (T)entries.get(searchKey);
-            }
-        }
+    // Same as tryGet, empty if the key cannot be resolved or its value is null
+    public <T> Optional<T> find(String... key) {
+        return Optional.ofNullable(tryGet(key));
+    }
 
-        // search within any other namespace (if unambiguous)
-        List<String> candidates = entries.keySet().stream().filter(k -> {
-            String[] subkeys = StringUtils.split(k, SEPARATOR);
-            if (keys.size() > subkeys.length) {
-                return false;
-            }
-            for (int i = 0; i < keys.size(); i++) {
-                if (!keys.get(keys.size() - 1 - i).equals(subkeys[subkeys.length - 1 - i])) {
-                    return false;
-                }
-            }
-            return true;
-        }).collect(Collectors.toList());
+    public <T> Optional<T> find(Class<T> clazz, String... key) {
+        String fullKey = findKey(key);
+        return fullKey == null ? Optional.empty() : Optional.ofNullable(valueOf(clazz, fullKey));
+    }
 
-        if (candidates.size() == 1) {
-            return (T)entries.get(candidates.get(0));
-        }
-        else if (candidates.isEmpty()) {
-            throw new RuntimeException("cake does not contain key '" + fullKey + "'");
+    // Whether get would return a value (possibly null) for the key rather than throw
+    public boolean containsResolvable(String... key) {
+        CakeKey cakeKey = CakeKey.tryOf(key);
+        return cakeKey != null && findKey(cakeKey) != null;
+    }
+
+    // Lazily read values (see Oven.enableLazyCake) are read straight into the class
+    public <T> T get(Class<T> clazz, String... key) {
+        return resolve(clazz, CakeKey.of(key));
+    }
+
+    public <T> T resolve(Class<T> clazz, CakeKey key) {
+        return valueOf(clazz, resolveKey(key));
+    }
+
+    // The numeric getters convert values as Number.longValue() etc. would, without boxing values that were published
+    // with the numeric publish methods or read from JSON (except in persistent and concurrent cakes, which box them).
+    public long getLong(String... key) {
+        return resolveLong(CakeKey.of(key));
+    }
+
+    public long resolveLong(CakeKey key) {
+        String fullKey = resolveKey(key);
+        if (primitiveEntries != null) {
+            return primitiveEntries.getLong(fullKey);
         }
-        else {
-            throw new RuntimeException("cannot retrieve ambiguous key '" + fullKey + "'");
+        return PrimitiveEntryMap.toNumber(fullKey, entries.get(fullKey)).longValue();
+    }
+
+    public int getInt(String... key) {
+        return resolveInt(CakeKey.of(key));
+    }
+
+    public int resolveInt(CakeKey key) {
+        String fullKey = resolveKey(key);
+        if (primitiveEntries != null) {
+            return primitiveEntries.getInt(fullKey);
         }
+        return PrimitiveEntryMap.toNumber(fullKey, entries.get(fullKey)).intValue();
     }
 
-    @SuppressWarnings("unchecked")
-    public <T> T get(Class<T> clazz, String... key) {
-        return clazz.cast(get(key));
+    public double getDouble(String... key) {
+        return resolveDouble(CakeKey.of(key));
+    }
+
+    public double resolveDouble(CakeKey key) {
+        String fullKey = resolveKey(key);
+        if (primitiveEntries != null) {
+            return primitiveEntries.getDouble(fullKey);
+        }
+        return PrimitiveEntryMap.toNumber(fullKey, entries.get(fullKey)).doubleValue();
     }
 
     public void publish(String key, Object value) {
-        getSubKeysAndValidateFullKey(key);
-        String newKey = getPrefixWithSeparator(prefixStack) + key;
-        entries.put(newKey, value);
+        publishAt(CakeKey.parse(key), value);
+    }
+
+    // Same as publish, for a key parsed up front with CakeKey.parse
+    public void publishAt(CakeKey key, Object value) {
+        CakeNamespace namespace = getCurrentNamespace();
+        putEntry(namespace.qualify(key), value, namespace.qualifySubKeys(key));
+    }
+
+    // Same as publish; get returns the value as a Long, Integer or Double respectively
+    public void publishLong(String key, long value) {
+        publishLongAt(CakeKey.parse(key), value);
+    }
+
+    public void publishLongAt(CakeKey key, long value) {
+        CakeNamespace namespace = getCurrentNamespace();
+        putLongEntry(namespace.qualify(key), value, namespace.qualifySubKeys(key));
+    }
+
+    public void publishInt(String key, int value) {
+        publishIntAt(CakeKey.parse(key), value);
+    }
+
+    public void publishIntAt(CakeKey key, int value) {
+        CakeNamespace namespace = getCurrentNamespace();
+        putIntEntry(namespace.qualify(key), value, namespace.qualifySubKeys(key));
+    }
+
+    public void publishDouble(String key, double value) {
+        publishDoubleAt(CakeKey.parse(key), value);
+    }
+
+    public void publishDoubleAt(CakeKey key, double value) {
+        CakeNamespace namespace = getCurrentNamespace();
+        putDoubleEntry(namespace.qualify(key), value, namespace.qualifySubKeys(key));
     }
 
     public void inNamespace(String key, Runnable runnable) {
-        List<String> keys = getSubKeysAndValidateFullKey(key);
-        keys.forEach(prefixStack::addLast);
+        inNamespace(CakeKey.parse(key), runnable);
+    }
+
+    public void inNamespace(CakeKey key, Runnable runnable) {
+        CakeNamespace namespace = getCurrentNamespace();
+        namespace.push(key);
 
         try {
             runnable.run();
         }
         finally {
-            keys.forEach(k -> prefixStack.removeLast());
+            namespace.pop(key.size());
+        }
+    }
+
+    protected void copyValueIndexTo(Cake cake) {
+        if (valueIndex != null) {
+            cake.indexValues(valueIndex.getMode());
+        }
+    }
+
+    // Keeps a reverse index from values to keys so that getPublishedKeyForValue does not scan every entry. In EQUALITY
+    // mode, values must not change their hash code after being published.
+    public void indexValues(ValueIndex mode) {
+        CakeValueIndex valueIndex = new CakeValueIndex(mode);
+        for (String key: new ArrayList<>(entries.keySet())) {
+            Object value = valueOf(key);
+            if (primitiveEntries != null) {
+                // box numbers stored unboxed once, so that reads return the instance the index holds
+                primitiveEntries.putObject(key, value);
+            }
+            valueIndex.put(key, false, null, value);
         }
+        this.valueIndex = valueIndex;
+    }
+
+    boolean indexesValues() {
+        return valueIndex != null;
     }
 
     public String getPublishedKeyForValue(Object value, boolean fullyQualified) {
-        List<String> matchingKeys = entries.entrySet().stream().filter(e -> e.getValue().equals(value)).map(Map.Entry::getKey).collect(Collectors.toList());
+        List<String> matchingKeys = valueIndex != null
+            ? valueIndex.getKeys(value)
+            : entries.entrySet().stream().filter(e -> e.getValue().equals(value)).map(Map.Entry::getKey).collect(Collectors.toList());
         if (matchingKeys.size() == 1) {
             if (fullyQualified) {
                 return matchingKeys.get(0);
@@ -121,96 +257,241 @@ public class Cake {
 
     @JsonIgnore
     public String getNamespace() {
-        return StringUtils.join(prefixStack, Cake.SEPARATOR);
+        return getCurrentNamespace().getNamespace();
     }
 
     public boolean hasContext() {
-        try {
-            getContext();
-            return true;
-        }
-        catch (RuntimeException e) {
-            return false;
-        }
+        return !getCurrentNamespace().isRoot() && entries.containsKey(getNamespace());
     }
 
     @JsonIgnore
+    @SuppressWarnings("unchecked")
     public <T> T getContext() {
-        if (this.prefixStack.isEmpty()) {
+        return (T)valueOf(contextKey());
+    }
+
+    @JsonIgnore
+    public <T> T getContext(Class<T> clazz) {
+        return valueOf(clazz, contextKey());
+    }
+
+    private String contextKey() {
+        if (getCurrentNamespace().isRoot()) {
             throw new IllegalStateException("cannot get context in root namespace");
         }
         else {
-            String prefix = this.getPrefixWithSeparator(this.prefixStack);
-            prefix = prefix.substring(0, prefix.length() - 1);
-
-            if (!entries.containsKey(prefix)) {
-                throw new RuntimeException("cake does not contain context value for namespace " + prefix);
+            String namespace = getNamespace();
+            if (!entries.containsKey(namespace)) {
+                throw new RuntimeException("cake does not contain context value for namespace " + namespace);
             }
-            return (T)entries.get(prefix);
+            return namespace;
         }
     }
 
-    @JsonIgnore
+    // Same as getContext, but returns null instead of throwing if there is no context
     @SuppressWarnings("unchecked")
-    public <T> T getContext(Class<T> clazz) {
-        return clazz.cast(getContext());
+    public <T> T tryGetContext() {
+        return hasContext() ? (T)valueOf(getNamespace()) : null;
     }
 
     @JsonIgnore
+    @SuppressWarnings("unchecked")
     public <T> T getOrGetContext(String... key) {
-        try {
-            return get(key);
-        }
-        catch (RuntimeException e) {
-            return getContext();
-        }
+        String fullKey = findKey(key);
+        return fullKey != null ? (T)valueOf(fullKey) : getContext();
     }
 
     @JsonIgnore
     public <T> T getOrGetContext(Class<T> clazz, String... key) {
-        try {
-            return clazz.cast(get(key));
+        String fullKey = findKey(key);
+        if (fullKey != null) {
+            Object value = valueOf(fullKey);
+            if (value == null || clazz.isInstance(value)) {
+                return clazz.cast(value);
+            }
         }
-        catch (RuntimeException e) {
-            return clazz.cast(getContext());
+        return clazz.cast(getContext());
+    }
+
+    // Parses a lazily read value in place, without recording a change since it stays the same value
+    private Object valueOf(String fullKey) {
+        Object value = entries.get(fullKey);
+        if (value instanceof LazyValue) {
+            LazyValue lazyValue = (LazyValue)value;
+            value = lazyValue.materialize();
+            // the parsed value only takes the place of the lazy one if nothing was published over it while parsing
+            if (entries.get(fullKey) == lazyValue) {
+                entries.put(fullKey, value);
+            }
         }
+        return value;
     }
 
-    private static void validateKey(String key) {
-        if (StringUtils.isBlank(key)) {
-            throw new IllegalArgumentException("keys cannot be empty");
+    private <T> T valueOf(Class<T> clazz, String fullKey) {
+        Object value = entries.get(fullKey);
+        return value instanceof LazyValue ? ((LazyValue)value).as(clazz) : clazz.cast(value);
+    }
+
+    private String resolveKey(CakeKey key) {
+        String fullKey = findKey(key);
+        if (fullKey != null) {
+            return fullKey;
         }
-        if (key.contains(Cake.SEPARATOR)) {
-            throw new IllegalArgumentException("keys cannot contain the namespace separator: " + Cake.SEPARATOR);
+        else if (index.countKeysEndingWith(key) == 0) {
+            throw new RuntimeException("cake does not contain key '" + key + "'");
+        }
+        else {
+            throw new RuntimeException("cannot retrieve ambiguous key '" + key + "'");
         }
     }
 
-    private List<String> getSubKeysAndValidateFullKey(String fullKey) {
-        List<String> keys = (null == fullKey) ? new ArrayList<>() : Arrays.asList(StringUtils.split(fullKey, Cake.SEPARATOR));
-        if (keys.isEmpty() || StringUtils.countMatches(fullKey, Cake.SEPARATOR) != keys.size() - 1) {
-            throw new IllegalArgumentException("cannot publish value for empty key");
+    // Returns the published key that a lookup of the key resolves to, or null if it is missing or ambiguous
+    private String findKey(CakeKey key) {
+        // search within current namespace and then each ancestor namespace up to the root
+        String fullKey = index.findKeyInNamespaces(getCurrentNamespace().getSubKeys(), key);
+        if (fullKey != null) {
+            return fullKey;
         }
 
-        keys.forEach(Cake::validateKey);
-        return keys;
+        // search within any other namespace (if unambiguous)
+        return index.findOnlyKeyEndingWith(key);
+    }
+
+    private String findKey(String... key) {
+        CakeKey cakeKey = CakeKey.tryOf(key);
+        return cakeKey == null ? null : findKey(cakeKey);
+    }
+
+    static boolean isValidKey(String key) {
+        return !StringUtils.isBlank(key) && !key.contains(Cake.SEPARATOR);
+    }
+
+    static void validateKey(String key) {
+        if (StringUtils.isBlank(key)) {
+            throw new IllegalArgumentException("keys cannot be empty");
+        }
+        if (key.contains(Cake.SEPARATOR)) {
+            throw new IllegalArgumentException("keys cannot contain the namespace separator: " + Cake.SEPARATOR);
+        }
     }
 
-    private String getPrefixWithSeparator(List<String> namespaces) {
-        return StringUtils.join(namespaces, Cake.SEPARATOR) + (namespaces.size() > 0 ? Cake.SEPARATOR : "");
+    CakeNamespace getCurrentNamespace() {
+        return namespace;
     }
 
-    @JsonAnyGetter
     protected Map<String,Object> getEntries() {
         return entries;
     }
 
     protected void setEntries(Map<String,Object> entries) {
         this.entries.clear();
-        this.entries.putAll(entries);
+        this.index.clear();
+        if (valueIndex != null) {
+            valueIndex.clear();
+        }
+
+        if (primitiveEntries != null && valueIndex == null && entries instanceof PrimitiveEntryMap) {
+            primitiveEntries.copyFrom((PrimitiveEntryMap)entries);
+            entries.keySet().forEach(key -> entryPut(key, null));
+        }
+        else {
+            entries.forEach(this::putEntry);
+        }
+    }
+
+    // Starts recording written keys so that getEntriesChangedSince can tell which entries changed after a version
+    void trackChanges() {
+        if (changeLog == null) {
+            changeLog = Collections.synchronizedList(new ArrayList<>());
+        }
+    }
+
+    long getVersion() {
+        return changeLog == null ? 0 : changeLog.size();
+    }
+
+    Map<String,Object> getEntriesChangedSince(long version) {
+        if (changeLog == null) {
+            throw new IllegalStateException("cannot get changed entries; cake is not tracking changes");
+        }
+
+        List<String> changedKeys;
+        synchronized (changeLog) {
+            changedKeys = new ArrayList<>(changeLog.subList((int)version, changeLog.size()));
+        }
+
+        Map<String,Object> changed = new LinkedHashMap<>();
+        for (String key: changedKeys) {
+            changed.put(key, entries.get(key));
+        }
+        return changed;
+    }
+
+    // Publishes fully qualified entries over the existing ones, unlike setEntries which replaces them
+    void mergeEntries(Map<String,Object> entries) {
+        entries.forEach(this::putEntry);
+    }
+
+    void putEntry(String key, Object value) {
+        putEntry(key, value, null);
     }
 
-    @JsonAnySetter
-    private void setEntry(String key, Object value) {
-        entries.put(key, value);
+    // sub keys are the key's, if already split
+    private void putEntry(String key, Object value, String[] subKeys) {
+        if (valueIndex != null) {
+            synchronized (valueIndex) {
+                boolean replaced = entries.containsKey(key);
+                // the index holds the value itself, so numbers are kept boxed for reads to return the same instance
+                Object previous = primitiveEntries != null ? primitiveEntries.putObject(key, value) : entries.put(key, value);
+                valueIndex.put(key, replaced, previous, value);
+            }
+        }
+        else if (primitiveEntries != null) {
+            primitiveEntries.store(key, value);
+        }
+        else {
+            entries.put(key, value);
+        }
+        entryPut(key, subKeys);
+    }
+
+    // the value index works on boxed values, so numbers are only stored unboxed without one (see putEntry)
+    void putLongEntry(String key, long value, String[] subKeys) {
+        if (primitiveEntries == null || valueIndex != null) {
+            putEntry(key, value, subKeys);
+            return;
+        }
+        primitiveEntries.putLong(key, value);
+        entryPut(key, subKeys);
+    }
+
+    void putIntEntry(String key, int value, String[] subKeys) {
+        if (primitiveEntries == null || valueIndex != null) {
+            putEntry(key, value, subKeys);
+            return;
+        }
+        primitiveEntries.putInt(key, value);
+        entryPut(key, subKeys);
+    }
+
+    void putDoubleEntry(String key, double value, String[] subKeys) {
+        if (primitiveEntries == null || valueIndex != null) {
+            putEntry(key, value, subKeys);
+            return;
+        }
+        primitiveEntries.putDouble(key, value);
+        entryPut(key, subKeys);
+    }
+
+    private void entryPut(String key, String[] subKeys) {
+        if (subKeys != null) {
+            index.add(key, subKeys);
+        }
+        else {
+            index.add(key);
+        }
+        if (changeLog != null) {
+            changeLog.add(key);
+        }
     }
 }
@@ -0,0 +1,197 @@
+package ca.derekcormier.recipe;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The cake keys some ingredients may read and publish, and the namespaces whose context they may get. Published
+// keys are fully qualified. Read keys are kept as declared, since a lookup falls back to keys in other namespaces
+// that end with the key.
+final class CakeAccess {
+    private boolean undeclared;
+    private final List<String[]> reads = new ArrayList<>();
+    private final List<String[]> publishes = new ArrayList<>();
+    private final List<String[]> contexts = new ArrayList<>();
+
+    CakeAccess() {
+    }
+
+    CakeAccess(Ingredient ingredient, List<String> namespace) {
+        this(ingredient.getCakeReads(), ingredient.getCakePublishes(),
+            ingredient instanceof KeyedIngredient ? ((KeyedIngredient)ingredient).getKey() : null, namespace);
+    }
+
+    // the access of an ingredient with the given declarations, and key if keyed, baked in the namespace
+    CakeAccess(List<String> declaredReads, List<String> declaredPublishes, String ingredientKey, List<String> namespace) {
+        undeclared = declaredReads == null && declaredPublishes == null;
+
+        if (declaredReads != null) {
+            for (String key: declaredReads) {
+                reads.add(StringUtils.split(key, Cake.SEPARATOR));
+            }
+        }
+        if (!namespace.isEmpty()) {
+            contexts.add(namespace.toArray(new String[0]));
+        }
+
+        if (declaredPublishes != null) {
+            for (String key: declaredPublishes) {
+                publishes.add(qualify(namespace, key));
+            }
+        }
+        if (ingredientKey != null) {
+            publishes.add(qualify(namespace, ingredientKey));
+        }
+    }
+
+    void add(CakeAccess other) {
+        undeclared |= other.undeclared;
+        reads.addAll(other.reads);
+        publishes.addAll(other.publishes);
+        contexts.addAll(other.contexts);
+    }
+
+    boolean conflictsWith(CakeAccess other) {
+        if (undeclared || other.undeclared) {
+            return true;
+        }
+        for (String[] published: publishes) {
+            if (overlapsAny(published, other.publishes) || overlapsAny(published, other.reads)) {
+                return true;
+            }
+        }
+        for (String[] read: reads) {
+            if (overlapsAny(read, other.publishes)) {
+                return true;
+            }
+        }
+        return publishesContext(publishes, other.contexts) || publishesContext(other.publishes, contexts);
+    }
+
+    // whether a key or namespace is published at or above one of the contexts
+    private static boolean publishesContext(List<String[]> publishes, List<String[]> contexts) {
+        for (String[] published: publishes) {
+            for (String[] context: contexts) {
+                if (published.length <= context.length && Arrays.equals(published, Arrays.copyOf(context, published.length))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String[] qualify(List<String> namespace, String key) {
+        List<String> subKeys = new ArrayList<>(namespace);
+        subKeys.addAll(Arrays.asList(StringUtils.split(key, Cake.SEPARATOR)));
+        return subKeys.toArray(new String[0]);
+    }
+
+    private static boolean overlapsAny(String[] key, List<String[]> keys) {
+        for (String[] other: keys) {
+            if (contains(key, other) || contains(other, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether the sub keys of part appear in key, in a row, e.g. user.id in org.user.id.value
+    private static boolean contains(String[] key, String[] part) {
+        for (int start = 0; start + part.length <= key.length; start++) {
+            int i = 0;
+            while (i < part.length && key[start + i].equals(part[i])) {
+                i++;
+            }
+            if (i == part.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Numbers the accesses added to it and finds, of those, the ones that may conflict with another access, so that
+    // the access is only checked against them rather than against every access added. Two declared accesses can only
+    // conflict if a key that one of them publishes shares a sub key with a key of the other.
+    static final class Index {
+        private int size;
+        // accesses that conflict with every other, or whose keys without sub keys overlap every key
+        private final List<Integer> matchingAll = new ArrayList<>();
+        // for each sub key, the accesses added that publish a key with it, and those with a key of any kind with it
+        private final Map<String,List<Integer>> publishing = new HashMap<>();
+        private final Map<String,List<Integer>> using = new HashMap<>();
+
+        // adds the access, numbered by the number of accesses added before it
+        void add(CakeAccess access) {
+            int index = size++;
+            if (matchesAll(access)) {
+                matchingAll.add(index);
+                return;
+            }
+            for (String[] key: access.publishes) {
+                indexSubKeys(publishing, key, index);
+            }
+            for (List<String[]> keys: Arrays.asList(access.reads, access.publishes, access.contexts)) {
+                for (String[] key: keys) {
+                    indexSubKeys(using, key, index);
+                }
+            }
+        }
+
+        // the numbers of the accesses added that may conflict with the access, which conflictsWith tells for sure
+        Set<Integer> candidates(CakeAccess access) {
+            Set<Integer> candidates = new HashSet<>(matchingAll);
+            if (matchesAll(access)) {
+                for (int i = 0; i < size; i++) {
+                    candidates.add(i);
+                }
+                return candidates;
+            }
+            for (String[] key: access.publishes) {
+                addIndexed(candidates, using, key);
+            }
+            for (List<String[]> keys: Arrays.asList(access.reads, access.publishes, access.contexts)) {
+                for (String[] key: keys) {
+                    addIndexed(candidates, publishing, key);
+                }
+            }
+            return candidates;
+        }
+
+        private static boolean matchesAll(CakeAccess access) {
+            if (access.undeclared) {
+                return true;
+            }
+            for (List<String[]> keys: Arrays.asList(access.reads, access.publishes)) {
+                for (String[] key: keys) {
+                    if (key.length == 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static void indexSubKeys(Map<String,List<Integer>> indexed, String[] key, int index) {
+            for (String subKey: key) {
+                List<Integer> indices = indexed.computeIfAbsent(subKey, k -> new ArrayList<>());
+                // a key may repeat a sub key, or the access have it in several keys
+                if (indices.isEmpty() || indices.get(indices.size() - 1) != index) {
+                    indices.add(index);
+                }
+            }
+        }
+
+        private static void addIndexed(Set<Integer> candidates, Map<String,List<Integer>> indexed, String[] key) {
+            for (String subKey: key) {
+                candidates.addAll(indexed.getOrDefault(subKey, Collections.emptyList()));
+            }
+        }
+    }
+}
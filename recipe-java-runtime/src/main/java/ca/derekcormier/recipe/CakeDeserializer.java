@@ -0,0 +1,70 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+// Reads a cake from an object of its entries. Ints, longs and doubles are read straight into the cake's unboxed
+// storage (coming back from get as the Integer, Long or Double Jackson would have produced); other values are read as
+// untyped objects. If the LAZY_SOURCE attribute holds the JSON text being read, object and array values are skipped
+// over and kept as their text instead. New cakes come from the Supplier<Cake> in the CAKE_FACTORY attribute, if set.
+class CakeDeserializer extends StdDeserializer<Cake> {
+    static final String CAKE_FACTORY = "ca.derekcormier.recipe.cakeFactory";
+    static final String LAZY_SOURCE = "ca.derekcormier.recipe.lazySource";
+
+    CakeDeserializer() {
+        super(Cake.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Cake deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        Supplier<Cake> cakeFactory = (Supplier<Cake>)context.getAttribute(CAKE_FACTORY);
+        return deserialize(parser, context, cakeFactory != null ? cakeFactory.get() : new Cake());
+    }
+
+    @Override
+    public Cake deserialize(JsonParser parser, DeserializationContext context, Cake cake) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (Cake)context.handleUnexpectedToken(Cake.class, parser);
+        }
+
+        boolean coerceInts = context.hasSomeOfFeatures(F_MASK_INT_COERCIONS);
+        boolean coerceFloats = context.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        // a value index needs the parsed values
+        String source = cake.indexesValues() ? null : (String)context.getAttribute(LAZY_SOURCE);
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String key = parser.getCurrentName();
+            token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_NUMBER_INT && !coerceInts && parser.getNumberType() == JsonParser.NumberType.INT) {
+                cake.putIntEntry(key, parser.getIntValue(), null);
+            }
+            else if (token == JsonToken.VALUE_NUMBER_INT && !coerceInts && parser.getNumberType() == JsonParser.NumberType.LONG) {
+                cake.putLongEntry(key, parser.getLongValue(), null);
+            }
+            else if (token == JsonToken.VALUE_NUMBER_FLOAT && !coerceFloats) {
+                cake.putDoubleEntry(key, parser.getDoubleValue(), null);
+            }
+            else if (source != null && (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)) {
+                int start = (int)parser.getTokenLocation().getCharOffset();
+                parser.skipChildren();
+                int end = (int)parser.getCurrentLocation().getCharOffset();
+                cake.putEntry(key, new LazyValue(source.substring(start, end), parser.getCodec()));
+            }
+            else {
+                cake.putEntry(key, context.readValue(parser, Object.class));
+            }
+        }
+        return cake;
+    }
+}
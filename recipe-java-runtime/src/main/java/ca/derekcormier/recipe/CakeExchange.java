@@ -0,0 +1,12 @@
+package ca.derekcormier.recipe;
+
+// How much of the cake an oven and a backend oven exchange for each segment
+public enum CakeExchange {
+    // the full cake is sent to the backend and returned from it
+    FULL,
+    // the backend returns only the entries its hooks published or overwrote, which the oven merges into its cake
+    DELTA,
+    // the backend keeps the cake of each bake in a session between segments, so the oven only sends the entries the
+    // backend has not seen yet and the backend only returns the entries it changed
+    SESSION
+}
@@ -0,0 +1,27 @@
+package ca.derekcormier.recipe;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.List;
+
+// Trie over the sub keys of every published key, stored last sub key first, so that all keys ending in a given
+// sequence of sub keys share a single node. Each node counts the keys beneath it, which lets partial key lookups
+// find or reject candidates by walking a path proportional to the key depth instead of scanning every entry.
+abstract class CakeIndex {
+    public void add(String fullKey) {
+        add(fullKey, StringUtils.split(fullKey, Cake.SEPARATOR));
+    }
+
+    protected abstract void add(String fullKey, String[] subKeys);
+
+    public abstract void clear();
+
+    // Returns the published key formed by the longest prefix of the namespace followed by the key, or null if the key
+    // is not published in the namespace or any of its ancestors.
+    public abstract String findKeyInNamespaces(List<String> namespace, CakeKey key);
+
+    public abstract int countKeysEndingWith(CakeKey key);
+
+    // Returns the published key whose trailing sub keys equal the given key, or null if there is not exactly one.
+    public abstract String findOnlyKeyEndingWith(CakeKey key);
+}
@@ -0,0 +1,107 @@
+package ca.derekcormier.recipe;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Pre-parsed cake key. Sub keys are validated once, and the joined form and hash are cached, so a key
+// built up front can be passed to the cake repeatedly without re-splitting or re-joining strings.
+public final class CakeKey {
+    private final String[] subKeys;
+    private final String joined;
+    private final int hash;
+
+    private CakeKey(String[] subKeys) {
+        this.subKeys = subKeys;
+        this.joined = StringUtils.join(subKeys, Cake.SEPARATOR);
+        this.hash = Arrays.hashCode(subKeys);
+    }
+
+    // Creates a key from sub keys, each of which may itself contain separators (same rules as Cake.get).
+    public static CakeKey of(String... key) {
+        List<String> subKeys = splitSubKeys(key);
+        if (subKeys.isEmpty()) {
+            throw new IllegalArgumentException("cannot get value for empty key");
+        }
+
+        subKeys.forEach(Cake::validateKey);
+        return new CakeKey(subKeys.toArray(new String[subKeys.size()]));
+    }
+
+    // Same as of, but returns null for an empty or invalid key instead of throwing.
+    static CakeKey tryOf(String... key) {
+        List<String> subKeys = splitSubKeys(key);
+        if (subKeys.isEmpty()) {
+            return null;
+        }
+
+        for (String subKey: subKeys) {
+            if (!Cake.isValidKey(subKey)) {
+                return null;
+            }
+        }
+        return new CakeKey(subKeys.toArray(new String[subKeys.size()]));
+    }
+
+    private static List<String> splitSubKeys(String... key) {
+        List<String> subKeys = new ArrayList<>();
+        if (key != null) {
+            for (String k: key) {
+                if (k == null) {
+                    subKeys.add(null);
+                }
+                else {
+                    subKeys.addAll(Arrays.asList(StringUtils.split(k, Cake.SEPARATOR)));
+                }
+            }
+        }
+        return subKeys;
+    }
+
+    // Creates a key from a full key, rejecting empty sub keys (same rules as Cake.publish).
+    public static CakeKey parse(String fullKey) {
+        String[] subKeys = (null == fullKey) ? new String[0] : StringUtils.split(fullKey, Cake.SEPARATOR);
+        if (subKeys.length == 0 || StringUtils.countMatches(fullKey, Cake.SEPARATOR) != subKeys.length - 1) {
+            throw new IllegalArgumentException("cannot publish value for empty key");
+        }
+
+        Arrays.asList(subKeys).forEach(Cake::validateKey);
+        return new CakeKey(subKeys);
+    }
+
+    public int size() {
+        return subKeys.length;
+    }
+
+    public String getSubKey(int index) {
+        return subKeys[index];
+    }
+
+    public List<String> getSubKeys() {
+        return Arrays.asList(subKeys);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CakeKey)) {
+            return false;
+        }
+        CakeKey other = (CakeKey)o;
+        return hash == other.hash && joined.equals(other.joined);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return joined;
+    }
+}
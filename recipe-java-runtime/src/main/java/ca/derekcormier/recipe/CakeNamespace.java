@@ -0,0 +1,73 @@
+package ca.derekcormier.recipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Stack of sub keys making up the current cake namespace. The namespace and prefix for every depth are computed once
+// when sub keys are pushed so that lookups never re-join them.
+class CakeNamespace {
+    private final List<String> subKeys = new ArrayList<>();
+    // namespaces.get(i) is the namespace formed by the first i sub keys, prefixes.get(i) is the same namespace
+    // followed by a separator
+    private final List<String> namespaces = new ArrayList<>(Collections.singletonList(""));
+    private final List<String> prefixes = new ArrayList<>(Collections.singletonList(""));
+
+    public CakeNamespace() {
+    }
+
+    public CakeNamespace(CakeNamespace other) {
+        subKeys.addAll(other.subKeys);
+        namespaces.addAll(other.namespaces.subList(1, other.namespaces.size()));
+        prefixes.addAll(other.prefixes.subList(1, other.prefixes.size()));
+    }
+
+    public void push(CakeKey key) {
+        for (int i = 0; i < key.size(); i++) {
+            String namespace = getPrefix() + key.getSubKey(i);
+            subKeys.add(key.getSubKey(i));
+            namespaces.add(namespace);
+            prefixes.add(namespace + Cake.SEPARATOR);
+        }
+    }
+
+    public void pop(int count) {
+        for (int i = 0; i < count; i++) {
+            subKeys.remove(subKeys.size() - 1);
+            namespaces.remove(namespaces.size() - 1);
+            prefixes.remove(prefixes.size() - 1);
+        }
+    }
+
+    // The full key and sub keys of a key published in this namespace
+    public String qualify(CakeKey key) {
+        return isRoot() ? key.toString() : getPrefix() + key;
+    }
+
+    public String[] qualifySubKeys(CakeKey key) {
+        String[] qualified = new String[subKeys.size() + key.size()];
+        for (int i = 0; i < subKeys.size(); i++) {
+            qualified[i] = subKeys.get(i);
+        }
+        for (int i = 0; i < key.size(); i++) {
+            qualified[subKeys.size() + i] = key.getSubKey(i);
+        }
+        return qualified;
+    }
+
+    public boolean isRoot() {
+        return subKeys.isEmpty();
+    }
+
+    public List<String> getSubKeys() {
+        return subKeys;
+    }
+
+    public String getNamespace() {
+        return namespaces.get(subKeys.size());
+    }
+
+    public String getPrefix() {
+        return prefixes.get(subKeys.size());
+    }
+}
@@ -0,0 +1,53 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Writes a cake as an object of its entries, writing unboxed numbers directly
+class CakeSerializer extends StdSerializer<Cake> {
+    CakeSerializer() {
+        super(Cake.class);
+    }
+
+    @Override
+    public void serialize(Cake cake, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(cake);
+        Map<String,Object> entries = cake.getEntries();
+        if (entries instanceof PrimitiveEntryMap) {
+            ((PrimitiveEntryMap)entries).forEachEntry(new PrimitiveEntryMap.EntryVisitor() {
+                @Override
+                public void visitObject(String key, Object value) throws IOException {
+                    provider.defaultSerializeField(key, value, generator);
+                }
+
+                @Override
+                public void visitInt(String key, int value) throws IOException {
+                    generator.writeFieldName(key);
+                    generator.writeNumber(value);
+                }
+
+                @Override
+                public void visitLong(String key, long value) throws IOException {
+                    generator.writeFieldName(key);
+                    generator.writeNumber(value);
+                }
+
+                @Override
+                public void visitDouble(String key, double value) throws IOException {
+                    generator.writeFieldName(key);
+                    generator.writeNumber(value);
+                }
+            });
+        }
+        else {
+            for (Map.Entry<String,Object> entry: entries.entrySet()) {
+                provider.defaultSerializeField(entry.getKey(), entry.getValue(), generator);
+            }
+        }
+        generator.writeEndObject();
+    }
+}
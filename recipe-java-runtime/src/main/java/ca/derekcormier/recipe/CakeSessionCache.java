@@ -0,0 +1,77 @@
+package ca.derekcormier.recipe;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bake sessions held by a backend oven, least recently used first. Sessions expire once they have not been used for
+// the ttl, and the least recently used session is evicted when the cache is full.
+class CakeSessionCache {
+    private final long ttlMillis;
+    private final int maxSessions;
+    private final Clock clock;
+    private final LinkedHashMap<String,Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    CakeSessionCache(Duration ttl, int maxSessions, Clock clock) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("session ttl must be positive");
+        }
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("must allow at least one session");
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.maxSessions = maxSessions;
+        this.clock = clock;
+    }
+
+    public synchronized Session get(String id) {
+        evictExpired();
+        Session session = sessions.get(id);
+        if (session != null) {
+            session.lastUsed = clock.millis();
+        }
+        return session;
+    }
+
+    public synchronized void put(String id, Session session) {
+        evictExpired();
+        session.lastUsed = clock.millis();
+        sessions.put(id, session);
+        if (sessions.size() > maxSessions) {
+            Iterator<String> eldest = sessions.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    public synchronized void remove(String id) {
+        sessions.remove(id);
+    }
+
+    public synchronized int size() {
+        evictExpired();
+        return sessions.size();
+    }
+
+    // sessions are in access order, so expired sessions are all at the front
+    private void evictExpired() {
+        long now = clock.millis();
+        Iterator<Map.Entry<String,Session>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext() && now - iterator.next().getValue().lastUsed >= ttlMillis) {
+            iterator.remove();
+        }
+    }
+
+    static class Session {
+        final Cake cake;
+        // version of the oven's cake that this session's cake holds
+        long epoch;
+        private long lastUsed;
+
+        Session(Cake cake) {
+            this.cake = cake;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package ca.derekcormier.recipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reverse index from published values to the keys they were published under, matching values either by identity or
+// by equals/hashCode.
+class CakeValueIndex {
+    private static final Object NULL = new Object();
+    private final Cake.ValueIndex mode;
+    private final Map<Object,List<String>> keysByValue;
+
+    public CakeValueIndex(Cake.ValueIndex mode) {
+        this.mode = mode;
+        this.keysByValue = mode == Cake.ValueIndex.IDENTITY ? new IdentityHashMap<>() : new HashMap<>();
+    }
+
+    public Cake.ValueIndex getMode() {
+        return mode;
+    }
+
+    public synchronized void put(String key, boolean replaced, Object previousValue, Object value) {
+        if (replaced) {
+            List<String> keys = keysByValue.get(mask(previousValue));
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByValue.remove(mask(previousValue));
+                }
+            }
+        }
+        keysByValue.computeIfAbsent(mask(value), v -> new ArrayList<>(1)).add(key);
+    }
+
+    public synchronized void clear() {
+        keysByValue.clear();
+    }
+
+    public synchronized List<String> getKeys(Object value) {
+        List<String> keys = keysByValue.get(mask(value));
+        return keys == null ? Collections.emptyList() : new ArrayList<>(keys);
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL : value;
+    }
+}
@@ -0,0 +1,40 @@
+package ca.derekcormier.recipe;
+
+// Cake that can be read and published to from several threads at once. Entries are kept in a concurrent map and the
+// key index is lock-striped. Each thread has its own namespace stack, so inNamespace blocks running on different
+// threads do not interfere; use bindNamespace to run a task on another thread in the namespace of the calling thread.
+public class ConcurrentCake extends Cake {
+    private final ThreadLocal<CakeNamespace> namespace = ThreadLocal.withInitial(CakeNamespace::new);
+
+    public ConcurrentCake() {
+        super(new ConcurrentEntryMap(), new ConcurrentCakeIndex());
+    }
+
+    // Returns a task that runs the given task in the current thread's namespace, whichever thread it runs on.
+    public Runnable bindNamespace(Runnable task) {
+        CakeNamespace captured = new CakeNamespace(getCurrentNamespace());
+        return () -> {
+            CakeNamespace previous = namespace.get();
+            namespace.set(new CakeNamespace(captured));
+            try {
+                task.run();
+            }
+            finally {
+                namespace.set(previous);
+            }
+        };
+    }
+
+    @Override
+    public Cake fork() {
+        ConcurrentCake forked = new ConcurrentCake();
+        forked.setEntries(getEntries());
+        copyValueIndexTo(forked);
+        return forked;
+    }
+
+    @Override
+    CakeNamespace getCurrentNamespace() {
+        return namespace.get();
+    }
+}
@@ -0,0 +1,92 @@
+package ca.derekcormier.recipe;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Cake index that can be read and written from several threads. Every operation only touches the sub-trie below the
+// last sub key of the key involved, so the root's children are kept in a concurrent map and the sub-tries are guarded
+// by read-write locks striped on that last sub key.
+class ConcurrentCakeIndex extends HashCakeIndex {
+    private static final int STRIPES = 16;
+    private final ReadWriteLock[] locks = new ReadWriteLock[STRIPES];
+
+    public ConcurrentCakeIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    protected void add(String fullKey, String[] subKeys) {
+        ReadWriteLock lock = getLock(subKeys.length == 0 ? "" : subKeys[subKeys.length - 1]);
+        lock.writeLock().lock();
+        try {
+            super.add(fullKey, subKeys);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (ReadWriteLock lock: locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            super.clear();
+        }
+        finally {
+            for (ReadWriteLock lock: locks) {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public String findKeyInNamespaces(List<String> namespace, CakeKey key) {
+        ReadWriteLock lock = getLock(key.getSubKey(key.size() - 1));
+        lock.readLock().lock();
+        try {
+            return super.findKeyInNamespaces(namespace, key);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countKeysEndingWith(CakeKey key) {
+        ReadWriteLock lock = getLock(key.getSubKey(key.size() - 1));
+        lock.readLock().lock();
+        try {
+            return super.countKeysEndingWith(key);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String findOnlyKeyEndingWith(CakeKey key) {
+        ReadWriteLock lock = getLock(key.getSubKey(key.size() - 1));
+        lock.readLock().lock();
+        try {
+            return super.findOnlyKeyEndingWith(key);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    protected Node newRoot() {
+        return new Node(new ConcurrentHashMap<>());
+    }
+
+    private ReadWriteLock getLock(String lastSubKey) {
+        return locks[(lastSubKey.hashCode() & 0x7fffffff) % STRIPES];
+    }
+}
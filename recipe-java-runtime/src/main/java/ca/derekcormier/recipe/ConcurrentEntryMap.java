@@ -0,0 +1,80 @@
+package ca.derekcormier.recipe;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Concurrent map of cake entries. ConcurrentHashMap does not accept null values, which the cake allows, so nulls are
+// stored as a sentinel and unmasked on the way out.
+class ConcurrentEntryMap extends AbstractMap<String,Object> {
+    private static final Object NULL = new Object();
+    private final ConcurrentHashMap<String,Object> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public Object get(Object key) {
+        return unmask(entries.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return unmask(entries.put(key, value == null ? NULL : value));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return unmask(entries.remove(key));
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Set<Entry<String,Object>> entrySet() {
+        return new AbstractSet<Entry<String,Object>>() {
+            @Override
+            public Iterator<Entry<String,Object>> iterator() {
+                Iterator<Entry<String,Object>> iterator = entries.entrySet().iterator();
+                return new Iterator<Entry<String,Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String,Object> next() {
+                        Entry<String,Object> entry = iterator.next();
+                        return new SimpleImmutableEntry<>(entry.getKey(), unmask(entry.getValue()));
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL ? null : value;
+    }
+}
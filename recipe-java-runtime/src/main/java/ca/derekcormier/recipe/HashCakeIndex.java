@@ -0,0 +1,114 @@
+package ca.derekcormier.recipe;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Cake index held in a mutable trie of hash maps.
+class HashCakeIndex extends CakeIndex {
+    private Node root = newRoot();
+
+    @Override
+    protected void add(String fullKey, String[] subKeys) {
+        Node node = root;
+        for (int i = subKeys.length - 1; i >= 0; i--) {
+            node = node.addChild(subKeys[i]);
+        }
+
+        if (node.key != null) {
+            return;
+        }
+
+        node.key = fullKey;
+        node = root;
+        for (int i = subKeys.length - 1; i >= 0; i--) {
+            node = node.getChild(subKeys[i]);
+            node.count++;
+        }
+    }
+
+    @Override
+    public void clear() {
+        root = newRoot();
+    }
+
+    @Override
+    public String findKeyInNamespaces(List<String> namespace, CakeKey key) {
+        Node keyNode = findNode(key);
+        if (keyNode == null) {
+            return null;
+        }
+
+        for (int depth = namespace.size(); depth >= 0; depth--) {
+            Node node = keyNode;
+            for (int i = depth - 1; i >= 0 && node != null; i--) {
+                node = node.getChild(namespace.get(i));
+            }
+            if (node != null && node.key != null) {
+                return node.key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int countKeysEndingWith(CakeKey key) {
+        Node node = findNode(key);
+        return node == null ? 0 : node.count;
+    }
+
+    @Override
+    public String findOnlyKeyEndingWith(CakeKey key) {
+        Node node = findNode(key);
+        if (node == null || node.count != 1) {
+            return null;
+        }
+
+        while (node.key == null) {
+            for (Node child: node.children.values()) {
+                if (child.count > 0) {
+                    node = child;
+                    break;
+                }
+            }
+        }
+        return node.key;
+    }
+
+    private Node findNode(CakeKey key) {
+        Node node = root;
+        for (int i = key.size() - 1; i >= 0 && node != null; i--) {
+            node = node.getChild(key.getSubKey(i));
+        }
+        return node;
+    }
+
+    protected Node newRoot() {
+        return new Node(new HashMap<>());
+    }
+
+    protected static class Node {
+        // created with the first child, so that leaves do not hold an empty map
+        private Map<String,Node> children;
+        private String key;
+        private int count;
+
+        Node() {
+        }
+
+        Node(Map<String,Node> children) {
+            this.children = children;
+        }
+
+        private Node getChild(String subKey) {
+            return children == null ? null : children.get(subKey);
+        }
+
+        private Node addChild(String subKey) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(subKey, k -> new Node());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package ca.derekcormier.recipe;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -21,6 +23,19 @@ public abstract class Ingredient extends BaseIngredient {
         });
     }
 
+    // Cake keys or namespaces the ingredient reads from the cake, relative to the namespace it is baked in, or null if
+    // they are not declared. Used by the segment optimizer to tell which ingredients can be reordered.
+    @JsonIgnore
+    public List<String> getCakeReads() {
+        return null;
+    }
+
+    // cake keys or namespaces the ingredient publishes, besides its key if keyed, or null if they are not declared
+    @JsonIgnore
+    public List<String> getCakePublishes() {
+        return null;
+    }
+
     protected void setRequired(String name, Object value) {
         setProperty(name, value);
     }
@@ -0,0 +1,369 @@
+package ca.derekcormier.recipe;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// A recipe's ingredients as a rope: a height-balanced tree of immutable nodes with the ingredients in arrays at its
+// leaves, plus a mutable tail that appends go to. Adding all of another IngredientList shares the other list's nodes,
+// so flattening a nested recipe into a recipe costs O(log n) rather than a copy of its ingredients, and later changes
+// to either list do not show in the other. Indexed access and insertion or removal in the middle are O(log n).
+final class IngredientList extends AbstractList<Ingredient> {
+    private static final int LEAF_SIZE = 32;
+
+    private Node root = Leaf.EMPTY;
+    private Ingredient[] tail;
+    private int tailSize;
+    private final boolean modifiable;
+
+    IngredientList() {
+        this.modifiable = true;
+    }
+
+    IngredientList(int capacity) {
+        this.modifiable = true;
+        // at least one slot, as the tail only grows by doubling
+        this.tail = new Ingredient[Math.max(1, Math.min(capacity, LEAF_SIZE))];
+    }
+
+    private IngredientList(Node root) {
+        this.root = root;
+        this.modifiable = false;
+    }
+
+    // a view of the list as it is now that cannot be modified
+    IngredientList unmodifiable() {
+        return new IngredientList(seal());
+    }
+
+    @Override
+    public int size() {
+        return root.size + tailSize;
+    }
+
+    @Override
+    public Ingredient get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size());
+        }
+        return index < root.size ? root.get(index) : tail[index - root.size];
+    }
+
+    @Override
+    public Ingredient set(int index, Ingredient ingredient) {
+        checkModifiable();
+        Ingredient previous = get(index);
+        if (index < root.size) {
+            root = root.set(index, ingredient);
+        }
+        else {
+            tail[index - root.size] = ingredient;
+        }
+        return previous;
+    }
+
+    @Override
+    public boolean add(Ingredient ingredient) {
+        checkModifiable();
+        if (tail == null) {
+            tail = new Ingredient[root.size > 0 ? LEAF_SIZE : 4];
+        }
+        else if (tailSize == tail.length) {
+            if (tailSize == LEAF_SIZE) {
+                seal();
+                tail = new Ingredient[LEAF_SIZE];
+            }
+            else {
+                tail = Arrays.copyOf(tail, Math.min(tail.length * 2, LEAF_SIZE));
+            }
+        }
+        tail[tailSize++] = ingredient;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, Ingredient ingredient) {
+        if (index == size()) {
+            add(ingredient);
+            return;
+        }
+        checkModifiable();
+        checkPositionIndex(index);
+        Node[] split = split(seal(), index);
+        root = concat(concat(split[0], new Leaf(new Ingredient[]{ingredient})), split[1]);
+        modCount++;
+    }
+
+    @Override
+    public Ingredient remove(int index) {
+        checkModifiable();
+        Ingredient removed = get(index);
+        Node[] split = split(seal(), index);
+        root = concat(split[0], split(split[1], 1)[1]);
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Ingredient> ingredients) {
+        checkModifiable();
+        if (ingredients.isEmpty()) {
+            return false;
+        }
+        if (ingredients instanceof IngredientList) {
+            Node other = ((IngredientList)ingredients).seal();
+            root = concat(seal(), other);
+        }
+        else if (ingredients.size() > LEAF_SIZE) {
+            root = concat(seal(), balanced(ingredients.toArray(new Ingredient[0]), 0, ingredients.size()));
+        }
+        else {
+            ingredients.forEach(this::add);
+        }
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        checkModifiable();
+        root = Leaf.EMPTY;
+        tail = null;
+        tailSize = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<Ingredient> iterator() {
+        return new IngredientIterator();
+    }
+
+    // Moves the tail into the tree, so that the tree holds the whole list and can be shared. The tail array is left
+    // as it is for iterators that are reading it, and a new one started on the next add.
+    private Node seal() {
+        if (tailSize > 0) {
+            root = concat(root, new Leaf(tailSize == tail.length ? tail : Arrays.copyOf(tail, tailSize)));
+            tail = null;
+            tailSize = 0;
+        }
+        return root;
+    }
+
+    private void checkModifiable() {
+        if (!modifiable) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private void checkPositionIndex(int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size());
+        }
+    }
+
+    private static Node concat(Node left, Node right) {
+        if (left.size == 0) {
+            return right;
+        }
+        if (right.size == 0) {
+            return left;
+        }
+        if (left instanceof Leaf && right instanceof Leaf && left.size + right.size <= LEAF_SIZE) {
+            Ingredient[] ingredients = Arrays.copyOf(((Leaf)left).ingredients, left.size + right.size);
+            System.arraycopy(((Leaf)right).ingredients, 0, ingredients, left.size, right.size);
+            return new Leaf(ingredients);
+        }
+        return join(left, right);
+    }
+
+    // AVL join: descends the taller tree's inner edge to a subtree of about the other's height, and rebalances on the
+    // way back up
+    private static Node join(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch)left;
+            return balance(branch.left, join(branch.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch)right;
+            return balance(join(left, branch.left), branch.right);
+        }
+        return new Branch(left, right);
+    }
+
+    private static Node balance(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch)left;
+            if (branch.left.height >= branch.right.height) {
+                return new Branch(branch.left, new Branch(branch.right, right));
+            }
+            Branch inner = (Branch)branch.right;
+            return new Branch(new Branch(branch.left, inner.left), new Branch(inner.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch)right;
+            if (branch.right.height >= branch.left.height) {
+                return new Branch(new Branch(left, branch.left), branch.right);
+            }
+            Branch inner = (Branch)branch.left;
+            return new Branch(new Branch(left, inner.left), new Branch(inner.right, branch.right));
+        }
+        return new Branch(left, right);
+    }
+
+    // the first index ingredients of the node and the rest
+    private static Node[] split(Node node, int index) {
+        if (index == 0) {
+            return new Node[]{Leaf.EMPTY, node};
+        }
+        if (index == node.size) {
+            return new Node[]{node, Leaf.EMPTY};
+        }
+        if (node instanceof Leaf) {
+            Ingredient[] ingredients = ((Leaf)node).ingredients;
+            return new Node[]{
+                new Leaf(Arrays.copyOfRange(ingredients, 0, index)),
+                new Leaf(Arrays.copyOfRange(ingredients, index, ingredients.length))
+            };
+        }
+
+        Branch branch = (Branch)node;
+        if (index < branch.left.size) {
+            Node[] split = split(branch.left, index);
+            return new Node[]{split[0], concat(split[1], branch.right)};
+        }
+        Node[] split = split(branch.right, index - branch.left.size);
+        return new Node[]{concat(branch.left, split[0]), split[1]};
+    }
+
+    private static Node balanced(Ingredient[] ingredients, int from, int to) {
+        if (to - from <= LEAF_SIZE) {
+            return new Leaf(Arrays.copyOfRange(ingredients, from, to));
+        }
+        int middle = (from + to) >>> 1;
+        return new Branch(balanced(ingredients, from, middle), balanced(ingredients, middle, to));
+    }
+
+    private abstract static class Node {
+        final int size;
+        final int height;
+
+        Node(int size, int height) {
+            this.size = size;
+            this.height = height;
+        }
+
+        abstract Ingredient get(int index);
+        abstract Node set(int index, Ingredient ingredient);
+    }
+
+    private static final class Leaf extends Node {
+        private static final Leaf EMPTY = new Leaf(new Ingredient[0]);
+        private final Ingredient[] ingredients;
+
+        Leaf(Ingredient[] ingredients) {
+            super(ingredients.length, 0);
+            this.ingredients = ingredients;
+        }
+
+        @Override
+        Ingredient get(int index) {
+            return ingredients[index];
+        }
+
+        @Override
+        Node set(int index, Ingredient ingredient) {
+            Ingredient[] newIngredients = ingredients.clone();
+            newIngredients[index] = ingredient;
+            return new Leaf(newIngredients);
+        }
+    }
+
+    private static final class Branch extends Node {
+        private final Node left;
+        private final Node right;
+
+        Branch(Node left, Node right) {
+            super(left.size + right.size, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Ingredient get(int index) {
+            Node node = this;
+            while (node instanceof Branch) {
+                Branch branch = (Branch)node;
+                if (index < branch.left.size) {
+                    node = branch.left;
+                }
+                else {
+                    index -= branch.left.size;
+                    node = branch.right;
+                }
+            }
+            return node.get(index);
+        }
+
+        @Override
+        Node set(int index, Ingredient ingredient) {
+            if (index < left.size) {
+                return new Branch(left.set(index, ingredient), right);
+            }
+            return new Branch(left, right.set(index - left.size, ingredient));
+        }
+    }
+
+    // walks the leaves of the tree left to right, then the tail, as they were when the iterator was created; sealing
+    // the list does not change either
+    private final class IngredientIterator implements Iterator<Ingredient> {
+        private final Deque<Node> pending = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+        private final int treeSize = root.size;
+        private final Ingredient[] tailIngredients = tail;
+        private final int size = size();
+        private Ingredient[] leaf = Leaf.EMPTY.ingredients;
+        private int position;
+        private int returned;
+
+        private IngredientIterator() {
+            pending.push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return returned < size;
+        }
+
+        @Override
+        public Ingredient next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (returned >= treeSize) {
+                return tailIngredients[returned++ - treeSize];
+            }
+            while (position == leaf.length) {
+                Node node = pending.pop();
+                if (node instanceof Branch) {
+                    pending.push(((Branch)node).right);
+                    pending.push(((Branch)node).left);
+                }
+                else {
+                    leaf = ((Leaf)node).ingredients;
+                    position = 0;
+                }
+            }
+            returned++;
+            return leaf[position++];
+        }
+    }
+}
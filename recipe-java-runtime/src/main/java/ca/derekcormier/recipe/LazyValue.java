@@ -0,0 +1,95 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.util.Objects;
+
+// Cake value kept as the JSON text it was read from, so that it can be written out again without being parsed. The
+// cake replaces it with its parsed value when it is first read, or parses it as the requested class for typed reads.
+final class LazyValue implements JsonSerializable {
+    private final String json;
+    private final ObjectCodec codec;
+    // the last typed read, returned again while the same class is asked for
+    private Object typedValue;
+    // the parsed value that equality is decided on, kept apart from the values handed out so that it is not changed
+    private Object comparedValue;
+    private boolean compared;
+
+    LazyValue(String json, ObjectCodec codec) {
+        this.json = json;
+        this.codec = codec;
+    }
+
+    Object materialize() {
+        return read(Object.class);
+    }
+
+    synchronized <T> T as(Class<T> clazz) {
+        if (!clazz.isInstance(typedValue)) {
+            typedValue = read(clazz);
+        }
+        return clazz.cast(typedValue);
+    }
+
+    private <T> T read(Class<T> clazz) {
+        try (JsonParser parser = codec.getFactory().createParser(json)) {
+            return codec.readValue(parser, clazz);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("could not read cake value as " + clazz.getName(), e);
+        }
+    }
+
+    private synchronized Object comparedValue() {
+        if (!compared) {
+            comparedValue = materialize();
+            compared = true;
+        }
+        return comparedValue;
+    }
+
+    static Object unwrap(Object value) {
+        return value instanceof LazyValue ? ((LazyValue)value).materialize() : value;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (generator instanceof JsonGeneratorImpl) {
+            generator.writeRawValue(json);
+        }
+        else {
+            // not writing JSON text, e.g. buffering tokens
+            try (JsonParser parser = codec.getFactory().createParser(json)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        serialize(generator, provider);
+    }
+
+    // equal to a value (lazy or not) that parses to the same value; lazy values of the same text are not parsed
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof LazyValue) {
+            LazyValue otherLazy = (LazyValue)other;
+            return json.equals(otherLazy.json) || Objects.equals(comparedValue(), otherLazy.comparedValue());
+        }
+        return other != null && Objects.equals(comparedValue(), other);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(comparedValue());
+    }
+}
@@ -0,0 +1,9 @@
+package ca.derekcormier.recipe;
+
+// A dispatcher for a backend oven in the same process, handed the segment's recipe and the oven's cake as they are
+// rather than a serialized payload, see Oven.addLocalDispatcher. The recipe's ingredients are baked into the cake
+// given, which the oven keeps.
+@FunctionalInterface
+public interface LocalDispatcher {
+    void bake(Recipe recipe, Cake cake);
+}
@@ -1,45 +1,98 @@
 package ca.derekcormier.recipe;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.jsontype.NamedType;
-import com.fasterxml.jackson.databind.jsontype.SubtypeResolver;
-import com.fasterxml.jackson.databind.jsontype.impl.StdSubtypeResolver;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
+// Once configured, an oven may bake on several threads at once, as long as its dispatchers may be called from several
+// threads.
 public class Oven extends AbstractOven {
-    private Map<String,Dispatcher> dispatchers = new HashMap<>();
-    private ObjectMapper objectMapper;
-    private SubtypeResolver subtypeResolver;
+    private final Map<String,Route> routes = new ConcurrentHashMap<>();
+    private final Map<String,CakeExchange> cakeExchanges = new ConcurrentHashMap<>();
+    private final SubtypeRegistry subtypeRegistry = new SubtypeRegistry();
+    private final BufferPool bufferPool = new BufferPool();
+    private volatile boolean lazyCake;
+    private volatile boolean segmentOptimizer;
+    private volatile Executor parallelExecutor;
+    private volatile Executor dispatchExecutor = ForkJoinPool.commonPool();
 
     public Cake bake(Recipe recipe) {
-        this.subtypeResolver = new StdSubtypeResolver();
-
-        registerSubtypes(recipe);
+        return bake(plan(recipe));
+    }
 
-        objectMapper = new ObjectMapper();
-        objectMapper.setSubtypeResolver(subtypeResolver);
+    // The plan bake(Recipe) bakes the recipe with. With the segment optimizer enabled, getRoundTripsSaved tells how
+    // many dispatches reordering the recipe saved.
+    public BakePlan plan(Recipe recipe) {
+        return segmentOptimizer && !recipe.isFrozen() ? recipe.optimizedPlan() : recipe.plan();
+    }
 
-        Cake cake = _bake(recipe, createCake());
+    // Bakes a plan from Recipe.freeze, without segmenting the recipe again
+    public Cake bake(BakePlan plan) {
+        ObjectMapper objectMapper = subtypeRegistry.mapperFor(plan.getSubtypes());
+        Cake cake = _bake(plan, createCake(), objectMapper);
         return cake;
     }
 
-    private Cake _bake(Recipe recipe, Cake cake) {
+    private Cake _bake(BakePlan plan, Cake cake, ObjectMapper objectMapper) {
         try {
-            List<Recipe.Segment> segments = recipe.segment();
-            for (Recipe.Segment segment: segments) {
-                String payload = serializePayload(segment.recipe, cake);
+            List<Recipe.Segment> segments = plan.getSegments();
+            boolean sessionsInUse = cakeExchanges.containsValue(CakeExchange.SESSION);
+            Executor executor = parallelExecutor;
+            if (executor != null && !sessionsInUse) {
+                return bakeConcurrently(plan, cake, executor, objectMapper);
+            }
+
+            BakeSessions bakeSessions = new BakeSessions(segments);
+            if (sessionsInUse) {
+                cake.trackChanges();
+            }
+
+            for (int i = 0; i < segments.size(); i++) {
+                Recipe.Segment segment = segments.get(i);
+                CakeExchange cakeExchange = cakeExchange(segment.domain, bakeSessions);
 
-                if (!dispatchers.containsKey(segment.domain)) {
-                    throw new RuntimeException("cannot dispatch ingredient; no dispatcher registered for domain '" + segment.domain + "'");
+                Route route = route(segment);
+
+                if (cakeExchange == CakeExchange.SESSION) {
+                    bakeInSession(segment, i, cake, bakeSessions, objectMapper);
+                    continue;
                 }
 
-                String jsonCake = dispatchers.get(segment.domain).dispatch(payload);
-                cake = deserializeCake(jsonCake);
+                Object payload = serializePayload(route, segment.recipe, cake, cakeExchange, objectMapper);
+                Object returnedCake = route.dispatcher.apply(payload);
+                cake = readReturnedCake(route, returnedCake, cake, cakeExchange, sessionsInUse, objectMapper);
             }
             return cake;
         }
@@ -48,35 +101,701 @@ public class Oven extends AbstractOven {
         }
     }
 
+    // Bakes independent recipes together. Each round, the next segments of the recipes are grouped by domain and the
+    // segments of a domain are sent to its dispatcher in one batch payload, each with its own cake, so that the round
+    // trips grow with the number of segments of the longest recipe rather than with the number of recipes. The
+    // domains of a round are dispatched through their asynchronous dispatchers at once. Only use with backend ovens
+    // that understand batches; a single segment is sent as a plain payload. Domains using CakeExchange.SESSION use
+    // delta exchanges in batches. Returns the cakes in the order of the recipes.
+    public List<Cake> bakeAll(Collection<Recipe> recipes) {
+        List<BakePlan> plans = new ArrayList<>();
+        List<ObjectMapper> objectMappers = new ArrayList<>();
+        for (Recipe recipe: recipes) {
+            BakePlan plan = plan(recipe);
+            plans.add(plan);
+            objectMappers.add(subtypeRegistry.mapperFor(plan.getSubtypes()));
+        }
+
+        try {
+            Cake[] cakes = new Cake[plans.size()];
+            for (int i = 0; i < cakes.length; i++) {
+                cakes[i] = createCake();
+            }
+
+            int[] next = new int[plans.size()];
+            while (true) {
+                Map<String,List<Integer>> batches = new LinkedHashMap<>();
+                for (int i = 0; i < plans.size(); i++) {
+                    List<Recipe.Segment> segments = plans.get(i).getSegments();
+                    if (next[i] < segments.size()) {
+                        batches.computeIfAbsent(segments.get(next[i]).domain, domain -> new ArrayList<>()).add(i);
+                    }
+                }
+                if (batches.isEmpty()) {
+                    return Arrays.asList(cakes);
+                }
+
+                List<CompletableFuture<Void>> round = new ArrayList<>();
+                for (Map.Entry<String,List<Integer>> batch: batches.entrySet()) {
+                    round.add(dispatchBatch(batch.getKey(), batch.getValue(), plans, next, cakes, objectMappers).toCompletableFuture());
+                }
+                await(CompletableFuture.allOf(round.toArray(new CompletableFuture<?>[0])));
+                for (List<Integer> batch: batches.values()) {
+                    batch.forEach(i -> next[i]++);
+                }
+            }
+        }
+        catch (Exception e) {
+            throw new RuntimeException("could not bake cake", e);
+        }
+    }
+
+    // Dispatches the next segments of the recipes in one payload, and reads the cake returned for each. The batches of
+    // a round are for different recipes, so they may complete on different threads without sharing a cake.
+    private CompletionStage<Void> dispatchBatch(String domain, List<Integer> batch, List<BakePlan> plans, int[] next, Cake[] cakes,
+                                                List<ObjectMapper> objectMappers) throws IOException {
+        CakeExchange cakeExchange = cakeExchanges.getOrDefault(domain, CakeExchange.FULL);
+        CakeExchange batchCakeExchange = cakeExchange == CakeExchange.SESSION ? CakeExchange.DELTA : cakeExchange;
+
+        // the segments of a batch are all for the domain
+        Route route = route(plans.get(batch.get(0)).getSegments().get(next[batch.get(0)]));
+        ObjectMapper objectMapper = objectMappers.get(batch.get(0));
+        if (route.format == Format.LOCAL) {
+            // nothing to save by batching, so bake each recipe's segment into its cake
+            List<CompletableFuture<?>> baked = new ArrayList<>();
+            for (int i: batch) {
+                Object payload = serializePayload(route, plans.get(i).getSegments().get(next[i]).recipe, cakes[i], CakeExchange.FULL, objectMapper);
+                baked.add(route.asyncDispatcher.apply(payload).toCompletableFuture());
+            }
+            return CompletableFuture.allOf(baked.toArray(new CompletableFuture<?>[0]));
+        }
+        if (batch.size() == 1) {
+            int i = batch.get(0);
+            Object payload = serializePayload(route, plans.get(i).getSegments().get(next[i]).recipe, cakes[i], batchCakeExchange, objectMapper);
+            return route.asyncDispatcher.apply(payload).thenCompose(step(returnedCake -> {
+                cakes[i] = readReturnedCake(route, returnedCake, cakes[i], batchCakeExchange, false, objectMapper);
+                return CompletableFuture.completedFuture(null);
+            }));
+        }
+
+        Object batchPayload = serializeBatch(route, batch, plans, next, cakes, batchCakeExchange, objectMappers);
+        return route.asyncDispatcher.apply(batchPayload).thenCompose(step(response -> {
+            readBatchResults(domain, route, response, batch, cakes, batchCakeExchange, objectMapper);
+            return CompletableFuture.completedFuture(null);
+        }));
+    }
+
+    // {"payloads":[...]}, each payload written with the mapper of its recipe
+    private Object serializeBatch(Route route, List<Integer> batch, List<BakePlan> plans, int[] next, Cake[] cakes,
+                                  CakeExchange cakeExchange, List<ObjectMapper> objectMappers) throws IOException {
+        ObjectMapper batchMapper = mapperFor(route, objectMappers.get(batch.get(0)));
+        if (route.format == Format.TEXT) {
+            StringWriter writer = new StringWriter();
+            try (JsonGenerator generator = batchMapper.getFactory().createGenerator(writer)) {
+                writeBatch(generator, route, batch, plans, next, cakes, cakeExchange, objectMappers);
+            }
+            return writer.toString();
+        }
+
+        ByteArrayOutputStream out = route.format == Format.STREAM ? bufferPool.acquire() : new ByteArrayOutputStream();
+        try (JsonGenerator generator = batchMapper.getFactory().createGenerator(out)) {
+            writeBatch(generator, route, batch, plans, next, cakes, cakeExchange, objectMappers);
+        }
+        return route.format == Format.STREAM ? out : out.toByteArray();
+    }
+
+    private void writeBatch(JsonGenerator generator, Route route, List<Integer> batch, List<BakePlan> plans, int[] next, Cake[] cakes,
+                            CakeExchange cakeExchange, List<ObjectMapper> objectMappers) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName("payloads");
+        generator.writeStartArray();
+        for (int i: batch) {
+            Payload payload = new Payload(plans.get(i).getSegments().get(next[i]).recipe, cakes[i], cakeExchange);
+            mapperFor(route, objectMappers.get(i)).writeValue(generator, payload);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    // reads the cakes of a batch response, {"results":[...]}, straight from the response
+    private void readBatchResults(String domain, Route route, Object response, List<Integer> batch, Cake[] cakes,
+                                  CakeExchange cakeExchange, ObjectMapper objectMapper) throws IOException {
+        try (JsonParser parser = createParser(mapperFor(route, objectMapper), response)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME
+                || !"results".equals(parser.getCurrentName()) || parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new RuntimeException("batch response for domain '" + domain + "' has no results");
+            }
+
+            int read = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (read == batch.size()) {
+                    break;
+                }
+                int i = batch.get(read++);
+                Cake cake = cakeExchange == CakeExchange.DELTA ? cakes[i] : createCake();
+                cakes[i] = cakeReader(route, response, objectMapper).withValueToUpdate(cake).readValue(parser);
+            }
+            if (read != batch.size() || parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new RuntimeException("batch response for domain '" + domain + "' does not have a cake for each of its " + batch.size() + " payloads");
+            }
+        }
+    }
+
+    public CompletableFuture<Cake> bakeAsync(Recipe recipe) {
+        return bakeAsync(plan(recipe));
+    }
+
+    // Bakes the plan without blocking the calling thread on dispatchers: each segment is dispatched once the stage
+    // returned for the segment before it completes. Synchronous dispatchers are called on the dispatch executor (see
+    // setDispatchExecutor). Segments are dispatched one after another, even with parallel dispatch enabled.
+    public CompletableFuture<Cake> bakeAsync(BakePlan plan) {
+        ObjectMapper objectMapper = subtypeRegistry.mapperFor(plan.getSubtypes());
+        List<Recipe.Segment> segments = plan.getSegments();
+        boolean sessionsInUse = cakeExchanges.containsValue(CakeExchange.SESSION);
+        BakeSessions bakeSessions = new BakeSessions(segments);
+
+        Cake initialCake = createCake();
+        if (sessionsInUse) {
+            initialCake.trackChanges();
+        }
+
+        CompletableFuture<Cake> stage = CompletableFuture.completedFuture(initialCake);
+        for (int i = 0; i < segments.size(); i++) {
+            Recipe.Segment segment = segments.get(i);
+            int index = i;
+            stage = stage.thenCompose(step(cake -> bakeSegmentAsync(segment, index, cake, bakeSessions, sessionsInUse, objectMapper)));
+        }
+
+        return stage.handle((cake, e) -> {
+            if (e != null) {
+                throw new RuntimeException("could not bake cake", e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+            return cake;
+        });
+    }
+
+    private CompletionStage<Cake> bakeSegmentAsync(Recipe.Segment segment, int index, Cake cake, BakeSessions bakeSessions,
+                                                   boolean sessionsInUse, ObjectMapper objectMapper) throws IOException {
+        Route route = route(segment);
+        CakeExchange cakeExchange = cakeExchange(segment.domain, bakeSessions);
+        if (cakeExchange == CakeExchange.SESSION) {
+            return dispatchInSessionAsync(segment, index, cake, bakeSessions, objectMapper)
+                .thenCompose(step(reply -> {
+                    if (!reply.isResync()) {
+                        return CompletableFuture.completedFuture(reply);
+                    }
+                    // the backend lost the session, so open a new one with the full cake
+                    bakeSessions.epochs.remove(segment.domain);
+                    return dispatchInSessionAsync(segment, index, cake, bakeSessions, objectMapper)
+                        .thenApply(resyncReply -> checkResynced(segment, resyncReply));
+                }))
+                .thenApply(reply -> {
+                    mergeSessionReply(segment, reply, cake, bakeSessions);
+                    return cake;
+                });
+        }
+
+        Object payload = serializePayload(route, segment.recipe, cake, cakeExchange, objectMapper);
+        return route.asyncDispatcher.apply(payload)
+            .thenCompose(step(returnedCake -> CompletableFuture.completedFuture(readReturnedCake(route, returnedCake, cake, cakeExchange, sessionsInUse, objectMapper))));
+    }
+
+    private CompletionStage<SessionReply> dispatchInSessionAsync(Recipe.Segment segment, int index, Cake cake, BakeSessions bakeSessions,
+                                                                 ObjectMapper objectMapper) throws IOException {
+        Route route = routes.get(segment.domain);
+        Object payload = sessionPayload(route, segment, index, cake, bakeSessions, objectMapper);
+        return route.asyncDispatcher.apply(payload)
+            .thenCompose(step(reply -> CompletableFuture.completedFuture(read(mapperFor(route, objectMapper).readerFor(SessionReply.class), reply))));
+    }
+
+    // the cake after a segment whose backend returned the given cake
+    private Cake readReturnedCake(Route route, Object returnedCake, Cake cake, CakeExchange cakeExchange, boolean sessionsInUse,
+                                  ObjectMapper objectMapper) throws IOException {
+        if (route.format == Format.LOCAL) {
+            // the backend baked into the cake itself
+            return (Cake)returnedCake;
+        }
+        if (cakeExchange == CakeExchange.DELTA) {
+            // the backend only returned the entries it changed
+            read(cakeReader(route, returnedCake, objectMapper).withValueToUpdate(cake), returnedCake);
+            return cake;
+        }
+        if (sessionsInUse) {
+            // keep the cake and its change log, so that sessions are only sent the entries this backend changed
+            mergeChangedEntries(deserializeCake(route, returnedCake, objectMapper), cake);
+            return cake;
+        }
+        return deserializeCake(route, returnedCake, objectMapper);
+    }
+
+    // Dispatches each segment as soon as the segments it depends on are merged into the cake, and merges the entries
+    // that each backend changed. Backends that changed the same entry to different values without one segment
+    // depending on the other make the bake fail.
+    private Cake bakeConcurrently(BakePlan plan, Cake cake, Executor executor, ObjectMapper objectMapper) throws Exception {
+        List<Recipe.Segment> segments = plan.getSegments();
+        segments.forEach(this::route);
+        int[][] dependencies = plan.getDependencies();
+        int[] waiting = new int[segments.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            waiting[i] = dependencies[i].length;
+            for (int dependency: dependencies[i]) {
+                dependents.get(dependency).add(i);
+            }
+        }
+
+        CompletionService<ConcurrentDispatch> completionService = new ExecutorCompletionService<>(executor);
+        // set once the bake fails, so that segments submitted but not yet dispatched are skipped
+        AtomicBoolean stopped = new AtomicBoolean();
+        // the segments submitted that have not been taken from the completion service yet
+        int inFlight = 0;
+        // for each merged entry, the number of merges when it was last changed and the segment that changed it
+        Map<String,Integer> changedAt = new HashMap<>();
+        Map<String,Integer> changedBy = new HashMap<>();
+        int merges = 0;
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                if (waiting[i] == 0) {
+                    completionService.submit(unlessStopped(dispatchConcurrently(segments.get(i), i, cake, merges, objectMapper), stopped));
+                    inFlight++;
+                }
+            }
+
+            for (int done = 0; done < segments.size(); done++) {
+                ConcurrentDispatch dispatch;
+                try {
+                    Future<ConcurrentDispatch> future = completionService.take();
+                    inFlight--;
+                    dispatch = future.get();
+                }
+                catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+                }
+
+                Map<String,Object> changed = dispatch.sentEntries == null ? dispatch.cake.getEntries() : changedEntries(dispatch.cake.getEntries(), dispatch.sentEntries);
+                for (Map.Entry<String,Object> entry: changed.entrySet()) {
+                    Integer at = changedAt.get(entry.getKey());
+                    if (at != null && at > dispatch.mergesSeen
+                        && !Objects.equals(LazyValue.unwrap(cake.getEntries().get(entry.getKey())), LazyValue.unwrap(entry.getValue()))) {
+                        throw new RuntimeException("segments for domains '" + segments.get(changedBy.get(entry.getKey())).domain + "' and '"
+                            + segments.get(dispatch.index).domain + "' published different values for cake key '" + entry.getKey() + "'");
+                    }
+                }
+
+                cake.mergeEntries(changed);
+                merges++;
+                for (String key: changed.keySet()) {
+                    changedAt.put(key, merges);
+                    changedBy.put(key, dispatch.index);
+                }
+
+                for (int dependent: dependents.get(dispatch.index)) {
+                    if (--waiting[dependent] == 0) {
+                        completionService.submit(unlessStopped(dispatchConcurrently(segments.get(dependent), dependent, cake, merges, objectMapper), stopped));
+                        inFlight++;
+                    }
+                }
+            }
+            return cake;
+        }
+        catch (Exception | Error e) {
+            // segments already dispatched are waited for, so that none is still baking when the bake fails
+            stopped.set(true);
+            awaitInFlight(completionService, inFlight);
+            throw e;
+        }
+    }
+
+    private static <T> Callable<T> unlessStopped(Callable<T> task, AtomicBoolean stopped) {
+        return () -> stopped.get() ? null : task.call();
+    }
+
+    private static void awaitInFlight(CompletionService<?> completionService, int inFlight) {
+        boolean interrupted = Thread.interrupted();
+        while (inFlight > 0) {
+            try {
+                completionService.take();
+                inFlight--;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Route route(Recipe.Segment segment) {
+        Route route = routes.get(segment.domain);
+        if (route == null) {
+            throw new RuntimeException("cannot dispatch ingredient; no dispatcher registered for domain '" + segment.domain + "'");
+        }
+        return route;
+    }
+
+    // serializes the payload now, while the cake holds the entries of the segment's dependencies
+    private Callable<ConcurrentDispatch> dispatchConcurrently(Recipe.Segment segment, int index, Cake cake, int merges,
+                                                              ObjectMapper objectMapper) throws IOException {
+        CakeExchange cakeExchange = cakeExchanges.getOrDefault(segment.domain, CakeExchange.FULL);
+        Route route = routes.get(segment.domain);
+        // local backends bake into the payload's cake, so give each one its own
+        Cake sentCake = route.format == Format.LOCAL ? cake.fork() : cake;
+        Object payload = serializePayload(route, segment.recipe, sentCake, cakeExchange, objectMapper);
+        Map<String,Object> sentEntries = cakeExchange == CakeExchange.DELTA ? null : new HashMap<>(cake.getEntries());
+        return () -> new ConcurrentDispatch(index, merges, sentEntries, deserializeCake(route, route.dispatcher.apply(payload), objectMapper));
+    }
+
+    private void bakeInSession(Recipe.Segment segment, int index, Cake cake, BakeSessions bakeSessions,
+                               ObjectMapper objectMapper) throws IOException {
+        SessionReply reply = dispatchInSession(segment, index, cake, bakeSessions, objectMapper);
+        if (reply.isResync()) {
+            // the backend lost the session, so open a new one with the full cake
+            bakeSessions.epochs.remove(segment.domain);
+            reply = checkResynced(segment, dispatchInSession(segment, index, cake, bakeSessions, objectMapper));
+        }
+        mergeSessionReply(segment, reply, cake, bakeSessions);
+    }
+
+    private SessionReply checkResynced(Recipe.Segment segment, SessionReply reply) {
+        if (reply.isResync()) {
+            throw new RuntimeException("could not open cake session for domain '" + segment.domain + "'");
+        }
+        return reply;
+    }
+
+    private void mergeSessionReply(Recipe.Segment segment, SessionReply reply, Cake cake, BakeSessions bakeSessions) {
+        cake.mergeEntries(reply.getCake());
+        if (reply.getCakeExchange() == CakeExchange.SESSION) {
+            bakeSessions.epochs.put(segment.domain, cake.getVersion());
+        }
+        else {
+            // the backend does not keep sessions, so the rest of the bake sends it deltas
+            bakeSessions.withoutSessions.add(segment.domain);
+        }
+    }
+
+    // the exchange of the domain's cake, for a bake in which its backend may have turned out not to keep sessions
+    private CakeExchange cakeExchange(String domain, BakeSessions bakeSessions) {
+        CakeExchange cakeExchange = cakeExchanges.getOrDefault(domain, CakeExchange.FULL);
+        return cakeExchange == CakeExchange.SESSION && bakeSessions.withoutSessions.contains(domain) ? CakeExchange.DELTA : cakeExchange;
+    }
+
+    private void mergeChangedEntries(Cake from, Cake to) {
+        to.mergeEntries(changedEntries(from.getEntries(), to.getEntries()));
+    }
+
+    private Map<String,Object> changedEntries(Map<String,Object> from, Map<String,Object> to) {
+        Map<String,Object> changed = new HashMap<>();
+        for (Map.Entry<String,Object> entry: from.entrySet()) {
+            if (!to.containsKey(entry.getKey()) || !Objects.equals(LazyValue.unwrap(to.get(entry.getKey())), LazyValue.unwrap(entry.getValue()))) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changed;
+    }
+
+    private SessionReply dispatchInSession(Recipe.Segment segment, int index, Cake cake, BakeSessions bakeSessions,
+                                           ObjectMapper objectMapper) throws IOException {
+        Route route = routes.get(segment.domain);
+        Object reply = route.dispatcher.apply(sessionPayload(route, segment, index, cake, bakeSessions, objectMapper));
+        return read(mapperFor(route, objectMapper).readerFor(SessionReply.class), reply);
+    }
+
+    private Object sessionPayload(Route route, Recipe.Segment segment, int index, Cake cake, BakeSessions bakeSessions,
+                                  ObjectMapper objectMapper) throws IOException {
+        long epoch = bakeSessions.epochs.getOrDefault(segment.domain, 0L);
+        BakeSession session = new BakeSession(
+            bakeSessions.id,
+            epoch,
+            cake.getVersion(),
+            bakeSessions.lastSegments.get(segment.domain) == index
+        );
+
+        Payload payload = new Payload(segment.recipe, cake.getEntriesChangedSince(epoch), session);
+        return write(route, payload, objectMapper);
+    }
+
+    // Keeps object and array cake values returned by backends as JSON text until they are read, so that values only
+    // passed on to later segments are never parsed. Values are parsed on first get, or read straight into the class
+    // given to get(Class, String...) and the other typed getters.
+    public void enableLazyCake() {
+        lazyCake = true;
+    }
+
+    // Reorders the ingredients of recipes to bake them in fewer segments, e.g. A,B,A,B as A,A,B,B. Only ingredients
+    // that declare the cake keys they read and publish are moved, and never past an ingredient they depend on through
+    // the cake, so only enable it for cookbooks whose ingredients declare all the keys they use. Frozen recipes are
+    // baked as frozen.
+    public void enableSegmentOptimizer() {
+        segmentOptimizer = true;
+    }
+
+    // Dispatches segments on the executor as soon as the segments they depend on are baked, rather than one after
+    // another. A segment depends on the earlier segments of its domain, and on earlier segments whose ingredients
+    // publish cake keys its ingredients read or publish, as declared by the ingredients (see enableSegmentOptimizer).
+    // Ingredients that do not declare their keys depend on everything, except across branches of a Recipe.parallel
+    // group. Not used while any domain uses CakeExchange.SESSION.
+    public void enableParallelDispatch(Executor executor) {
+        parallelExecutor = Objects.requireNonNull(executor);
+    }
+
     public void addDispatcher(String domain, Dispatcher dispatcher) {
-        if (dispatchers.containsKey(domain)) {
+        addDispatcher(domain, dispatcher, CakeExchange.FULL);
+    }
+
+    // Only use CakeExchange.DELTA or SESSION with backend ovens that understand them; older backends reject the
+    // payload. A backend that has sessions disabled answers session payloads as delta exchanges, after which the oven
+    // uses delta exchanges for the domain for the rest of that bake only; later bakes try sessions again.
+    public void addDispatcher(String domain, Dispatcher dispatcher, CakeExchange cakeExchange) {
+        Objects.requireNonNull(dispatcher);
+        addRoute(domain, new Route(
+            PayloadCodec.JSON,
+            Format.TEXT,
+            payload -> dispatcher.dispatch((String)payload),
+            payload -> CompletableFuture.supplyAsync(() -> dispatcher.dispatch((String)payload), dispatchExecutor)
+        ), cakeExchange);
+    }
+
+    public void addAsyncDispatcher(String domain, AsyncDispatcher dispatcher) {
+        addAsyncDispatcher(domain, dispatcher, CakeExchange.FULL);
+    }
+
+    // An asynchronous dispatcher is also used by bake, which waits for the stage it returns
+    public void addAsyncDispatcher(String domain, AsyncDispatcher dispatcher, CakeExchange cakeExchange) {
+        Objects.requireNonNull(dispatcher);
+        addRoute(domain, new Route(
+            PayloadCodec.JSON,
+            Format.TEXT,
+            payload -> await(dispatcher.dispatch((String)payload)),
+            payload -> dispatcher.dispatch((String)payload)
+        ), cakeExchange);
+    }
+
+    public void addBinaryDispatcher(String domain, BinaryDispatcher dispatcher, PayloadCodec codec) {
+        addBinaryDispatcher(domain, dispatcher, codec, CakeExchange.FULL);
+    }
+
+    // Payloads for the domain are written in the codec's format, and the cakes returned read in it, so the backend
+    // oven must bake them with the same codec (see BackendOven.bake(byte[], PayloadCodec)). Binary formats such as
+    // PayloadCodec.SMILE are smaller and quicker to write and read than JSON text. Cakes returned through binary
+    // dispatchers are read as they arrive, even with the lazy cake enabled.
+    public void addBinaryDispatcher(String domain, BinaryDispatcher dispatcher, PayloadCodec codec, CakeExchange cakeExchange) {
+        Objects.requireNonNull(dispatcher);
+        addRoute(domain, new Route(
+            Objects.requireNonNull(codec),
+            Format.BYTES,
+            payload -> dispatcher.dispatch((byte[])payload),
+            payload -> CompletableFuture.supplyAsync(() -> dispatcher.dispatch((byte[])payload), dispatchExecutor)
+        ), cakeExchange);
+    }
+
+    public void addStreamDispatcher(String domain, StreamDispatcher dispatcher) {
+        addStreamDispatcher(domain, dispatcher, PayloadCodec.JSON, CakeExchange.FULL);
+    }
+
+    public void addStreamDispatcher(String domain, StreamDispatcher dispatcher, PayloadCodec codec) {
+        addStreamDispatcher(domain, dispatcher, codec, CakeExchange.FULL);
+    }
+
+    // Payloads for the domain are written into buffers the oven reuses across bakes, and cakes are read straight from
+    // the streams the dispatcher returns, so that large payloads and cakes are never held as Strings. Pass the streams
+    // to BackendOven.bake(InputStream, OutputStream, PayloadCodec) with the same codec. As for binary dispatchers,
+    // cakes are read as they arrive, even with the lazy cake enabled.
+    public void addStreamDispatcher(String domain, StreamDispatcher dispatcher, PayloadCodec codec, CakeExchange cakeExchange) {
+        Objects.requireNonNull(dispatcher);
+        addRoute(domain, new Route(
+            Objects.requireNonNull(codec),
+            Format.STREAM,
+            payload -> dispatchStream(dispatcher, (BufferPool.Buffer)payload),
+            payload -> CompletableFuture.supplyAsync(() -> dispatchStream(dispatcher, (BufferPool.Buffer)payload), dispatchExecutor)
+        ), cakeExchange);
+    }
+
+    // Bakes the domain's segments with a backend oven in the same process, e.g. backendOven::bakeLocal, without
+    // serializing payloads or cakes: the backend is handed the segment's recipe and bakes into the oven's cake. Cakes
+    // are always exchanged in full, as nothing is sent; with parallel dispatch enabled, each segment bakes into a fork
+    // of the cake.
+    public void addLocalDispatcher(String domain, LocalDispatcher dispatcher) {
+        Objects.requireNonNull(dispatcher);
+        addRoute(domain, new Route(
+            PayloadCodec.JSON,
+            Format.LOCAL,
+            payload -> dispatchLocal(dispatcher, (Payload)payload),
+            payload -> CompletableFuture.supplyAsync(() -> dispatchLocal(dispatcher, (Payload)payload), dispatchExecutor)
+        ), CakeExchange.FULL);
+    }
+
+    private static Cake dispatchLocal(LocalDispatcher dispatcher, Payload payload) {
+        dispatcher.bake((Recipe)payload.getRecipe(), payload.getCake());
+        return payload.getCake();
+    }
+
+    // the payload's buffer is reused once the dispatcher returns
+    private InputStream dispatchStream(StreamDispatcher dispatcher, BufferPool.Buffer payload) {
+        try {
+            return dispatcher.dispatch(payload.toInputStream());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            bufferPool.release(payload);
+        }
+    }
+
+    // The executor bakeAsync calls synchronous dispatchers on, the common fork join pool by default. Its few threads
+    // are shared with the rest of the JVM, so give an executor of its own to an oven that bakes many recipes at once
+    // with synchronous dispatchers; one of virtual threads, where the JVM has them, lets many bakes wait at once.
+    public void setDispatchExecutor(Executor executor) {
+        dispatchExecutor = Objects.requireNonNull(executor);
+    }
+
+    private void addRoute(String domain, Route route, CakeExchange cakeExchange) {
+        Objects.requireNonNull(cakeExchange);
+        if (routes.putIfAbsent(domain, route) != null) {
             throw new RuntimeException("oven already has a dispatcher for domain '" + domain + "'");
         }
+        cakeExchanges.put(domain, cakeExchange);
+    }
+
+    private static <T> T await(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        }
+        catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+        }
+    }
 
-        dispatchers.put(domain, dispatcher);
+    // a step of bakeAsync that throws as the steps of bake do, as a failed stage
+    private static <T,R> Function<T,CompletionStage<R>> step(AsyncStep<T,R> step) {
+        return value -> {
+            try {
+                return step.apply(value);
+            }
+            catch (Exception e) {
+                CompletableFuture<R> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        };
     }
 
-    private String serializePayload(Recipe recipe, Cake cake) throws JsonProcessingException {
-        Cake plainCake = new Cake();
-        plainCake.setEntries(cake.getEntries());
-        Payload payload = new Payload(recipe, plainCake);
-        return objectMapper.writeValueAsString(payload);
+    private Object serializePayload(Route route, Recipe recipe, Cake cake, CakeExchange cakeExchange,
+                                    ObjectMapper objectMapper) throws IOException {
+        Payload payload = new Payload(recipe, cake, cakeExchange);
+        return write(route, payload, objectMapper);
     }
 
-    private Cake deserializeCake(String json) throws IOException {
-        Cake plainCake = objectMapper.readValue(json, Cake.class);
-        Cake cake = createCake();
-        cake.setEntries(plainCake.getEntries());
-        return cake;
+    private Cake deserializeCake(Route route, Object returnedCake, ObjectMapper objectMapper) throws IOException {
+        if (route.format == Format.LOCAL) {
+            return (Cake)returnedCake;
+        }
+        return read(cakeReader(route, returnedCake, objectMapper).withValueToUpdate(createCake()), returnedCake);
+    }
+
+    private ObjectReader cakeReader(Route route, Object returnedCake, ObjectMapper objectMapper) {
+        ObjectReader reader = mapperFor(route, objectMapper).readerFor(Cake.class);
+        return lazyCake && route.format == Format.TEXT ? reader.withAttribute(CakeDeserializer.LAZY_SOURCE, returnedCake) : reader;
+    }
+
+    // payloads are JSON text for dispatchers, bytes for binary dispatchers, pooled buffers for stream dispatchers, and
+    // the payload itself for local dispatchers
+    private Object write(Route route, Object value, ObjectMapper objectMapper) throws IOException {
+        ObjectMapper routeMapper = mapperFor(route, objectMapper);
+        switch (route.format) {
+            case TEXT:
+                return routeMapper.writeValueAsString(value);
+            case BYTES:
+                return routeMapper.writeValueAsBytes(value);
+            case LOCAL:
+                return value;
+            default:
+                BufferPool.Buffer buffer = bufferPool.acquire();
+                routeMapper.writeValue(buffer, value);
+                return buffer;
+        }
     }
 
-    private void registerSubtypes(Recipe recipe) {
-        for (Ingredient ingredient: recipe.getIngredients()) {
-            if (ingredient instanceof Recipe) {
-                registerSubtypes((Recipe)ingredient);
+    private static <T> T read(ObjectReader reader, Object reply) throws IOException {
+        if (reply instanceof InputStream) {
+            try (InputStream in = (InputStream)reply) {
+                return reader.readValue(in);
             }
-            else {
-                subtypeResolver.registerSubtypes(new NamedType(ingredient.getClass(), ingredient.getIngredientType()));
+        }
+        return reply instanceof byte[] ? reader.readValue((byte[])reply) : reader.readValue((String)reply);
+    }
+
+    private static JsonParser createParser(ObjectMapper objectMapper, Object reply) throws IOException {
+        if (reply instanceof InputStream) {
+            return objectMapper.getFactory().createParser((InputStream)reply);
+        }
+        return reply instanceof byte[] ? objectMapper.getFactory().createParser((byte[])reply) : objectMapper.getFactory().createParser((String)reply);
+    }
+
+    private ObjectMapper mapperFor(Route route, ObjectMapper objectMapper) {
+        return route.format == Format.TEXT || route.format == Format.LOCAL ? objectMapper : subtypeRegistry.mapperFor(objectMapper, route.codec);
+    }
+
+    // how payloads and returned cakes are passed to and from a domain's dispatcher
+    private enum Format {
+        TEXT,
+        BYTES,
+        STREAM,
+        LOCAL
+    }
+
+    // a domain's dispatcher, called with and returning payloads and cakes of its format, in its codec
+    private static class Route {
+        private final PayloadCodec codec;
+        private final Format format;
+        private final Function<Object,Object> dispatcher;
+        private final Function<Object,CompletionStage<?>> asyncDispatcher;
+
+        Route(PayloadCodec codec, Format format, Function<Object,Object> dispatcher, Function<Object,CompletionStage<?>> asyncDispatcher) {
+            this.codec = codec;
+            this.format = format;
+            this.dispatcher = dispatcher;
+            this.asyncDispatcher = asyncDispatcher;
+        }
+    }
+
+    @FunctionalInterface
+    private interface AsyncStep<T,R> {
+        CompletionStage<R> apply(T value) throws Exception;
+    }
+
+    // a segment dispatched by bakeConcurrently: the number of merges and the entries the cake had when its payload was
+    // serialized, unless only changes are returned, and the cake the backend returned
+    private static class ConcurrentDispatch {
+        private final int index;
+        private final int mergesSeen;
+        private final Map<String,Object> sentEntries;
+        private final Cake cake;
+
+        ConcurrentDispatch(int index, int mergesSeen, Map<String,Object> sentEntries, Cake cake) {
+            this.index = index;
+            this.mergesSeen = mergesSeen;
+            this.sentEntries = sentEntries;
+            this.cake = cake;
+        }
+    }
+
+    // session state of a single bake: the version of the cake each domain's session holds, the last segment of each
+    // domain so that its session can be closed, and the domains whose backends replied that they keep no sessions
+    private static class BakeSessions {
+        private final String id = UUID.randomUUID().toString();
+        private final Map<String,Long> epochs = new HashMap<>();
+        private final Map<String,Integer> lastSegments = new HashMap<>();
+        private final Set<String> withoutSessions = new HashSet<>();
+
+        BakeSessions(List<Recipe.Segment> segments) {
+            for (int i = 0; i < segments.size(); i++) {
+                lastSegments.put(segments.get(i).domain, i);
             }
         }
     }
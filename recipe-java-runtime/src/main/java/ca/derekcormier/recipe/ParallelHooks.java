@@ -0,0 +1,200 @@
+package ca.derekcormier.recipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+// Bakes a payload's recipe with the runs of ingredients a backend oven hands its hooks (see
+// BaseIngredientHook.bakeBatch) baked on an executor as soon as the earlier runs they depend on are baked. A run
+// depends on an earlier run whose ingredients publish cake keys or namespaces that its ingredients read, publish or
+// are baked in, as declared by their hooks; hooks that declare neither depend on every run before them. Each run is
+// baked in its namespace, the one it would be baked in serially, and the keys published are those a serial bake
+// would publish. A context ingredient is baked once the runs before it are, since its hook may set the key that the
+// rest of its recipe is baked in the context of.
+final class ParallelHooks {
+    private final Function<IngredientSnapshot,BaseIngredientHook<?>> hooks;
+    private final ConcurrentCake cake;
+    private final Executor executor;
+    private final BakeSegment segment = BakeSegment.current();
+    // the runs collected since the last context ingredient, and the run that ingredients are added to
+    private final List<Run> runs = new ArrayList<>();
+    private Run openRun;
+    // set once a run fails, so that runs submitted after it do not start
+    private volatile boolean stopped;
+
+    ParallelHooks(Function<IngredientSnapshot,BaseIngredientHook<?>> hooks, ConcurrentCake cake, Executor executor) {
+        this.hooks = hooks;
+        this.cake = cake;
+        this.executor = executor;
+    }
+
+    void bake(IngredientSnapshot ingredient) {
+        collect(ingredient, Collections.emptyList());
+        bakeRuns();
+    }
+
+    private void collect(IngredientSnapshot ingredient, List<String> namespace) {
+        if (ingredient instanceof RecipeSnapshot) {
+            RecipeSnapshot recipe = (RecipeSnapshot)ingredient;
+            if (recipe.getContext() != null) {
+                inNamespace(recipe.getContext(), recipe, namespace);
+            }
+            else if (recipe.getContextIngredient() != null) {
+                bakeRuns();
+                KeyedIngredientSnapshot contextIngredient = recipe.getContextIngredient();
+                BackendOven.bakeRun(hooks.apply(contextIngredient), Collections.singletonList(contextIngredient), cake);
+                if (contextIngredient.getKey() != null) {
+                    inNamespace(contextIngredient.getKey(), recipe, namespace);
+                }
+                else {
+                    collectAll(recipe, namespace);
+                }
+            }
+            else {
+                collectAll(recipe, namespace);
+            }
+        }
+        else {
+            BaseIngredientHook<?> hook = hooks.apply(ingredient);
+            if (openRun == null || openRun.hook != hook) {
+                Run run = new Run(hook);
+                // the run bakes in the namespace the cake is in now, on whichever thread
+                run.task = cake.bindNamespace(() -> BackendOven.bakeRun(run.hook, run.ingredients, cake));
+                runs.add(run);
+                openRun = run;
+            }
+            openRun.ingredients.add(ingredient);
+            String key = ingredient instanceof KeyedIngredientSnapshot ? ((KeyedIngredientSnapshot)ingredient).getKey() : null;
+            openRun.access.add(new CakeAccess(hook.getCakeReads(), hook.getCakePublishes(), key, namespace));
+        }
+    }
+
+    // a namespace change ends the run, as it does when baking serially
+    private void inNamespace(String context, RecipeSnapshot recipe, List<String> namespace) {
+        openRun = null;
+        cake.inNamespace(context, () -> collectAll(recipe, RecipeLeaf.withContext(namespace, context)));
+        openRun = null;
+    }
+
+    private void collectAll(RecipeSnapshot recipe, List<String> namespace) {
+        for (IngredientSnapshot ingredient: recipe.getIngredients()) {
+            collect(ingredient, namespace);
+        }
+    }
+
+    private void bakeRuns() {
+        openRun = null;
+        if (runs.isEmpty()) {
+            return;
+        }
+
+        int[] waiting = new int[runs.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int j = 0; j < runs.size(); j++) {
+            dependents.add(new ArrayList<>());
+            for (int i = 0; i < j; i++) {
+                if (runs.get(i).access.conflictsWith(runs.get(j).access)) {
+                    dependents.get(i).add(j);
+                    waiting[j]++;
+                }
+            }
+        }
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        // the runs submitted that have not been taken from the completion service yet
+        int inFlight = 0;
+        stopped = false;
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                if (waiting[i] == 0) {
+                    submit(completionService, i);
+                    inFlight++;
+                }
+            }
+
+            for (int done = 0; done < runs.size(); done++) {
+                int baked;
+                try {
+                    Future<Integer> future = completionService.take();
+                    inFlight--;
+                    baked = future.get();
+                }
+                catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : new RuntimeException(e.getCause());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("interrupted while baking ingredients", e);
+                }
+
+                for (int dependent: dependents.get(baked)) {
+                    if (--waiting[dependent] == 0) {
+                        submit(completionService, dependent);
+                        inFlight++;
+                    }
+                }
+            }
+        }
+        catch (RuntimeException | Error e) {
+            // runs not yet started are skipped, and those already baking finish before the failure is passed on, so
+            // that no hook is still baking into the cake while the segment's listeners hear of the failure
+            stopped = true;
+            awaitInFlight(completionService, inFlight);
+            throw e;
+        }
+        finally {
+            runs.clear();
+        }
+    }
+
+    private static void awaitInFlight(CompletionService<Integer> completionService, int inFlight) {
+        boolean interrupted = Thread.interrupted();
+        while (inFlight > 0) {
+            try {
+                completionService.take();
+                inFlight--;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // hooks see the segment being baked as they would on the thread baking the payload
+    private void submit(CompletionService<Integer> completionService, int index) {
+        Run run = runs.get(index);
+        completionService.submit(() -> {
+            if (stopped) {
+                return index;
+            }
+            BakeSegment previous = segment.enter();
+            try {
+                run.task.run();
+                return index;
+            }
+            finally {
+                BakeSegment.exit(previous);
+            }
+        });
+    }
+
+    private static class Run {
+        private final BaseIngredientHook<?> hook;
+        private final List<IngredientSnapshot> ingredients = new ArrayList<>();
+        private final CakeAccess access = new CakeAccess();
+        private Runnable task;
+
+        Run(BaseIngredientHook<?> hook) {
+            this.hook = hook;
+        }
+    }
+}
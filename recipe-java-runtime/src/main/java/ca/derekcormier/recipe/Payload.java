@@ -1,19 +1,61 @@
 package ca.derekcormier.recipe;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Map;
+
+// the recipe comes last, so that a streaming backend has the cake to bake into when it reaches it
+@JsonPropertyOrder({"cake", "cakeExchange", "session", "recipe"})
 public class Payload {
     private Recipe recipe;
     private Cake cake;
+    private Map<String,Object> cakeEntries;
+    private CakeExchange cakeExchange;
+    private BakeSession session;
 
     public Payload(Recipe recipe, Cake cake) {
+        this(recipe, cake, CakeExchange.FULL);
+    }
+
+    public Payload(Recipe recipe, Cake cake, CakeExchange cakeExchange) {
         this.recipe = recipe;
         this.cake = cake;
+        this.cakeExchange = cakeExchange;
+    }
+
+    // A session payload, carrying only the cake entries the session has not seen yet
+    public Payload(Recipe recipe, Map<String,Object> cakeEntries, BakeSession session) {
+        this.recipe = recipe;
+        this.cakeEntries = cakeEntries;
+        this.cakeExchange = CakeExchange.SESSION;
+        this.session = session;
     }
 
     public Ingredient getRecipe() {
         return recipe;
     }
 
+    @JsonIgnore
     public Cake getCake() {
         return cake;
     }
+
+    @JsonProperty("cake")
+    private Object getSerializedCake() {
+        return cake != null ? cake : cakeEntries;
+    }
+
+    // full exchanges are left implicit so that the payload stays readable by backends that predate cake exchanges
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public CakeExchange getCakeExchange() {
+        return cakeExchange == CakeExchange.FULL ? null : cakeExchange;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public BakeSession getSession() {
+        return session;
+    }
 }
@@ -0,0 +1,15 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+// The format an oven and a backend oven exchange payloads and cakes in through a binary dispatcher. Any format Jackson
+// has a factory for may be used, e.g. CBORFactory::new with jackson-dataformat-cbor; the oven and the backend oven
+// must use the same codec.
+@FunctionalInterface
+public interface PayloadCodec {
+    PayloadCodec JSON = JsonFactory::new;
+    PayloadCodec SMILE = SmileFactory::new;
+
+    JsonFactory createFactory();
+}
@@ -0,0 +1,110 @@
+package ca.derekcormier.recipe;
+
+import java.util.List;
+import java.util.Map;
+
+// Cake index held in an immutable trie whose children are persistent hash maps. Adding a key copies only the nodes on
+// its path, so fork can share the whole trie in constant time.
+class PersistentCakeIndex extends CakeIndex {
+    private static final Node EMPTY = new Node(PersistentHashMap.empty(), null, 0);
+    private Node root;
+
+    public PersistentCakeIndex() {
+        this(EMPTY);
+    }
+
+    private PersistentCakeIndex(Node root) {
+        this.root = root;
+    }
+
+    public PersistentCakeIndex fork() {
+        return new PersistentCakeIndex(root);
+    }
+
+    @Override
+    protected void add(String fullKey, String[] subKeys) {
+        root = insert(root, subKeys, subKeys.length - 1, fullKey);
+    }
+
+    @Override
+    public void clear() {
+        root = EMPTY;
+    }
+
+    @Override
+    public String findKeyInNamespaces(List<String> namespace, CakeKey key) {
+        Node keyNode = findNode(key);
+        if (keyNode == null) {
+            return null;
+        }
+
+        for (int depth = namespace.size(); depth >= 0; depth--) {
+            Node node = keyNode;
+            for (int i = depth - 1; i >= 0 && node != null; i--) {
+                node = node.children.get(namespace.get(i));
+            }
+            if (node != null && node.key != null) {
+                return node.key;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int countKeysEndingWith(CakeKey key) {
+        Node node = findNode(key);
+        return node == null ? 0 : node.count;
+    }
+
+    @Override
+    public String findOnlyKeyEndingWith(CakeKey key) {
+        Node node = findNode(key);
+        if (node == null || node.count != 1) {
+            return null;
+        }
+
+        while (node.key == null) {
+            for (Map.Entry<String,Node> child: node.children) {
+                if (child.getValue().count > 0) {
+                    node = child.getValue();
+                    break;
+                }
+            }
+        }
+        return node.key;
+    }
+
+    // returns the node with the key inserted below it, or the same node if the key was already present
+    private Node insert(Node node, String[] subKeys, int i, String fullKey) {
+        if (i < 0) {
+            return node.key != null ? node : new Node(node.children, fullKey, node.count + 1);
+        }
+
+        Node child = node.children.get(subKeys[i]);
+        Node newChild = insert(child == null ? EMPTY : child, subKeys, i - 1, fullKey);
+        if (newChild == child) {
+            return node;
+        }
+        return new Node(node.children.put(subKeys[i], newChild), node.key, node.count + 1);
+    }
+
+    private Node findNode(CakeKey key) {
+        Node node = root;
+        for (int i = key.size() - 1; i >= 0 && node != null; i--) {
+            node = node.children.get(key.getSubKey(i));
+        }
+        return node;
+    }
+
+    private static final class Node {
+        private final PersistentHashMap<String,Node> children;
+        private final String key;
+        private final int count;
+
+        private Node(PersistentHashMap<String,Node> children, String key, int count) {
+            this.children = children;
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ca.derekcormier.recipe;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+// Map of cake entries backed by a persistent hash trie. Writes replace the trie root, so fork can hand out an
+// independent map sharing all current entries in constant time.
+class PersistentEntryMap extends AbstractMap<String,Object> {
+    private PersistentHashMap<String,Object> entries;
+
+    public PersistentEntryMap() {
+        this(PersistentHashMap.empty());
+    }
+
+    private PersistentEntryMap(PersistentHashMap<String,Object> entries) {
+        this.entries = entries;
+    }
+
+    public PersistentEntryMap fork() {
+        return new PersistentEntryMap(entries);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = entries.get(key);
+        entries = entries.put(key, value);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        entries = PersistentHashMap.empty();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Set<Entry<String,Object>> entrySet() {
+        return new AbstractSet<Entry<String,Object>>() {
+            @Override
+            public Iterator<Entry<String,Object>> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+}
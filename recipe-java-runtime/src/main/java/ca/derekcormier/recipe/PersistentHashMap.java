@@ -0,0 +1,251 @@
+package ca.derekcormier.recipe;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Immutable hash array mapped trie. put returns a new map that shares every untouched node with the original, so
+// "copying" a map is free and an update costs O(log32 n). Keys must not be null; values may be.
+final class PersistentHashMap<K,V> implements Iterable<Map.Entry<K,V>> {
+    private static final PersistentHashMap<?,?> EMPTY = new PersistentHashMap<>(BitmapNode.EMPTY, 0);
+    private static final Object NOT_FOUND = new Object();
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K,V> PersistentHashMap<K,V> empty() {
+        return (PersistentHashMap<K,V>)EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V)value;
+    }
+
+    public boolean containsKey(Object key) {
+        return root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    public PersistentHashMap<K,V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K,V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+        // entries are stored as consecutive key/value pairs; a null key marks a value that is a sub node
+        abstract Object[] array();
+    }
+
+    private static final class BitmapNode extends Node {
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[index];
+            if (k == null) {
+                return ((Node)array[index + 1]).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? array[index + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                newArray[index] = key;
+                newArray[index + 1] = value;
+                System.arraycopy(array, index, newArray, index + 2, array.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object k = array[index];
+            Object v = array[index + 1];
+            if (k == null) {
+                Node subNode = ((Node)v).put(shift + BITS, hash, key, value, added);
+                return subNode == v ? this : with(index + 1, subNode);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : with(index + 1, value);
+            }
+
+            added[0] = true;
+            Node subNode = createNode(shift + BITS, k, v, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[index] = null;
+            newArray[index + 1] = subNode;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+
+        private BitmapNode with(int index, Object value) {
+            Object[] newArray = array.clone();
+            newArray[index] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+        }
+    }
+
+    // keys whose hashes are fully equal
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return array[i + 1];
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // nest this node one level down so the differing hashes can be told apart
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[]{null, this}).put(shift, hash, key, value, added);
+            }
+
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    if (array[i + 1] == value) {
+                        return this;
+                    }
+                    Object[] newArray = array.clone();
+                    newArray[i + 1] = value;
+                    return new CollisionNode(hash, newArray);
+                }
+            }
+
+            added[0] = true;
+            Object[] newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+    }
+
+    private static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+        private final Deque<Object[]> arrays = new ArrayDeque<>();
+        private final Deque<Integer> positions = new ArrayDeque<>();
+        private Map.Entry<K,V> next;
+
+        private EntryIterator(Node root) {
+            arrays.push(root.array());
+            positions.push(0);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K,V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K,V> entry = next;
+            advance();
+            return entry;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!arrays.isEmpty()) {
+                Object[] array = arrays.peek();
+                int position = positions.pop();
+                if (position >= array.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(position + 2);
+
+                if (array[position] == null) {
+                    arrays.push(((Node)array[position + 1]).array());
+                    positions.push(0);
+                }
+                else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K)array[position], (V)array[position + 1]);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package ca.derekcormier.recipe;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Map of cake entries that stores Integer, Long and Double values unboxed. Entries are kept in insertion order in
+// parallel arrays (a primitive value's bits in one, other values in another, allocated with the first such value) and
+// found through an open addressing table of entry positions. Primitive values are only boxed when read through the Map
+// interface.
+final class PrimitiveEntryMap extends AbstractMap<String,Object> {
+    private static final byte OBJECT = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final int FREE = -1;
+    private static final int REMOVED = -2;
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private Object[] objects;
+    private long[] bits = new long[INITIAL_CAPACITY];
+    private byte[] tags = new byte[INITIAL_CAPACITY];
+    // positions of entries, at most half full so that probes stay short
+    private int[] table = newTable(2 * INITIAL_CAPACITY);
+    // number of positions used, including removed entries
+    private int count;
+    private int size;
+    private int modCount;
+
+    PrimitiveEntryMap() {
+    }
+
+    PrimitiveEntryMap(PrimitiveEntryMap other) {
+        keys = other.keys.clone();
+        objects = other.objects == null ? null : other.objects.clone();
+        bits = other.bits.clone();
+        tags = other.tags.clone();
+        table = other.table.clone();
+        count = other.count;
+        size = other.size;
+    }
+
+    // Receives entries in insertion order, primitive values unboxed
+    interface EntryVisitor {
+        void visitObject(String key, Object value) throws IOException;
+        void visitInt(String key, int value) throws IOException;
+        void visitLong(String key, long value) throws IOException;
+        void visitDouble(String key, double value) throws IOException;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && find((String)key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int position = find((String)key);
+        return position < 0 ? null : valueAt(position);
+    }
+
+    public long getLong(String key) {
+        int position = position(key);
+        switch (tags[position]) {
+            case INT:
+            case LONG:
+                return bits[position];
+            case DOUBLE:
+                return (long)Double.longBitsToDouble(bits[position]);
+            default:
+                return toNumber(key, objectAt(position)).longValue();
+        }
+    }
+
+    public int getInt(String key) {
+        int position = position(key);
+        switch (tags[position]) {
+            case INT:
+            case LONG:
+                return (int)bits[position];
+            case DOUBLE:
+                return (int)Double.longBitsToDouble(bits[position]);
+            default:
+                return toNumber(key, objectAt(position)).intValue();
+        }
+    }
+
+    public double getDouble(String key) {
+        int position = position(key);
+        switch (tags[position]) {
+            case INT:
+            case LONG:
+                return bits[position];
+            case DOUBLE:
+                return Double.longBitsToDouble(bits[position]);
+            default:
+                return toNumber(key, objectAt(position)).doubleValue();
+        }
+    }
+
+    // Integer, Long and Double values are unboxed
+    @Override
+    public Object put(String key, Object value) {
+        return put(key, value, true);
+    }
+
+    // Same as put, but keeps the value as the object given, so that later reads return that same instance
+    public Object putObject(String key, Object value) {
+        return putBits(key, 0, OBJECT, value, true);
+    }
+
+    // Same as put, without boxing the previous value to return it
+    public void store(String key, Object value) {
+        put(key, value, false);
+    }
+
+    public void putInt(String key, int value) {
+        putBits(key, value, INT, null, false);
+    }
+
+    public void putLong(String key, long value) {
+        putBits(key, value, LONG, null, false);
+    }
+
+    public void putDouble(String key, double value) {
+        putBits(key, Double.doubleToRawLongBits(value), DOUBLE, null, false);
+    }
+
+    // Copies every entry of the other map over this one without boxing
+    public void copyFrom(PrimitiveEntryMap other) {
+        for (int i = 0; i < other.count; i++) {
+            if (other.keys[i] != null) {
+                putBits(other.keys[i], other.bits[i], other.tags[i], other.objectAt(i), false);
+            }
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int slot = findSlot((String)key, hash(key));
+        int position = table[slot];
+        if (position < 0) {
+            return null;
+        }
+
+        Object previous = valueAt(position);
+        table[slot] = REMOVED;
+        removeAt(position);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0, count, null);
+        if (objects != null) {
+            Arrays.fill(objects, 0, count, null);
+        }
+        Arrays.fill(table, FREE);
+        count = 0;
+        size = 0;
+        modCount++;
+    }
+
+    public void forEachEntry(EntryVisitor visitor) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == null) {
+                continue;
+            }
+            switch (tags[i]) {
+                case INT:
+                    visitor.visitInt(keys[i], (int)bits[i]);
+                    break;
+                case LONG:
+                    visitor.visitLong(keys[i], bits[i]);
+                    break;
+                case DOUBLE:
+                    visitor.visitDouble(keys[i], Double.longBitsToDouble(bits[i]));
+                    break;
+                default:
+                    visitor.visitObject(keys[i], objectAt(i));
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<String,Object>> entrySet() {
+        return new AbstractSet<Entry<String,Object>>() {
+            @Override
+            public Iterator<Entry<String,Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Object put(String key, Object value, boolean returnPrevious) {
+        Class<?> clazz = value == null ? null : value.getClass();
+        if (clazz == Integer.class) {
+            return putBits(key, (Integer)value, INT, null, returnPrevious);
+        }
+        else if (clazz == Long.class) {
+            return putBits(key, (Long)value, LONG, null, returnPrevious);
+        }
+        else if (clazz == Double.class) {
+            return putBits(key, Double.doubleToRawLongBits((Double)value), DOUBLE, null, returnPrevious);
+        }
+        return putBits(key, 0, OBJECT, value, returnPrevious);
+    }
+
+    // returns the previous value, boxed only if asked for
+    private Object putBits(String key, long value, byte tag, Object object, boolean returnPrevious) {
+        int hash = hash(key);
+        int slot = findSlot(key, hash);
+        int position = table[slot];
+        if (position >= 0) {
+            Object previous = returnPrevious ? valueAt(position) : null;
+            bits[position] = value;
+            tags[position] = tag;
+            setObject(position, object);
+            return previous;
+        }
+
+        if (count == keys.length) {
+            grow();
+            slot = findSlot(key, hash);
+        }
+        else if (count >= table.length / 2) {
+            rebuildTable(2 * table.length);
+            slot = findSlot(key, hash);
+        }
+
+        position = count++;
+        keys[position] = key;
+        bits[position] = value;
+        tags[position] = tag;
+        setObject(position, object);
+        table[slot] = position;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    private Object valueAt(int position) {
+        switch (tags[position]) {
+            case INT:
+                return (int)bits[position];
+            case LONG:
+                return bits[position];
+            case DOUBLE:
+                return Double.longBitsToDouble(bits[position]);
+            default:
+                return objectAt(position);
+        }
+    }
+
+    private Object objectAt(int position) {
+        return objects == null ? null : objects[position];
+    }
+
+    private void setObject(int position, Object object) {
+        if (objects == null && object != null) {
+            objects = new Object[keys.length];
+        }
+        if (objects != null) {
+            objects[position] = object;
+        }
+    }
+
+    private void removeAt(int position) {
+        keys[position] = null;
+        setObject(position, null);
+        size--;
+        modCount++;
+    }
+
+    private int find(String key) {
+        return table[findSlot(key, hash(key))];
+    }
+
+    private int position(String key) {
+        int position = find(key);
+        if (position < 0) {
+            throw new RuntimeException("cake does not contain key '" + key + "'");
+        }
+        return position;
+    }
+
+    // Returns the slot holding the key's position, or the slot to insert it into if it is not in the map
+    private int findSlot(String key, int hash) {
+        int mask = table.length - 1;
+        int insertSlot = -1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int position = table[slot];
+            if (position == FREE) {
+                return insertSlot >= 0 ? insertSlot : slot;
+            }
+            if (position == REMOVED) {
+                if (insertSlot < 0) {
+                    insertSlot = slot;
+                }
+            }
+            else if (keys[position].hashCode() == key.hashCode() && key.equals(keys[position])) {
+                return slot;
+            }
+        }
+    }
+
+    // Compacts out removed entries and, if still needed, doubles the capacity, then rebuilds the table
+    private void grow() {
+        int capacity = size * 2 > keys.length ? keys.length * 2 : keys.length;
+        String[] oldKeys = keys;
+        Object[] oldObjects = objects;
+        long[] oldBits = bits;
+        byte[] oldTags = tags;
+        int oldCount = count;
+
+        keys = new String[capacity];
+        objects = oldObjects == null ? null : new Object[capacity];
+        bits = new long[capacity];
+        tags = new byte[capacity];
+        count = 0;
+
+        for (int i = 0; i < oldCount; i++) {
+            if (oldKeys[i] == null) {
+                continue;
+            }
+            keys[count] = oldKeys[i];
+            if (objects != null) {
+                objects[count] = oldObjects[i];
+            }
+            bits[count] = oldBits[i];
+            tags[count] = oldTags[i];
+            count++;
+        }
+
+        int tableLength = table.length;
+        while (count >= tableLength / 2) {
+            tableLength *= 2;
+        }
+        rebuildTable(tableLength);
+    }
+
+    private void rebuildTable(int length) {
+        table = newTable(length);
+        int mask = length - 1;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == null) {
+                continue;
+            }
+            int slot = hash(keys[i]) & mask;
+            while (table[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    private static int[] newTable(int length) {
+        int[] table = new int[length];
+        Arrays.fill(table, FREE);
+        return table;
+    }
+
+    // similar keys (row1.id, row2.id...) have similar hash codes, which would cluster in a linear probing table
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static Number toNumber(String key, Object value) {
+        if (!(value instanceof Number)) {
+            throw new ClassCastException("cake value for key '" + key + "' is not a number");
+        }
+        return (Number)value;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String,Object>> {
+        private int next = advance(0);
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        @Override
+        public Entry<String,Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= count) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return new SimpleImmutableEntry<>(keys[last], valueAt(last));
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            PrimitiveEntryMap.this.remove(keys[last]);
+            expectedModCount = modCount;
+            last = -1;
+        }
+
+        private int advance(int position) {
+            while (position < count && keys[position] == null) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
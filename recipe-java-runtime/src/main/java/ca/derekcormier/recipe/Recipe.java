@@ -1,18 +1,37 @@
 package ca.derekcormier.recipe;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Recipe extends Ingredient {
+    // written first even when null, so that a streaming backend knows the recipe's namespace before its ingredients
+    @JsonInclude(JsonInclude.Include.ALWAYS)
     @JsonProperty("context")
     private String context;
     @JsonProperty("ingredients")
-    private final List<Ingredient> ingredients;
+    private List<Ingredient> ingredients;
+    @JsonIgnore
+    private boolean parallel;
+    @JsonIgnore
+    private boolean locked;
+    @JsonIgnore
+    private volatile BakePlan plan;
+    // segmentation of a frozen recipe nested in other recipes, by the domain segmentation is in when it is reached
+    @JsonIgnore
+    private Map<String,Fragment> fragments;
 
     public static Recipe prepare(Ingredient... ingredients) {
         return new Recipe(ingredients);
@@ -24,6 +43,16 @@ public class Recipe extends Ingredient {
         return recipe;
     }
 
+    // Groups branches that do not depend on each other, through the cake or otherwise, so that an oven with parallel
+    // dispatch enabled may bake their segments at the same time. Each ingredient or recipe given is a branch, and is
+    // baked in the order given when dispatch is not parallel.
+    public static Recipe parallel(Ingredient... branches) {
+        Recipe recipe = new Recipe();
+        recipe.ingredients.addAll(Arrays.asList(branches));
+        recipe.parallel = true;
+        return recipe;
+    }
+
     public static Recipe context(KeyedIngredient contextIngredient, Ingredient... ingredients) {
         Objects.requireNonNull(contextIngredient);
         return prepare(contextIngredient,
@@ -33,15 +62,21 @@ public class Recipe extends Ingredient {
 
     protected Recipe() {
         super("Recipe");
-        this.ingredients = new ArrayList<>();
+        this.ingredients = new IngredientList();
+    }
+
+    private Recipe(String context, List<Ingredient> ingredients) {
+        super("Recipe");
+        this.context = context;
+        this.ingredients = ingredients;
     }
 
     protected Recipe(Ingredient...ingredients) {
         super("Recipe");
-        this.ingredients = new ArrayList<>();
+        this.ingredients = new IngredientList();
         for (Ingredient ingredient: ingredients) {
-            // flatten context-free recipes
-            if (ingredient instanceof Recipe && ((Recipe)ingredient).context == null) {
+            // flatten context-free recipes, sharing their ingredients rather than copying them
+            if (ingredient instanceof Recipe && ((Recipe)ingredient).context == null && !((Recipe)ingredient).parallel) {
                 this.ingredients.addAll(((Recipe)ingredient).ingredients);
             }
             else {
@@ -58,6 +93,88 @@ public class Recipe extends Ingredient {
         return context;
     }
 
+    @JsonIgnore
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    // a recipe like this one with other ingredients
+    Recipe withIngredients(List<Ingredient> ingredients) {
+        Recipe recipe = new Recipe();
+        recipe.context = context;
+        recipe.parallel = parallel;
+        recipe.ingredients.addAll(ingredients);
+        return recipe;
+    }
+
+    // Computes the recipe's bake plan once, for recipes that are baked many times. The ingredient lists of the recipe
+    // and its nested recipes become unmodifiable; the ingredients themselves must not be changed after freezing either.
+    // A frozen recipe nested in other recipes is segmented once per domain it is reached in, however often the
+    // recipes containing it are segmented.
+    public synchronized BakePlan freeze() {
+        if (plan == null) {
+            lock();
+            plan = new BakePlan(this, segment(), getSubtypes());
+        }
+        return plan;
+    }
+
+    @JsonIgnore
+    public boolean isFrozen() {
+        return plan != null;
+    }
+
+    BakePlan plan() {
+        BakePlan frozenPlan = plan;
+        return frozenPlan != null ? frozenPlan : new BakePlan(this, segment(), getSubtypes());
+    }
+
+    // plan with the ingredients reordered by SegmentOptimizer, if that saves round trips
+    BakePlan optimizedPlan() {
+        List<Segment> segments = segment();
+        List<Segment> optimized = new SegmentOptimizer(this).optimize(segments);
+        return new BakePlan(this, optimized, getSubtypes(), segments.size() - optimized.size());
+    }
+
+    private void lock() {
+        if (locked) {
+            return;
+        }
+        for (Ingredient ingredient: ingredients) {
+            if (ingredient instanceof Recipe) {
+                ((Recipe)ingredient).lock();
+            }
+        }
+        ingredients = ingredients instanceof IngredientList
+            ? ((IngredientList)ingredients).unmodifiable()
+            : Collections.unmodifiableList(ingredients);
+        locked = true;
+    }
+
+    // the ingredient classes in the recipe with their ingredient types, the first type seen for each class
+    NamedType[] getSubtypes() {
+        Set<NamedType> subtypes = new LinkedHashSet<>();
+        collectSubtypes(subtypes);
+        return subtypes.toArray(new NamedType[0]);
+    }
+
+    private void collectSubtypes(Set<NamedType> subtypes) {
+        for (Ingredient ingredient: ingredients) {
+            if (ingredient instanceof Recipe) {
+                BakePlan nestedPlan = ((Recipe)ingredient).plan;
+                if (nestedPlan != null) {
+                    Collections.addAll(subtypes, nestedPlan.getSubtypes());
+                }
+                else {
+                    ((Recipe)ingredient).collectSubtypes(subtypes);
+                }
+            }
+            else {
+                subtypes.add(new NamedType(ingredient.getClass(), ingredient.getIngredientType()));
+            }
+        }
+    }
+
     public class Segment {
         public String domain;
         public Recipe recipe;
@@ -68,52 +185,113 @@ public class Recipe extends Ingredient {
     //original recipe, but more efficient for sending payloads of ingredients to different services.
     protected List<Segment> segment() {
         List<Segment> segments = new ArrayList<>();
-        List<Recipe> recipeStack = new ArrayList<>();
-        recipeStack.add(this);
-        _segment(new Recipe(), recipeStack, null, segments);
+        _segment(new Recipe(), null, segments);
         return segments;
     }
 
-    private void _segment(Recipe currRecipe, List<Recipe> recipeStack, String currDomain, List<Segment> segments) {
-        for (Ingredient ingredient: recipeStack.get(0).ingredients) {
-            if (ingredient instanceof Recipe) {
-                Recipe recipe = new Recipe();
-                recipe.context = ((Recipe) ingredient).context;
-                recipeStack.add(0, (Recipe) ingredient);
-                _segment(recipe, recipeStack, currDomain, segments);
+    // Walks the recipe with an explicit stack of the recipes being segmented, so that deep nesting cannot overflow the
+    // call stack. Each recipe's segmentation has its own current recipe and domain; a nested recipe starts in the
+    // domain of the recipe it is in, but does not change that recipe's domain.
+    private void _segment(Recipe currRecipe, String currDomain, List<Segment> segments) {
+        List<Frame> frames = new ArrayList<>();
+        frames.add(new Frame(this, currRecipe, currDomain));
+        while (!frames.isEmpty()) {
+            Frame frame = frames.get(frames.size() - 1);
+            if (frame.next == frame.recipe.ingredients.size()) {
+                frames.remove(frames.size() - 1);
+                if (!frames.isEmpty() && !frame.copy.ingredients.isEmpty()) {
+                    frames.get(frames.size() - 1).currRecipe.ingredients.add(frame.copy);
+                }
+                continue;
+            }
 
-                if (!recipe.ingredients.isEmpty()) {
-                    currRecipe.ingredients.add(recipe);
+            Ingredient ingredient = frame.recipe.ingredients.get(frame.next++);
+            if (ingredient instanceof Recipe && ((Recipe)ingredient).plan != null && ((Recipe)ingredient).context != null) {
+                Fragment fragment = ((Recipe)ingredient).fragment(frame.currDomain);
+                for (Segment segment: fragment.segments) {
+                    segments.add(wrap(segment.domain, segment.recipe, frames));
                 }
+
+                if (!fragment.recipe.ingredients.isEmpty()) {
+                    frame.currRecipe.ingredients.add(fragment.recipe);
+                }
+            }
+            else if (ingredient instanceof Recipe) {
+                Recipe recipe = new Recipe();
+                recipe.context = ((Recipe)ingredient).context;
+                frames.add(new Frame((Recipe)ingredient, recipe, frame.currDomain));
             }
             else {
-                if (!ingredient.getDomain().equals(currDomain)) {
+                if (!ingredient.getDomain().equals(frame.currDomain)) {
                     //copy recipe structure
-                    Recipe outerRecipe = null;
-                    Recipe recipe = null;
-                    for (Recipe r : recipeStack) {
-                        if (recipe == null) {
-                            outerRecipe = new Recipe();
-                            recipe = outerRecipe;
-                        }
-                        else {
-                            outerRecipe = Recipe.prepare(outerRecipe);
-                        }
-                        outerRecipe.context = r.context;
-                    }
-
-                    Segment segmented = new Segment();
-                    segmented.domain = ingredient.getDomain();
-                    segmented.recipe = outerRecipe;
-                    segments.add(segmented);
-
-                    currRecipe = recipe;
-                    currDomain = ingredient.getDomain();
+                    Recipe recipe = new Recipe();
+                    recipe.context = frame.recipe.context;
+                    segments.add(wrap(ingredient.getDomain(), recipe, frames.subList(0, frames.size() - 1)));
+
+                    frame.currRecipe = recipe;
+                    frame.currDomain = ingredient.getDomain();
                 }
 
-                currRecipe.ingredients.add(ingredient);
+                frame.currRecipe.ingredients.add(ingredient);
             }
         }
-        recipeStack.remove(0);
+    }
+
+    // Segments this recipe on its own, as _segment would when reaching it in the given domain. The recipe's
+    // ingredients before the first domain change are collected in the fragment's recipe, and the segments started
+    // within it are only wrapped in this recipe's context.
+    private synchronized Fragment fragment(String entryDomain) {
+        if (fragments == null) {
+            fragments = new HashMap<>();
+        }
+        return fragments.computeIfAbsent(entryDomain, domain -> {
+            Fragment fragment = new Fragment();
+            fragment.recipe.context = context;
+            _segment(fragment.recipe, domain, fragment.segments);
+            return fragment;
+        });
+    }
+
+    // a segment of the recipe in the contexts of the recipes being segmented, innermost last
+    private static Segment wrap(String domain, Recipe recipe, List<Frame> frames) {
+        Recipe outerRecipe = recipe;
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            outerRecipe = enclose(outerRecipe, frames.get(i).recipe.context);
+        }
+
+        Segment segment = recipe.new Segment();
+        segment.domain = domain;
+        segment.recipe = outerRecipe;
+        return segment;
+    }
+
+    // Unlike prepare, keeps the recipe nested even if it has no context, as a parallel group's recipes need not have
+    // one. Recipes that only enclose another are never added to, so their list is made to hold just the one.
+    private static Recipe enclose(Recipe recipe, String context) {
+        List<Ingredient> ingredients = new IngredientList(1);
+        ingredients.add(recipe);
+        return new Recipe(context, ingredients);
+    }
+
+    // a recipe being segmented, the next of its ingredients to segment, the recipe its ingredients are currently added
+    // to and that recipe's domain, and the copy of its structure started in the domain it was reached in
+    private static class Frame {
+        private final Recipe recipe;
+        private final Recipe copy;
+        private int next;
+        private Recipe currRecipe;
+        private String currDomain;
+
+        Frame(Recipe recipe, Recipe currRecipe, String currDomain) {
+            this.recipe = recipe;
+            this.copy = currRecipe;
+            this.currRecipe = currRecipe;
+            this.currDomain = currDomain;
+        }
+    }
+
+    private static class Fragment {
+        private final Recipe recipe = new Recipe();
+        private final List<Segment> segments = new ArrayList<>();
     }
 }
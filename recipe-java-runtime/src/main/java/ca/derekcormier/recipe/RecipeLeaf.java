@@ -0,0 +1,42 @@
+package ca.derekcormier.recipe;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// an ingredient of a recipe that is not itself a recipe, with the namespace it is baked in
+final class RecipeLeaf {
+    final Ingredient ingredient;
+    final List<String> namespace;
+    final CakeAccess access;
+
+    RecipeLeaf(Ingredient ingredient, List<String> namespace) {
+        this.ingredient = ingredient;
+        this.namespace = namespace;
+        this.access = new CakeAccess(ingredient, namespace);
+    }
+
+    static void collect(Recipe recipe, List<String> namespace, List<RecipeLeaf> leaves) {
+        List<String> recipeNamespace = withContext(namespace, recipe.getContext());
+        for (Ingredient ingredient: recipe.getIngredients()) {
+            if (ingredient instanceof Recipe) {
+                collect((Recipe)ingredient, recipeNamespace, leaves);
+            }
+            else {
+                leaves.add(new RecipeLeaf(ingredient, recipeNamespace));
+            }
+        }
+    }
+
+    static List<String> withContext(List<String> namespace, String context) {
+        if (context == null) {
+            return namespace;
+        }
+
+        List<String> contextNamespace = new ArrayList<>(namespace);
+        contextNamespace.addAll(Arrays.asList(StringUtils.split(context, Cake.SEPARATOR)));
+        return contextNamespace;
+    }
+}
@@ -0,0 +1,189 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.function.Function;
+
+// Bakes a payload's recipe as it is read from a parser, for BackendOven.enableStreamingPayloads. Each ingredient is
+// read on its own and baked, or added to the run of its type, before the next one is read, and the cake is moved into
+// the namespace of a nested recipe while the parser is inside its ingredients. Runs are handed to hooks in batches of
+// at most MAX_BATCH ingredients, so that no more than a batch of the recipe is held at once, as long as recipes give
+// their context before their ingredients.
+final class RecipeStream {
+    static final int MAX_BATCH = 256;
+
+    private final Function<IngredientSnapshot,BaseIngredientHook<?>> hooks;
+    private final ObjectReader ingredientReader;
+    private final JsonParser parser;
+    private final Cake cake;
+
+    RecipeStream(Function<IngredientSnapshot,BaseIngredientHook<?>> hooks, ObjectReader ingredientReader, JsonParser parser, Cake cake) {
+        this.hooks = hooks;
+        this.ingredientReader = ingredientReader.forType(IngredientSnapshot.class);
+        this.parser = parser;
+        this.cake = cake;
+    }
+
+    // bakes the recipe whose wrapper object the parser is at the start of
+    void bake() {
+        try {
+            BackendOven.Batch batch = new BackendOven.Batch();
+            bakeIngredient(batch);
+            batch.bake(cake);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void bakeIngredient(BackendOven.Batch batch) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+            throw new IllegalArgumentException("ingredient must be an object named by its type");
+        }
+
+        if (parser.getCurrentName().equals("Recipe")) {
+            parser.nextToken();
+            bakeRecipe(batch);
+            if (parser.nextToken() != JsonToken.END_OBJECT) {
+                throw new IllegalArgumentException("ingredient must be an object named by its type");
+            }
+            return;
+        }
+
+        // the start of the wrapper object, already read, is put back in front of the parser, so that the subtype
+        // resolver reads the ingredient straight from the payload
+        TokenBuffer start = new TokenBuffer(parser);
+        start.writeStartObject();
+        JsonParser ingredientParser = JsonParserSequence.createFlattened(true, start.asParser(parser.getCodec()), parser);
+        IngredientSnapshot ingredient = ingredientReader.readValue(ingredientParser);
+        batch.add(hooks.apply(ingredient), ingredient, cake);
+        if (batch.size() >= MAX_BATCH) {
+            batch.bake(cake);
+        }
+    }
+
+    // A recipe's ingredients are baked as they are read once its namespace is known, that is once it has a context, or
+    // once both its context and context ingredient, or the lack of them, are read. A recipe that opens with its context,
+    // as the Java oven writes it, is taken to give its context ingredient, if any, before its ingredients. Ingredients
+    // that come earlier, as the TypeScript oven writes them, are buffered until the namespace is known or the recipe ends.
+    private void bakeRecipe(BackendOven.Batch batch) throws IOException {
+        RecipeContext recipeContext = new RecipeContext();
+        TokenBuffer bufferedIngredients = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "context":
+                    recipeContext.context = parser.getValueAsString();
+                    recipeContext.contextRead = true;
+                    break;
+                case "contextIngredient":
+                    recipeContext.contextIngredient = ingredientReader.forType(KeyedIngredientSnapshot.class).readValue(parser);
+                    recipeContext.contextIngredientRead = true;
+                    break;
+                case "ingredients":
+                    if (recipeContext.contextRead) {
+                        recipeContext.know(batch);
+                    }
+                    if (recipeContext.known) {
+                        bakeIngredients(batch, recipeContext.context, recipeContext.contextIngredient);
+                    }
+                    else {
+                        bufferedIngredients = new TokenBuffer(parser);
+                        bufferedIngredients.copyCurrentStructure(parser);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown recipe field '" + field + "'");
+            }
+
+            if (recipeContext.context != null || (recipeContext.contextRead && recipeContext.contextIngredientRead)) {
+                recipeContext.know(batch);
+            }
+            if (recipeContext.known && bufferedIngredients != null) {
+                bakeBuffered(bufferedIngredients, batch, recipeContext.context, recipeContext.contextIngredient);
+                bufferedIngredients = null;
+            }
+        }
+
+        recipeContext.know(batch);
+        if (bufferedIngredients != null) {
+            bakeBuffered(bufferedIngredients, batch, recipeContext.context, recipeContext.contextIngredient);
+        }
+    }
+
+    private void bakeBuffered(TokenBuffer ingredients, BackendOven.Batch batch, String context, KeyedIngredientSnapshot contextIngredient) throws IOException {
+        JsonParser bufferParser = ingredients.asParser(parser.getCodec());
+        bufferParser.nextToken();
+        new RecipeStream(hooks, ingredientReader, bufferParser, cake).bakeIngredients(batch, context, contextIngredient);
+    }
+
+    // bakes the ingredients array the parser is at, in the recipe's namespace if it has a context of its own
+    private void bakeIngredients(BackendOven.Batch batch, String context, KeyedIngredientSnapshot contextIngredient) throws IOException {
+        if (context == null && contextIngredient == null) {
+            // same namespace, so the run goes on into the recipe
+            bakeAll(batch);
+            return;
+        }
+
+        batch.bake(cake);
+        BackendOven.Batch recipeBatch = new BackendOven.Batch();
+        Runnable bakeRecipeIngredients = () -> {
+            try {
+                bakeAll(recipeBatch);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            recipeBatch.bake(cake);
+        };
+
+        String namespace = context != null ? context : contextIngredient.getKey();
+        if (namespace != null) {
+            cake.inNamespace(namespace, bakeRecipeIngredients);
+        }
+        else {
+            bakeRecipeIngredients.run();
+        }
+    }
+
+    // the fields of a recipe that give the namespace of its ingredients, as read so far
+    private final class RecipeContext {
+        private String context;
+        private boolean contextRead;
+        private KeyedIngredientSnapshot contextIngredient;
+        private boolean contextIngredientRead;
+        private boolean known;
+
+        // The context ingredient is baked on its own once the namespace is known, as its hook may set the key, but
+        // not if the recipe has a context, which gives the namespace instead as it does when the payload is read whole
+        void know(BackendOven.Batch batch) {
+            if (known) {
+                return;
+            }
+            known = true;
+            if (context == null && contextIngredient != null) {
+                batch.bake(cake);
+                BackendOven.bakeRun(hooks.apply(contextIngredient), Collections.singletonList(contextIngredient), cake);
+            }
+        }
+    }
+
+    private void bakeAll(BackendOven.Batch batch) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("recipe ingredients must be an array");
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            bakeIngredient(batch);
+        }
+    }
+}
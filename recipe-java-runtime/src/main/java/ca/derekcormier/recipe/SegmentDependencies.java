@@ -0,0 +1,103 @@
+package ca.derekcormier.recipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Which earlier segments each segment of a recipe has to wait for when segments are dispatched concurrently: earlier
+// segments of the same domain, and earlier segments with an ingredient that one of its ingredients depends on through
+// the cake (see CakeAccess). Ingredients in different branches of a Recipe.parallel group never depend on each other.
+final class SegmentDependencies {
+    // an ingredient baked in a namespace in more than one branch, or both in and out of a branch
+    private static final int[] AMBIGUOUS = new int[0];
+
+    // for each ingredient and namespace, the parallel groups it is in and its branch in each, as pairs of numbers
+    private final Map<Ingredient,Map<List<String>,int[]>> branches = new IdentityHashMap<>();
+    private int groups;
+
+    SegmentDependencies(Recipe recipe) {
+        collectBranches(recipe, Collections.emptyList(), new int[0]);
+    }
+
+    int[][] of(List<Recipe.Segment> segments) {
+        // the ingredients of the segments before the one being looked at, and the segment of each
+        List<RecipeLeaf> leaves = new ArrayList<>();
+        List<Integer> leafSegments = new ArrayList<>();
+        CakeAccess.Index index = new CakeAccess.Index();
+
+        int[][] dependencies = new int[segments.size()][];
+        for (int j = 0; j < segments.size(); j++) {
+            BitSet segmentDependencies = new BitSet();
+            for (int i = 0; i < j; i++) {
+                if (segments.get(i).domain.equals(segments.get(j).domain)) {
+                    segmentDependencies.set(i);
+                }
+            }
+
+            List<RecipeLeaf> segmentLeaves = new ArrayList<>();
+            RecipeLeaf.collect(segments.get(j).recipe, Collections.emptyList(), segmentLeaves);
+            for (RecipeLeaf laterLeaf: segmentLeaves) {
+                for (int candidate: index.candidates(laterLeaf.access)) {
+                    int segment = leafSegments.get(candidate);
+                    if (!segmentDependencies.get(segment) && conflict(leaves.get(candidate), laterLeaf)) {
+                        segmentDependencies.set(segment);
+                    }
+                }
+            }
+
+            for (RecipeLeaf leaf: segmentLeaves) {
+                index.add(leaf.access);
+                leaves.add(leaf);
+                leafSegments.add(j);
+            }
+            dependencies[j] = segmentDependencies.stream().toArray();
+        }
+        return dependencies;
+    }
+
+    private boolean conflict(RecipeLeaf leaf, RecipeLeaf laterLeaf) {
+        return !inDifferentBranches(branch(leaf), branch(laterLeaf)) && leaf.access.conflictsWith(laterLeaf.access);
+    }
+
+    private int[] branch(RecipeLeaf leaf) {
+        return branches.getOrDefault(leaf.ingredient, Collections.emptyMap()).getOrDefault(leaf.namespace, AMBIGUOUS);
+    }
+
+    private void collectBranches(Recipe recipe, List<String> namespace, int[] branch) {
+        List<String> recipeNamespace = RecipeLeaf.withContext(namespace, recipe.getContext());
+        int group = recipe.isParallel() ? groups++ : -1;
+        for (int i = 0; i < recipe.getIngredients().size(); i++) {
+            Ingredient ingredient = recipe.getIngredients().get(i);
+            int[] ingredientBranch = branch;
+            if (group >= 0) {
+                ingredientBranch = Arrays.copyOf(branch, branch.length + 2);
+                ingredientBranch[branch.length] = group;
+                ingredientBranch[branch.length + 1] = i;
+            }
+
+            if (ingredient instanceof Recipe) {
+                collectBranches((Recipe)ingredient, recipeNamespace, ingredientBranch);
+            }
+            else {
+                branches.computeIfAbsent(ingredient, k -> new HashMap<>())
+                    .merge(recipeNamespace, ingredientBranch, (a, b) -> Arrays.equals(a, b) ? a : AMBIGUOUS);
+            }
+        }
+    }
+
+    private static boolean inDifferentBranches(int[] branch, int[] otherBranch) {
+        for (int i = 0; i < branch.length; i += 2) {
+            for (int j = 0; j < otherBranch.length; j += 2) {
+                if (branch[i] == otherBranch[j] && branch[i + 1] != otherBranch[j + 1]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
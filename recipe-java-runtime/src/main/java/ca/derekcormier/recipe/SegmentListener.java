@@ -0,0 +1,18 @@
+package ca.derekcormier.recipe;
+
+// Told when a backend oven starts and finishes baking a segment, i.e. the recipe of a payload, see
+// BackendOven.addSegmentListener. Hooks can buffer their writes in the segment's attributes (BakeSegment.current())
+// and a listener write them out once the segment is baked, in one transaction for instance. Each listener whose
+// beforeSegment returned then either has its afterSegment return or is told of the segment's failure.
+public interface SegmentListener {
+    default void beforeSegment(BakeSegment segment) {
+    }
+
+    default void afterSegment(BakeSegment segment) {
+    }
+
+    // the segment failed before this listener's afterSegment returned, whether in a hook or in a listener, and with an
+    // error as well as an exception
+    default void onSegmentFailure(BakeSegment segment, Throwable e) {
+    }
+}
@@ -0,0 +1,199 @@
+package ca.derekcormier.recipe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reorders the ingredients of a recipe so that it bakes in fewer segments, e.g. A,B,A,B into A,A,B,B. Ingredients
+// only move within the recipe they are in, so they keep their context, and two ingredients keep their order if one
+// publishes a cake key that the other reads or publishes. Ingredients that do not declare their cake keys keep their
+// order with every other ingredient. Frozen nested recipes are moved as a whole but not reordered.
+final class SegmentOptimizer {
+    private final Recipe recipe;
+
+    SegmentOptimizer(Recipe recipe) {
+        this.recipe = recipe;
+    }
+
+    // Returns the segments of the reordered recipe, or the given segments of the recipe as it is if reordering does
+    // not save a round trip
+    List<Recipe.Segment> optimize(List<Recipe.Segment> segments) {
+        Unit unit = reorder(recipe, Collections.emptyList());
+        if (unit.ingredient == recipe) {
+            return segments;
+        }
+
+        List<Recipe.Segment> optimized = ((Recipe)unit.ingredient).segment();
+        // segmentation does not always bake a recipe's ingredients in the order they are in, so check the order
+        // they are baked in rather than trusting the new order
+        if (optimized.size() < segments.size() && keepsOrder(bakeOrder(segments), bakeOrder(optimized))) {
+            return optimized;
+        }
+        return segments;
+    }
+
+    private Unit reorder(Recipe recipe, List<String> namespace) {
+        List<String> recipeNamespace = RecipeLeaf.withContext(namespace, recipe.getContext());
+        List<Unit> units = new ArrayList<>();
+        for (Ingredient ingredient: recipe.getIngredients()) {
+            if (ingredient instanceof Recipe && ((Recipe)ingredient).isFrozen()) {
+                units.add(frozenUnit((Recipe)ingredient, recipeNamespace));
+            }
+            else if (ingredient instanceof Recipe) {
+                units.add(reorder((Recipe)ingredient, recipeNamespace));
+            }
+            else {
+                units.add(new Unit(ingredient, ingredient.getDomain(), new CakeAccess(ingredient, recipeNamespace)));
+            }
+        }
+
+        List<Unit> scheduled = schedule(units);
+        boolean changed = false;
+        for (int i = 0; i < units.size(); i++) {
+            changed |= scheduled.get(i) != units.get(i) || scheduled.get(i).ingredient != recipe.getIngredients().get(i);
+        }
+
+        Unit unit = new Unit(recipe, null, new CakeAccess());
+        for (Unit u: scheduled) {
+            if (unit.firstDomain == null) {
+                unit.firstDomain = u.firstDomain;
+            }
+            unit.access.add(u.access);
+        }
+
+        if (changed) {
+            List<Ingredient> ingredients = new ArrayList<>();
+            for (Unit u: scheduled) {
+                ingredients.add(u.ingredient);
+            }
+            unit.ingredient = recipe.withIngredients(ingredients);
+        }
+        return unit;
+    }
+
+    private Unit frozenUnit(Recipe frozen, List<String> namespace) {
+        Unit unit = new Unit(frozen, null, new CakeAccess());
+        List<RecipeLeaf> leaves = new ArrayList<>();
+        RecipeLeaf.collect(frozen, namespace, leaves);
+        for (RecipeLeaf leaf: leaves) {
+            if (unit.firstDomain == null) {
+                unit.firstDomain = leaf.ingredient.getDomain();
+            }
+            unit.access.add(leaf.access);
+        }
+        return unit;
+    }
+
+    // List scheduling: of the units whose preceding conflicting units are all placed, place the first one in the
+    // current domain if there is one, otherwise the first one. Segmentation stays in the domain it was in before a
+    // nested recipe once past it, so only ingredients change the current domain.
+    private List<Unit> schedule(List<Unit> units) {
+        int n = units.size();
+        int[] blockers = new int[n];
+        List<List<Integer>> blocked = new ArrayList<>();
+        CakeAccess.Index index = new CakeAccess.Index();
+        for (int i = 0; i < n; i++) {
+            blocked.add(new ArrayList<>());
+            for (int j: index.candidates(units.get(i).access)) {
+                if (units.get(j).access.conflictsWith(units.get(i).access)) {
+                    blocked.get(j).add(i);
+                    blockers[i]++;
+                }
+            }
+            index.add(units.get(i).access);
+        }
+
+        List<Unit> scheduled = new ArrayList<>(n);
+        boolean[] placed = new boolean[n];
+        String currDomain = null;
+        while (scheduled.size() < n) {
+            int next = -1;
+            for (int i = 0; i < n; i++) {
+                if (!placed[i] && blockers[i] == 0) {
+                    if (next == -1) {
+                        next = i;
+                    }
+                    if (units.get(i).firstDomain != null && units.get(i).firstDomain.equals(currDomain)) {
+                        next = i;
+                        break;
+                    }
+                }
+            }
+
+            Unit unit = units.get(next);
+            placed[next] = true;
+            scheduled.add(unit);
+            for (int i: blocked.get(next)) {
+                blockers[i]--;
+            }
+            if (!(unit.ingredient instanceof Recipe)) {
+                currDomain = unit.firstDomain;
+            }
+        }
+        return scheduled;
+    }
+
+    // the ingredients of the segments in the order they are baked, each with the namespace it is baked in
+    private List<RecipeLeaf> bakeOrder(List<Recipe.Segment> segments) {
+        List<RecipeLeaf> leaves = new ArrayList<>();
+        for (Recipe.Segment segment: segments) {
+            RecipeLeaf.collect(segment.recipe, Collections.emptyList(), leaves);
+        }
+        return leaves;
+    }
+
+    // whether every two conflicting ingredients are baked in the same order, matching the n-th bake of an ingredient
+    // in a namespace in one order with its n-th bake in that namespace in the other
+    private boolean keepsOrder(List<RecipeLeaf> original, List<RecipeLeaf> optimized) {
+        if (original.size() != optimized.size()) {
+            return false;
+        }
+
+        Map<Ingredient,Map<List<String>,List<Integer>>> positions = new IdentityHashMap<>();
+        for (int i = 0; i < optimized.size(); i++) {
+            RecipeLeaf leaf = optimized.get(i);
+            positions.computeIfAbsent(leaf.ingredient, k -> new HashMap<>())
+                .computeIfAbsent(leaf.namespace, k -> new ArrayList<>())
+                .add(i);
+        }
+
+        int[] position = new int[original.size()];
+        Map<Ingredient,Map<List<String>,Integer>> seen = new IdentityHashMap<>();
+        for (int i = 0; i < original.size(); i++) {
+            RecipeLeaf leaf = original.get(i);
+            List<Integer> leafPositions = positions.getOrDefault(leaf.ingredient, Collections.emptyMap()).get(leaf.namespace);
+            int occurrence = seen.computeIfAbsent(leaf.ingredient, k -> new HashMap<>()).merge(leaf.namespace, 1, Integer::sum) - 1;
+            if (leafPositions == null || occurrence >= leafPositions.size()) {
+                return false;
+            }
+            position[i] = leafPositions.get(occurrence);
+        }
+
+        CakeAccess.Index index = new CakeAccess.Index();
+        for (int j = 0; j < original.size(); j++) {
+            for (int i: index.candidates(original.get(j).access)) {
+                if (position[i] > position[j] && original.get(i).access.conflictsWith(original.get(j).access)) {
+                    return false;
+                }
+            }
+            index.add(original.get(j).access);
+        }
+        return true;
+    }
+
+    // an ingredient, or a nested recipe moved as a whole, in the list of ingredients being reordered
+    private static class Unit {
+        private Ingredient ingredient;
+        private String firstDomain;
+        private final CakeAccess access;
+
+        Unit(Ingredient ingredient, String firstDomain, CakeAccess access) {
+            this.ingredient = ingredient;
+            this.firstDomain = firstDomain;
+            this.access = access;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Collections;
+import java.util.Map;
+
+// What a backend oven returns for a session payload. The cake exchange is SESSION if the backend kept the session, or
+// DELTA if it has sessions disabled; either way the cake holds only the entries the backend changed. A resync reply
+// means the backend no longer has the session (e.g. it expired) and did not bake, so the segment must be resent
+// with the full cake.
+@JsonPropertyOrder({"cakeExchange", "cake", "resync"})
+public class SessionReply {
+    private final CakeExchange cakeExchange;
+    private final Map<String,Object> cake;
+    private final boolean resync;
+
+    @JsonCreator
+    public SessionReply(
+        @JsonProperty("cakeExchange") CakeExchange cakeExchange,
+        @JsonProperty("cake") Map<String,Object> cake,
+        @JsonProperty("resync") boolean resync
+    ) {
+        this.cakeExchange = cakeExchange;
+        this.cake = cake == null ? Collections.emptyMap() : cake;
+        this.resync = resync;
+    }
+
+    public static SessionReply resync() {
+        return new SessionReply(CakeExchange.SESSION, null, true);
+    }
+
+    public CakeExchange getCakeExchange() {
+        return cakeExchange;
+    }
+
+    public Map<String,Object> getCake() {
+        return cake;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isResync() {
+        return resync;
+    }
+}
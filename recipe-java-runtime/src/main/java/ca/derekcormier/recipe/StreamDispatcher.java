@@ -0,0 +1,13 @@
+package ca.derekcormier.recipe;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// A dispatcher that streams the payload to the backend and returns the backend's response as a stream, so that
+// neither is held as a String, see Oven.addStreamDispatcher. The payload is read from a buffer the oven reuses once
+// dispatch returns, so it must be sent by then; its available() is the payload's length. The oven reads the cake
+// straight from the response stream and closes it.
+@FunctionalInterface
+public interface StreamDispatcher {
+    InputStream dispatch(InputStream payload) throws IOException;
+}
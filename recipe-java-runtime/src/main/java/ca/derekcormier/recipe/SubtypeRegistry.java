@@ -0,0 +1,119 @@
+package ca.derekcormier.recipe;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.SubtypeResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.StdSubtypeResolver;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The ingredient subtypes an oven has registered, and the mapper that serializes them. Jackson looks up the type names
+// of subtypes when it first builds a serializer and caches it, so registering a subtype with a mapper in use has no
+// effect; instead, a bake bringing subtypes that are not registered yet gets a new mapper registering them as well,
+// which later bakes share. Once every ingredient class in use is registered, bakes share one mapper and its caches.
+final class SubtypeRegistry {
+    private volatile Registered registered = new Registered(Collections.emptyMap());
+
+    // A mapper that serializes each of the subtypes with its type name. A class already registered with another type
+    // name gets a mapper for the bake alone, as that bake must use the other name.
+    ObjectMapper mapperFor(NamedType[] subtypes) {
+        Registered current = registered;
+        switch (current.match(subtypes)) {
+            case REGISTERED:
+                return current.mapper;
+            case CONFLICTING:
+                return createMapper(subtypes);
+            default:
+                return register(subtypes);
+        }
+    }
+
+    // The mapper writing and reading bytes in a codec's format with the subtypes of a mapper from mapperFor. Those of
+    // the registered mapper are kept, so that they share their caches as well.
+    ObjectMapper mapperFor(ObjectMapper objectMapper, PayloadCodec codec) {
+        Registered current = registered;
+        if (objectMapper == current.mapper) {
+            return current.codecMappers.computeIfAbsent(codec, c -> createMapper(objectMapper, c));
+        }
+        return createMapper(objectMapper, codec);
+    }
+
+    private synchronized ObjectMapper register(NamedType[] subtypes) {
+        Registered current = registered;
+        Match match = current.match(subtypes);
+        if (match != Match.UNREGISTERED) {
+            return match == Match.REGISTERED ? current.mapper : createMapper(subtypes);
+        }
+
+        Map<Class<?>,String> names = new HashMap<>(current.names);
+        for (NamedType subtype: subtypes) {
+            names.putIfAbsent(subtype.getType(), subtype.getName());
+        }
+        registered = new Registered(names);
+        return registered.mapper;
+    }
+
+    private static ObjectMapper createMapper(NamedType[] subtypes) {
+        SubtypeResolver subtypeResolver = new StdSubtypeResolver();
+        subtypeResolver.registerSubtypes(subtypes);
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setSubtypeResolver(subtypeResolver);
+        return objectMapper;
+    }
+
+    private static ObjectMapper createMapper(ObjectMapper objectMapper, PayloadCodec codec) {
+        return codecMapper(codec, objectMapper.getSubtypeResolver());
+    }
+
+    // A mapper for payloads and cakes in a codec's bytes. Parsers reading bytes look field names up in a table of the
+    // names seen so far, which for the many distinct keys of a large cake grows over and over during each parse and
+    // costs far more than it saves, so field names are not canonicalized.
+    static ObjectMapper codecMapper(PayloadCodec codec, SubtypeResolver subtypeResolver) {
+        JsonFactory factory = codec.createFactory().disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
+        ObjectMapper codecMapper = new ObjectMapper(factory);
+        codecMapper.setSubtypeResolver(subtypeResolver);
+        return codecMapper;
+    }
+
+    private enum Match {
+        REGISTERED,
+        UNREGISTERED,
+        CONFLICTING
+    }
+
+    // the type name of each registered class, and a mapper registering them, along with one for each codec in use
+    private static final class Registered {
+        private final Map<Class<?>,String> names;
+        private final ObjectMapper mapper;
+        private final Map<PayloadCodec,ObjectMapper> codecMappers = new ConcurrentHashMap<>();
+
+        Registered(Map<Class<?>,String> names) {
+            this.names = names;
+            this.mapper = createMapper(namedTypes(names));
+        }
+
+        Match match(NamedType[] subtypes) {
+            Match match = Match.REGISTERED;
+            for (NamedType subtype: subtypes) {
+                String name = names.get(subtype.getType());
+                if (name == null) {
+                    match = Match.UNREGISTERED;
+                }
+                else if (!name.equals(subtype.getName())) {
+                    return Match.CONFLICTING;
+                }
+            }
+            return match;
+        }
+
+        private static NamedType[] namedTypes(Map<Class<?>,String> names) {
+            return names.entrySet().stream()
+                .map(entry -> new NamedType(entry.getKey(), entry.getValue()))
+                .toArray(NamedType[]::new);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package ca.derekcormier.recipe;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -9,26 +15,69 @@ import static org.mockito.Mockito.verify;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.mockito.Mockito;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// The scenarios baking JSON payloads also run through bakeLocal, with the payload turned into the recipe and cake an
+// oven would hand a local dispatcher, and the response the JSON path would give written from the cake, and with
+// streaming payloads enabled, with the payload written as an oven writes it.
+@RunWith(Parameterized.class)
 public class BackendOvenTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Parameterized.Parameter
+    public String path;
+
     private BackendOven oven;
 
+    @Parameterized.Parameters(name = "{0}")
+    public static List<String> paths() {
+        return Arrays.asList("json", "local", "streaming");
+    }
+
     @Before
     public void before() {
         oven = new BackendOven();
+        if (path.equals("streaming")) {
+            oven.enableStreamingPayloads();
+        }
     }
 
     @Test(expected = RuntimeException.class)
     public void testBake_throwsOnMissingIngredientHook() {
-        oven.bake(payloadJson("{\"TestIngredient\":{}}"));
+        bake(payloadJson("{\"TestIngredient\":{}}"));
     }
 
     @Test
     public void testBake_bakesSingleIngredient() {
         EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
         oven.registerHook(hook);
-        oven.bake(payloadJson("{\"EmptyIngredient\":{}}"));
+        bake(payloadJson("{\"EmptyIngredient\":{}}"));
 
         verify(hook).bake(any(), any());
     }
@@ -37,7 +86,7 @@ public class BackendOvenTest {
     public void testBake_bakesIngredientInNestedRecipe() {
         EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
         oven.registerHook(hook);
-        oven.bake(payloadJson("{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}}"));
+        bake(payloadJson("{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}}"));
 
         verify(hook).bake(any(), any());
     }
@@ -46,7 +95,7 @@ public class BackendOvenTest {
     public void testBake_bakesRepeatedIngredient() {
         EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
         oven.registerHook(hook);
-        oven.bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"EmptyIngredient\":{}}"));
+        bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"EmptyIngredient\":{}}"));
 
         verify(hook, times(2)).bake(any(), any());
     }
@@ -58,13 +107,151 @@ public class BackendOvenTest {
 
         oven.registerHook(hook1);
         oven.registerHook(hook2);
-        oven.bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"IngredientWithRequired\":{}}"));
+        bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"IngredientWithRequired\":{}}"));
 
         verify(hook1).bake(any(), any());
         verify(hook2).bake(any(), any());
     }
 
 
+    @Test
+    public void testBake_bakesRunsOfSameTypeInNamespaceAsBatches() {
+        BatchingIngredientHook hook = new BatchingIngredientHook();
+        oven.registerHook(hook);
+        oven.registerHook(new IngredientWithRequiredHook());
+
+        bake(payloadJson(
+            "{\"EmptyIngredient\":{}}", "{\"EmptyIngredient\":{}}", "{\"EmptyIngredient\":{}}",
+            "{\"IngredientWithRequired\":{}}",
+            "{\"EmptyIngredient\":{}}",
+            "{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}},{\"EmptyIngredient\":{}}]}}",
+            "{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}}",
+            "{\"EmptyIngredient\":{}}"
+        ));
+
+        assertEquals(Arrays.asList("batch of 3 in ''", "bake in ''", "batch of 2 in 'foo'", "batch of 2 in ''"), hook.bakes);
+    }
+
+    @Test
+    public void testBake_streaming_recipeWithContextDoesNotBakeContextIngredient() {
+        assumeTrue(path.equals("streaming"));
+        KeyedIngredientHook hook = spy(KeyedIngredientHook.class);
+        oven.registerHook(hook);
+        oven.registerHook(publishingNamespaceHook());
+
+        // as when the payload is read whole, the context gives the namespace whichever field comes first
+        for (String recipe: Arrays.asList(
+            "{\"context\":\"foo\",\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"bar\"}},\"ingredients\":[{\"EmptyIngredient\":{}}]}",
+            "{\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"bar\"}},\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}"
+        )) {
+            String cake = oven.bake("{\"cake\":{},\"recipe\":{\"Recipe\":" + recipe + "}}");
+            assertEquals("{\"foo.bar\":\"foo\"}", cake);
+        }
+        verify(hook, never()).bake(any(), any());
+    }
+
+    @Test
+    public void testBake_streaming_bakesContextIngredientOfRecipeWithoutContext() {
+        assumeTrue(path.equals("streaming"));
+        KeyedIngredientHook hook = spy(KeyedIngredientHook.class);
+        oven.registerHook(hook);
+        oven.registerHook(publishingNamespaceHook());
+
+        for (String recipe: Arrays.asList(
+            "{\"context\":null,\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"bar\"}},\"ingredients\":[{\"EmptyIngredient\":{}}]}",
+            "{\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"bar\"}},\"context\":null,\"ingredients\":[{\"EmptyIngredient\":{}}]}"
+        )) {
+            String cake = oven.bake("{\"cake\":{},\"recipe\":{\"Recipe\":" + recipe + "}}");
+            assertEquals("{\"bar.bar\":\"bar\"}", cake);
+        }
+        verify(hook, times(2)).bake(any(), any());
+    }
+
+    @Test
+    public void testBake_streaming_bakesIngredientsBeforeRestOfRecipeIsRead() {
+        assumeTrue(path.equals("streaming"));
+        BatchingIngredientHook hook = new BatchingIngredientHook();
+        oven.registerHook(hook);
+        oven.registerHook(new IngredientWithRequiredHook());
+
+        try {
+            oven.bake("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"EmptyIngredient\":{}},{\"EmptyIngredient\":{}},"
+                + "{\"IngredientWithRequired\":{}},{\"EmptyIngredient\":{}},{\"EmptyIngredient\":");
+            fail("expected exception");
+        }
+        catch (RuntimeException e) {
+            // the payload is cut off, but the runs before the one it ends in were baked
+            assertEquals(Arrays.asList("batch of 2 in ''"), hook.bakes);
+        }
+    }
+
+    @Test
+    public void testBake_streaming_handsLongRunsToHooksInBoundedBatches() {
+        assumeTrue(path.equals("streaming"));
+        BatchingIngredientHook hook = new BatchingIngredientHook();
+        oven.registerHook(hook);
+
+        String[] ingredients = new String[RecipeStream.MAX_BATCH + 10];
+        Arrays.fill(ingredients, "{\"EmptyIngredient\":{}}");
+        bake(payloadJson(ingredients));
+
+        assertEquals(Arrays.asList("batch of " + RecipeStream.MAX_BATCH + " in ''", "batch of 10 in ''"), hook.bakes);
+    }
+
+    @Test
+    public void testBake_streaming_buffersRecipeThatComesBeforeCake() {
+        assumeTrue(path.equals("streaming"));
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("bar", cake.get("foo"));
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String cake = oven.bake("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},"
+            + "\"cake\":{\"foo\":\"x\"},\"cakeExchange\":\"DELTA\"}");
+
+        assertEquals("{\"bar\":\"x\"}", cake);
+    }
+
+    @Test
+    public void testBake_streaming_buffersRecipeThatMayHaveFieldsAfterIt() {
+        assumeTrue(path.equals("streaming"));
+        oven.registerHook(publishingNamespaceHook());
+
+        // the recipe does not open with its context, so the payload is not known to be in oven order
+        String cake = oven.bake("{\"cake\":{\"foo\":\"x\"},\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},"
+            + "\"cakeExchange\":\"DELTA\"}");
+
+        assertEquals("{\"bar\":\"\"}", cake);
+    }
+
+    @Test
+    public void testBake_streaming_bakesTypeScriptOvenPayloadInContexts() {
+        assumeTrue(path.equals("streaming"));
+        oven.registerHook(publishingNamespaceHook());
+
+        // as the TypeScript oven writes it, with the recipe before the cake and contexts after ingredients
+        String cake = oven.bake("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}},"
+            + "{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}],\"context\":\"bar\"}}],\"context\":\"foo\"}}]}},\"cake\":{}}");
+
+        assertEquals("{\"foo.bar\":\"foo\",\"foo.bar.bar\":\"foo.bar\"}", cake);
+    }
+
+    @Test
+    public void testBake_streaming_buffersIngredientsUntilTheirContextIsRead() {
+        assumeTrue(path.equals("streaming"));
+        EmptyIngredientHook hook = publishingNamespaceHook();
+        oven.registerHook(hook);
+
+        String cake = oven.bake("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"EmptyIngredient\":{}},"
+            + "{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}],\"context\":\"foo\"}}]}}}");
+
+        assertEquals("{\"bar\":\"\",\"foo.bar\":\"foo\"}", cake);
+        verify(hook, times(2)).bake(any(), any());
+    }
+
     @Test
     public void testBake_bakesIngredientInRecipeWithContext() {
         EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
@@ -77,7 +264,7 @@ public class BackendOvenTest {
             return null;
         }).when(hook).bake(any(), any());
 
-        oven.bake("{\"recipe\":{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
     }
@@ -87,7 +274,7 @@ public class BackendOvenTest {
         KeyedIngredientHook hook = spy(KeyedIngredientHook.class);
 
         oven.registerHook(hook);
-        oven.bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
     }
@@ -99,7 +286,7 @@ public class BackendOvenTest {
 
         oven.registerHook(hook);
         oven.registerHook(hook2);
-        oven.bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
         verify(hook2).bake(any(), any());
@@ -119,7 +306,7 @@ public class BackendOvenTest {
             return null;
         }).when(hook2).bake(any(), any());
 
-        oven.bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"foo\"}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"foo\"}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
         verify(hook2).bake(any(), any());
@@ -127,6 +314,8 @@ public class BackendOvenTest {
 
     @Test
     public void testBake_bakesChildrenOfContextIngredientInContext_keySetInBake() {
+        // recipes from Java ovens have no context ingredient, their context is fixed when they are prepared
+        assumeFalse(path.equals("local"));
         KeyedIngredientHook hook = spy(KeyedIngredientHook.class);
         EmptyIngredientHook hook2 = spy(EmptyIngredientHook.class);
 
@@ -145,7 +334,7 @@ public class BackendOvenTest {
             return null;
         }).when(hook2).bake(any(), any());
 
-        oven.bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
         verify(hook2).bake(any(), any());
@@ -165,7 +354,7 @@ public class BackendOvenTest {
             return null;
         }).when(hook2).bake(any(), any());
 
-        oven.bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
         verify(hook2).bake(any(), any());
@@ -173,6 +362,8 @@ public class BackendOvenTest {
 
     @Test
     public void testBake_bakesChildrenOfContextIngredientInContext_keyChangedToNullInBakeResultsInNoContext() {
+        // recipes from Java ovens have no context ingredient, their context is fixed when they are prepared
+        assumeFalse(path.equals("local"));
         KeyedIngredientHook hook = spy(KeyedIngredientHook.class);
         EmptyIngredientHook hook2 = spy(EmptyIngredientHook.class);
 
@@ -191,12 +382,452 @@ public class BackendOvenTest {
             return null;
         }).when(hook2).bake(any(), any());
 
-        oven.bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"foo\"}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        bake("{\"recipe\":{\"Recipe\":{\"contextIngredient\":{\"KeyedIngredient\":{\"key\":\"foo\"}},\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
 
         verify(hook).bake(any(), any());
         verify(hook2).bake(any(), any());
     }
 
+    @Test
+    public void testBake_bakesWithCakeFromFactory() {
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        oven.setCakeFactory(ConcurrentCake::new);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            assertTrue(cake instanceof ConcurrentCake);
+            cake.publish("foo", "bar");
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String cake = bake(payloadJson("{\"EmptyIngredient\":{}}"));
+
+        verify(hook).bake(any(), any());
+        assertEquals("{\"foo\":\"bar\"}", cake);
+    }
+
+    @Test
+    public void testBake_deltaCakeExchange_returnsOnlyChangedEntries() {
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            assertEquals("bar", cake.get("foo"));
+            cake.publish("moo", "cow");
+            cake.publish("baz", 2);
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String cake = bake("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{\"foo\":\"bar\",\"baz\":1},\"cakeExchange\":\"DELTA\"}");
+
+        assertEquals("{\"moo\":\"cow\",\"baz\":2}", cake);
+    }
+
+    @Test
+    public void testBake_fullCakeExchange_returnsWholeCake() throws Exception {
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("moo", "cow");
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String cake = bake("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{\"foo\":\"bar\"},\"cakeExchange\":\"FULL\"}");
+
+        Map<?,?> entries = new ObjectMapper().readValue(cake, Map.class);
+        assertEquals(2, entries.size());
+        assertEquals("bar", entries.get("foo"));
+        assertEquals("cow", entries.get("moo"));
+    }
+
+    @Test
+    public void testBake_segmentListeners_toldOfSegmentAroundHooks() {
+        List<String> events = new ArrayList<>();
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        oven.addSegmentListener(new RecordingSegmentListener("first", events));
+        oven.addSegmentListener(new RecordingSegmentListener("second", events));
+
+        Mockito.doAnswer(invocation -> {
+            BakeSegment.current().computeAttributeIfAbsent("rows", name -> new ArrayList<String>()).add("row");
+            events.add("bake");
+            return null;
+        }).when(hook).bake(any(), any());
+
+        bake(payloadJson("{\"EmptyIngredient\":{}}"));
+
+        assertEquals(Arrays.asList("first before", "second before", "bake", "first after [row]", "second after [row]"), events);
+        assertNull(BakeSegment.current());
+    }
+
+    @Test
+    public void testBake_segmentListeners_toldOfFailedHook() {
+        List<String> events = new ArrayList<>();
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        oven.addSegmentListener(new RecordingSegmentListener("first", events));
+        oven.addSegmentListener(new RecordingSegmentListener("second", events));
+
+        Mockito.doThrow(new IllegalStateException("hook failed")).when(hook).bake(any(), any());
+
+        try {
+            bake(payloadJson("{\"EmptyIngredient\":{}}"));
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertEquals(Arrays.asList("first before", "second before", "first failed: hook failed", "second failed: hook failed"), events);
+        }
+        assertNull(BakeSegment.current());
+    }
+
+    @Test
+    public void testBake_segmentListeners_toldOfErrorInHook() {
+        List<String> events = new ArrayList<>();
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        oven.addSegmentListener(new RecordingSegmentListener("first", events));
+
+        Mockito.doThrow(new StackOverflowError("hook failed")).when(hook).bake(any(), any());
+
+        try {
+            bake(payloadJson("{\"EmptyIngredient\":{}}"));
+            fail();
+        }
+        catch (StackOverflowError e) {
+            assertEquals(Arrays.asList("first before", "first failed: hook failed"), events);
+        }
+        assertNull(BakeSegment.current());
+    }
+
+    @Test
+    public void testBake_segmentListeners_failedAfterSegmentToldToListenersNotDone() {
+        List<String> events = new ArrayList<>();
+        oven.registerHook(new EmptyIngredientHook());
+        oven.addSegmentListener(new RecordingSegmentListener("first", events));
+        oven.addSegmentListener(new RecordingSegmentListener("second", events) {
+            @Override
+            public void afterSegment(BakeSegment segment) {
+                throw new IllegalStateException("commit failed");
+            }
+        });
+        oven.addSegmentListener(new RecordingSegmentListener("third", events));
+
+        try {
+            bake(payloadJson("{\"EmptyIngredient\":{}}"));
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertEquals(Arrays.asList("first before", "second before", "third before", "first after null",
+                "second failed: commit failed", "third failed: commit failed"), events);
+        }
+    }
+
+    @Test
+    public void testBake_segmentListeners_eachPayloadOfBatchIsSegment() {
+        assumeFalse(path.equals("local"));
+        List<String> events = new ArrayList<>();
+        oven.registerHook(new EmptyIngredientHook());
+        oven.addSegmentListener(new RecordingSegmentListener("listener", events));
+
+        oven.bake("{\"payloads\":["
+            + "{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}},"
+            + "{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}"
+            + "]}");
+
+        assertEquals(Arrays.asList("listener before", "listener after null", "listener before", "listener after null"), events);
+    }
+
+    @Test
+    public void testBake_parallelHooks_bakesIndependentRunsConcurrently() throws Exception {
+        CountDownLatch bothBaking = new CountDownLatch(2);
+        Runnable awaitOther = () -> {
+            bothBaking.countDown();
+            try {
+                assertTrue(bothBaking.await(5, TimeUnit.SECONDS));
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        oven.registerHook(new DeclaredHook<>("EmptyIngredient", EmptyIngredientData.class, null, Collections.singletonList("a"), cake -> {
+            awaitOther.run();
+            cake.publish("a", 1);
+        }));
+        oven.registerHook(new DeclaredHook<>("IngredientWithRequired", IngredientWithRequiredData.class, null, Collections.singletonList("b"), cake -> {
+            awaitOther.run();
+            cake.publish("b", 2);
+        }));
+        oven.enableParallelHooks(Executors.newFixedThreadPool(2));
+
+        String cake = bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"IngredientWithRequired\":{}}"));
+
+        Map<?,?> entries = MAPPER.readValue(cake, Map.class);
+        assertEquals(1, entries.get("a"));
+        assertEquals(2, entries.get("b"));
+    }
+
+    @Test
+    public void testBake_parallelHooks_waitsForRunsPublishingKeysItReads() {
+        List<Object> read = new ArrayList<>();
+        oven.registerHook(new DeclaredHook<>("EmptyIngredient", EmptyIngredientData.class, null, Collections.singletonList("a"), cake -> {
+            sleep();
+            cake.publish("a", 1);
+        }));
+        oven.registerHook(new DeclaredHook<>("IngredientWithRequired", IngredientWithRequiredData.class, Collections.singletonList("a"), null,
+            cake -> read.add(cake.get("a"))));
+        oven.enableParallelHooks(Executors.newFixedThreadPool(2));
+
+        bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"IngredientWithRequired\":{}}"));
+
+        assertEquals(Collections.singletonList(1), read);
+    }
+
+    @Test
+    public void testBake_parallelHooks_bakesUndeclaredHooksInOrder() {
+        List<String> baked = Collections.synchronizedList(new ArrayList<>());
+        oven.registerHook(new DeclaredHook<>("EmptyIngredient", EmptyIngredientData.class, null, null, cake -> {
+            sleep();
+            baked.add("empty");
+        }));
+        oven.registerHook(new DeclaredHook<>("IngredientWithRequired", IngredientWithRequiredData.class, null, null, cake -> baked.add("required")));
+        oven.enableParallelHooks(Executors.newFixedThreadPool(2));
+
+        bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"IngredientWithRequired\":{}}", "{\"EmptyIngredient\":{}}"));
+
+        assertEquals(Arrays.asList("empty", "required", "empty"), baked);
+    }
+
+    @Test
+    public void testBake_parallelHooks_waitsForRunsBakingBeforeThrowing() {
+        List<String> baked = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch emptyBaking = new CountDownLatch(1);
+        oven.registerHook(new DeclaredHook<>("EmptyIngredient", EmptyIngredientData.class, null, Collections.singletonList("a"), cake -> {
+            emptyBaking.countDown();
+            sleep();
+            baked.add("empty");
+        }));
+        oven.registerHook(new DeclaredHook<>("IngredientWithRequired", IngredientWithRequiredData.class, null, Collections.singletonList("b"), cake -> {
+            try {
+                emptyBaking.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new IllegalStateException("hook failed");
+        }));
+        oven.enableParallelHooks(Executors.newFixedThreadPool(2));
+
+        try {
+            bake(payloadJson("{\"EmptyIngredient\":{}}", "{\"IngredientWithRequired\":{}}"));
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertEquals(Collections.singletonList("empty"), baked);
+        }
+    }
+
+    @Test
+    public void testBake_parallelHooks_bakesRunsInTheirNamespaceAndSegment() {
+        List<String> baked = Collections.synchronizedList(new ArrayList<>());
+        oven.registerHook(new DeclaredHook<>("EmptyIngredient", EmptyIngredientData.class, null, Collections.emptyList(),
+            cake -> baked.add("empty in '" + cake.getNamespace() + "' " + (BakeSegment.current() != null))));
+        oven.registerHook(new DeclaredHook<>("IngredientWithRequired", IngredientWithRequiredData.class, null, Collections.emptyList(),
+            cake -> baked.add("required in '" + cake.getNamespace() + "' " + (BakeSegment.current() != null))));
+        oven.enableParallelHooks(Executors.newFixedThreadPool(2));
+
+        bake(payloadJson(
+            "{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}}",
+            "{\"IngredientWithRequired\":{}}"
+        ));
+
+        assertEquals(2, baked.size());
+        assertTrue(baked.contains("empty in 'foo' true"));
+        assertTrue(baked.contains("required in '' true"));
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_keepsCakeBetweenPayloads() throws Exception {
+        assumeFalse(path.equals("local"));
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        oven.enableSessions(Duration.ofMinutes(1), 10);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("count", cake.get("seen"));
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String first = oven.bake(sessionPayloadJson("{\"seen\":1,\"other\":\"foo\"}", "{\"id\":\"bake\",\"epoch\":0,\"version\":2}"));
+        assertEquals("{\"cakeExchange\":\"SESSION\",\"cake\":{\"count\":1}}", first);
+
+        String second = oven.bake(sessionPayloadJson("{\"seen\":2}", "{\"id\":\"bake\",\"epoch\":3,\"version\":4}"));
+        assertEquals("{\"cakeExchange\":\"SESSION\",\"cake\":{\"count\":2}}", second);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            assertEquals("foo", cake.get("other"));
+            return null;
+        }).when(hook).bake(any(), any());
+        oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":5,\"version\":5}"));
+        verify(hook, times(3)).bake(any(), any());
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_asksForResyncOnEpochMismatch() {
+        assumeFalse(path.equals("local"));
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+        oven.enableSessions(Duration.ofMinutes(1), 10);
+
+        oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":0,\"version\":0}"));
+        String reply = oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":7,\"version\":7}"));
+
+        assertEquals("{\"cakeExchange\":\"SESSION\",\"cake\":{},\"resync\":true}", reply);
+        verify(hook, times(1)).bake(any(), any());
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_asksForResyncOnExpiredSession() {
+        assumeFalse(path.equals("local"));
+        CakeSessionCacheTest.TestClock clock = new CakeSessionCacheTest.TestClock();
+        oven.registerHook(new EmptyIngredientHook());
+        oven.enableSessions(Duration.ofMinutes(1), 10, clock);
+
+        oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":0,\"version\":1}"));
+        clock.advance(Duration.ofMinutes(1));
+        String reply = oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":1,\"version\":1}"));
+
+        assertEquals("{\"cakeExchange\":\"SESSION\",\"cake\":{},\"resync\":true}", reply);
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_closesSession() {
+        assumeFalse(path.equals("local"));
+        oven.registerHook(new EmptyIngredientHook());
+        oven.enableSessions(Duration.ofMinutes(1), 10);
+
+        oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":0,\"version\":1,\"close\":true}"));
+        String reply = oven.bake(sessionPayloadJson("{}", "{\"id\":\"bake\",\"epoch\":1,\"version\":1}"));
+
+        assertEquals("{\"cakeExchange\":\"SESSION\",\"cake\":{},\"resync\":true}", reply);
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_bakesAsDeltaWhenSessionsDisabled() {
+        assumeFalse(path.equals("local"));
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("moo", cake.get("foo"));
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String reply = oven.bake(sessionPayloadJson("{\"foo\":\"bar\"}", "{\"id\":\"bake\",\"epoch\":0,\"version\":1}"));
+        assertEquals("{\"cakeExchange\":\"DELTA\",\"cake\":{\"moo\":\"bar\"}}", reply);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testBake_sessionCakeExchange_throwsOnMissingSession() {
+        assumeFalse(path.equals("local"));
+        oven.registerHook(new EmptyIngredientHook());
+        oven.bake("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{},\"cakeExchange\":\"SESSION\"}");
+    }
+
+    @Test
+    public void testBake_batchPayload_returnsResultOfEachPayload() {
+        assumeFalse(path.equals("local"));
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("moo", cake.get("foo"));
+            return null;
+        }).when(hook).bake(any(), any());
+
+        String reply = oven.bake("{\"payloads\":["
+            + "{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{\"foo\":\"bar\"}},"
+            + "{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{\"foo\":\"baz\"},\"cakeExchange\":\"DELTA\"}"
+            + "]}");
+
+        assertEquals("{\"results\":[{\"foo\":\"bar\",\"moo\":\"bar\"},{\"moo\":\"baz\"}]}", reply);
+    }
+
+    @Test
+    public void testBake_smilePayload_answersInSmile() throws Exception {
+        assumeFalse(path.equals("local"));
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        oven.registerHook(hook);
+
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("moo", "cow");
+            return null;
+        }).when(hook).bake(any(), any());
+
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        byte[] payload = smileMapper.writeValueAsBytes(new ObjectMapper().readTree(
+            "{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{\"foo\":\"bar\"}}"));
+        byte[] cake = oven.bake(payload);
+
+        Map<?,?> entries = smileMapper.readValue(cake, Map.class);
+        assertEquals(2, entries.size());
+        assertEquals("bar", entries.get("foo"));
+        assertEquals("cow", entries.get("moo"));
+    }
+
+    @Test
+    public void testBake_jsonBytesPayload_answersInJson() {
+        assumeFalse(path.equals("local"));
+        oven.registerHook(new EmptyIngredientHook());
+
+        byte[] cake = oven.bake(payloadJson("{\"EmptyIngredient\":{}}").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("{}", new String(cake, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBake_streams_writesResponseWithoutClosingStreams() throws Exception {
+        assumeFalse(path.equals("local"));
+        oven.registerHook(new EmptyIngredientHook());
+        List<Boolean> closed = new ArrayList<>();
+        InputStream payload = new ByteArrayInputStream(payloadJson("{\"EmptyIngredient\":{}}").getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.add(true);
+            }
+        };
+        ByteArrayOutputStream response = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.add(true);
+            }
+        };
+
+        oven.bake(payload, response);
+
+        assertEquals("{}", new String(response.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(closed.isEmpty());
+    }
+
+    // publishes the namespace it bakes in under "bar"
+    private EmptyIngredientHook publishingNamespaceHook() {
+        EmptyIngredientHook hook = spy(EmptyIngredientHook.class);
+        Mockito.doAnswer(invocation -> {
+            Cake cake = invocation.getArgument(1);
+            cake.publish("bar", cake.getNamespace());
+            return null;
+        }).when(hook).bake(any(), any());
+        return hook;
+    }
+
     public static class EmptyIngredientHook extends BaseIngredientHook<EmptyIngredientData> {
         public EmptyIngredientHook() {
             super("EmptyIngredient", EmptyIngredientData.class);
@@ -213,6 +844,78 @@ public class BackendOvenTest {
         }
     }
 
+    // a hook declaring the cake keys it reads and publishes
+    private static class DeclaredHook<T> extends BaseIngredientHook<T> {
+        private final List<String> reads;
+        private final List<String> publishes;
+        private final Consumer<Cake> bake;
+
+        DeclaredHook(String name, Class<T> dataClass, List<String> reads, List<String> publishes, Consumer<Cake> bake) {
+            super(name, dataClass);
+            this.reads = reads;
+            this.publishes = publishes;
+            this.bake = bake;
+        }
+
+        @Override
+        public List<String> getCakeReads() {
+            return reads;
+        }
+
+        @Override
+        public List<String> getCakePublishes() {
+            return publishes;
+        }
+
+        @Override
+        public void bake(T ingredient, Cake cake) {
+            bake.accept(cake);
+        }
+    }
+
+    private static class RecordingSegmentListener implements SegmentListener {
+        private final String name;
+        private final List<String> events;
+
+        RecordingSegmentListener(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void beforeSegment(BakeSegment segment) {
+            events.add(name + " before");
+        }
+
+        @Override
+        public void afterSegment(BakeSegment segment) {
+            events.add(name + " after " + segment.getAttribute("rows"));
+        }
+
+        @Override
+        public void onSegmentFailure(BakeSegment segment, Throwable e) {
+            events.add(name + " failed: " + e.getMessage());
+        }
+    }
+
+    public static class BatchingIngredientHook extends BaseIngredientHook<EmptyIngredientData> {
+        private final List<String> bakes = new ArrayList<>();
+
+        public BatchingIngredientHook() {
+            super("EmptyIngredient", EmptyIngredientData.class);
+        }
+
+        @Override
+        public void bake(EmptyIngredientData ingredient, Cake cake) {
+            bakes.add("bake in '" + cake.getNamespace() + "'");
+        }
+
+        @Override
+        public void bakeBatch(List<EmptyIngredientData> ingredients, Cake cake) {
+            bakes.add("batch of " + ingredients.size() + " in '" + cake.getNamespace() + "'");
+        }
+    }
+
     public static class IngredientWithRequiredHook extends BaseIngredientHook<IngredientWithRequiredData> {
         public IngredientWithRequiredHook() {
             super("IngredientWithRequired", IngredientWithRequiredData.class);
@@ -245,6 +948,110 @@ public class BackendOvenTest {
         }
     }
 
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String bake(String json) {
+        if (path.equals("local")) {
+            return bakeLocal(json);
+        }
+        return oven.bake(path.equals("streaming") ? recipeLast(json) : json);
+    }
+
+    // the payload with a cake and its recipe last, opening with its context, as an oven writes it
+    private String recipeLast(String json) {
+        try {
+            ObjectNode payload = (ObjectNode)MAPPER.readTree(json);
+            if (!payload.has("cake")) {
+                payload.putObject("cake");
+            }
+            if (payload.has("recipe")) {
+                ObjectNode recipe = (ObjectNode)payload.remove("recipe").get("Recipe");
+                ObjectNode orderedRecipe = payload.putObject("recipe").putObject("Recipe");
+                orderedRecipe.set("context", recipe.has("context") ? recipe.remove("context") : NullNode.getInstance());
+                orderedRecipe.setAll(recipe);
+            }
+            return MAPPER.writeValueAsString(payload);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String bakeLocal(String json) {
+        try {
+            JsonNode payload = MAPPER.readTree(json);
+            Recipe recipe = (Recipe)localIngredient(payload.get("recipe"));
+            Cake cake = oven.createCake();
+            if (payload.has("cake")) {
+                cake.mergeEntries(MAPPER.convertValue(payload.get("cake"), Map.class));
+            }
+
+            if (payload.has("cakeExchange") && payload.get("cakeExchange").asText().equals("DELTA")) {
+                cake.trackChanges();
+                long version = cake.getVersion();
+                oven.bakeLocal(recipe, cake);
+                return MAPPER.writeValueAsString(cake.getEntriesChangedSince(version));
+            }
+            oven.bakeLocal(recipe, cake);
+            return MAPPER.writeValueAsString(cake);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Ingredient localIngredient(JsonNode json) {
+        String type = json.fieldNames().next();
+        JsonNode properties = json.get(type);
+        if (type.equals("Recipe")) {
+            List<Ingredient> ingredients = new ArrayList<>();
+            properties.get("ingredients").forEach(ingredient -> ingredients.add(localIngredient(ingredient)));
+            Ingredient[] ingredientArray = ingredients.toArray(new Ingredient[0]);
+            if (properties.has("contextIngredient")) {
+                return Recipe.context((KeyedIngredient)localIngredient(properties.get("contextIngredient")), ingredientArray);
+            }
+            return properties.has("context") ? Recipe.context(properties.get("context").asText(), ingredientArray) : Recipe.prepare(ingredientArray);
+        }
+
+        KeyedIngredient ingredient = ingredientOfType(type);
+        Iterator<Map.Entry<String,JsonNode>> fields = properties.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String,JsonNode> field = fields.next();
+            if (field.getKey().equals("key")) {
+                ingredient.setKey(field.getValue().asText());
+            }
+            else {
+                ingredient.setRequired(field.getKey(), MAPPER.convertValue(field.getValue(), Object.class));
+            }
+        }
+        return ingredient;
+    }
+
+    // an oven serializes each ingredient class with one type name, so each type needs its own class
+    private static KeyedIngredient ingredientOfType(String type) {
+        switch (type) {
+            case "EmptyIngredient":
+                return new KeyedIngredient(type, "A") {};
+            case "IngredientWithRequired":
+                return new KeyedIngredient(type, "A") {};
+            case "KeyedIngredient":
+                return new KeyedIngredient(type, "A") {};
+            default:
+                return new KeyedIngredient(type, "A") {};
+        }
+    }
+
+    private String sessionPayloadJson(String cake, String session) {
+        return "{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":" + cake + ",\"cakeExchange\":\"SESSION\",\"session\":" + session + "}";
+    }
+
     private String payloadJson(String... ingredientJson) {
         return "{\"recipe\":{\"Recipe\":{\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}}}";
     }
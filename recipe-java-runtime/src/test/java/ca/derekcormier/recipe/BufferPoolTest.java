@@ -0,0 +1,48 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class BufferPoolTest {
+    private final BufferPool pool = new BufferPool();
+
+    @Test
+    public void testAcquire_reusesReleasedBufferEmptied() throws Exception {
+        BufferPool.Buffer buffer = pool.acquire();
+        buffer.write("payload".getBytes(StandardCharsets.UTF_8));
+        pool.release(buffer);
+
+        BufferPool.Buffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testRelease_dropsOversizedBuffer() throws Exception {
+        BufferPool.Buffer buffer = pool.acquire();
+        buffer.write(new byte[9 * 1024 * 1024]);
+        pool.release(buffer);
+
+        assertEquals(0, pool.size());
+        assertNotSame(buffer, pool.acquire());
+    }
+
+    @Test
+    public void testToInputStream_readsWrittenBytes() throws Exception {
+        BufferPool.Buffer buffer = pool.acquire();
+        buffer.write("payload".getBytes(StandardCharsets.UTF_8));
+
+        InputStream in = buffer.toInputStream();
+        byte[] bytes = new byte[in.available()];
+        assertEquals(7, in.read(bytes));
+        assertEquals(-1, in.read());
+        assertEquals("payload", new String(bytes, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,53 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class CakeKeyTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void testOf_throwsOnNoInputs() {
+        CakeKey.of();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOf_throwsOnNullSubkey() {
+        CakeKey.of("foo", null);
+    }
+
+    @Test
+    public void testOf_splitsSubkeysContainingSeparator() {
+        CakeKey key = CakeKey.of("a" + Cake.SEPARATOR + "b", "c");
+
+        assertEquals(3, key.size());
+        assertEquals("a", key.getSubKey(0));
+        assertEquals("c", key.getSubKey(2));
+        assertEquals(Cake.key("a", "b", "c"), key.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParse_throwsOnEmptyStringSubkey() {
+        CakeKey.parse("a" + Cake.SEPARATOR);
+    }
+
+    @Test
+    public void testParse_equalsKeyBuiltFromSubkeys() {
+        assertEquals(CakeKey.of("a", "b"), CakeKey.parse(Cake.key("a", "b")));
+        assertEquals(CakeKey.of("a", "b").hashCode(), CakeKey.parse(Cake.key("a", "b")).hashCode());
+        assertNotEquals(CakeKey.of("a", "b"), CakeKey.of("b", "a"));
+    }
+
+    @Test
+    public void testTryOf_returnsNullForInvalidKeys() {
+        assertNull(CakeKey.tryOf());
+        assertNull(CakeKey.tryOf((String)null));
+        assertNull(CakeKey.tryOf("a", " "));
+    }
+
+    @Test
+    public void testTryOf_equalsKeyFromOf() {
+        assertEquals(CakeKey.of("a.b", "c"), CakeKey.tryOf("a.b", "c"));
+    }
+}
@@ -0,0 +1,105 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+public class CakeSessionCacheTest {
+    private TestClock clock;
+    private CakeSessionCache sessions;
+
+    @Before
+    public void before() {
+        clock = new TestClock();
+        sessions = new CakeSessionCache(Duration.ofSeconds(10), 2, clock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_throwsOnNonPositiveTtl() {
+        new CakeSessionCache(Duration.ZERO, 2, clock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_throwsOnNoSessionsAllowed() {
+        new CakeSessionCache(Duration.ofSeconds(10), 0, clock);
+    }
+
+    @Test
+    public void testGet_returnsPutSession() {
+        CakeSessionCache.Session session = new CakeSessionCache.Session(new Cake());
+        sessions.put("a", session);
+        assertSame(session, sessions.get("a"));
+    }
+
+    @Test
+    public void testGet_returnsNullForUnknownSession() {
+        assertNull(sessions.get("a"));
+    }
+
+    @Test
+    public void testGet_evictsSessionUnusedForTtl() {
+        sessions.put("a", new CakeSessionCache.Session(new Cake()));
+        clock.advance(Duration.ofSeconds(10));
+        assertNull(sessions.get("a"));
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void testGet_refreshesSessionTtl() {
+        sessions.put("a", new CakeSessionCache.Session(new Cake()));
+        clock.advance(Duration.ofSeconds(6));
+        sessions.get("a");
+        clock.advance(Duration.ofSeconds(6));
+        assertEquals(1, sessions.size());
+    }
+
+    @Test
+    public void testPut_evictsLeastRecentlyUsedSessionWhenFull() {
+        sessions.put("a", new CakeSessionCache.Session(new Cake()));
+        sessions.put("b", new CakeSessionCache.Session(new Cake()));
+        sessions.get("a");
+        sessions.put("c", new CakeSessionCache.Session(new Cake()));
+
+        assertEquals(2, sessions.size());
+        assertNull(sessions.get("b"));
+    }
+
+    @Test
+    public void testRemove_removesSession() {
+        sessions.put("a", new CakeSessionCache.Session(new Cake()));
+        sessions.remove("a");
+        assertNull(sessions.get("a"));
+    }
+
+    static class TestClock extends Clock {
+        private Instant instant = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -2,11 +2,22 @@ package ca.derekcormier.recipe;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
 public class CakeTest {
     private Cake cake;
 
@@ -215,6 +226,76 @@ public class CakeTest {
         cake.get("key");
     }
 
+    @Test(expected = RuntimeException.class)
+    public void testGet_throwsOnAmbiguousPartialKey_differentDepths() {
+        cake.inNamespace("a", () -> {
+            cake.publish("key", "foo");
+        });
+        cake.inNamespace("b", () -> {
+            cake.publish(Cake.key("c", "key"), "bar");
+        });
+        cake.get("key");
+    }
+
+    @Test
+    public void testGet_findsMultiSegmentPartialKey_fromUnrelatedNamespace() {
+        cake.inNamespace("a", () -> {
+            cake.publish(Cake.key("b", "key"), "foo");
+            cake.publish(Cake.key("c", "key"), "bar");
+        });
+        cake.inNamespace("d", () -> {
+            assertEquals("foo", cake.get("b", "key"));
+            assertEquals("bar", cake.get("c" + Cake.SEPARATOR + "key"));
+        });
+    }
+
+    @Test
+    public void testGet_republishedKeyIsNotAmbiguous() {
+        cake.inNamespace("a", () -> {
+            cake.publish("key", "foo");
+            cake.publish("key", "bar");
+        });
+        assertEquals("bar", cake.get("key"));
+    }
+
+    @Test
+    public void testGet_findsPartialKeyAfterSetEntries() {
+        cake.publish(Cake.key("a", "key"), "foo");
+        cake.publish(Cake.key("b", "key"), "bar");
+
+        Map<String,Object> entries = new HashMap<>();
+        entries.put(Cake.key("c", "key"), "baz");
+        cake.setEntries(entries);
+
+        assertEquals("baz", cake.get("key"));
+    }
+
+    @Test
+    public void testResolve_getsValueForPrebuiltKey() {
+        CakeKey key = CakeKey.of("b", "key");
+        cake.inNamespace("a", () -> {
+            cake.publishAt(key, "foo");
+        });
+
+        assertEquals("foo", cake.resolve(key));
+        cake.inNamespace(CakeKey.of("a", "b"), () -> {
+            assertEquals("foo", cake.resolve(CakeKey.of("key")));
+        });
+    }
+
+    @Test
+    public void testResolve_prefersKeyInCurrentNamespace() {
+        CakeKey key = CakeKey.of("key");
+        cake.publishAt(key, "foo");
+        cake.inNamespace(CakeKey.of("a", "b"), () -> {
+            cake.publishAt(key, "bar");
+            assertEquals(Cake.key("a", "b"), cake.getNamespace());
+            assertEquals("bar", cake.resolve(key));
+        });
+        assertEquals("", cake.getNamespace());
+        assertEquals("foo", cake.resolve(key));
+    }
+
     @Test(expected = RuntimeException.class)
     public void testGetPublishedKeyForValue_throwsOnNonExistentValue() {
         cake.getPublishedKeyForValue("foo", false);
@@ -259,6 +340,137 @@ public class CakeTest {
         assertEquals("foo", cake.getPublishedKeyForValue("5", false));
     }
 
+    @Test
+    public void testGetPublishedKeyForValue_valueIndex_getsKeyInNamespace() {
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        cake.inNamespace("a", () -> {
+            cake.publish("key", "value");
+        });
+
+        assertEquals("key", cake.getPublishedKeyForValue("value", false));
+        assertEquals(Cake.key("a", "key"), cake.getPublishedKeyForValue("value", true));
+    }
+
+    @Test
+    public void testGetPublishedKeyForValue_valueIndex_indexesExistingEntries() {
+        cake.publish("key", "value");
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+
+        assertEquals("key", cake.getPublishedKeyForValue("value", false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPublishedKeyForValue_valueIndex_throwsOnAmbiguousKey() {
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        cake.publish("foo", "value");
+        cake.publish("bar", "value");
+        cake.getPublishedKeyForValue("value", false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetPublishedKeyForValue_valueIndex_throwsOnOverwrittenValue() {
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        cake.publish("foo", "value");
+        cake.publish("foo", "other");
+        cake.getPublishedKeyForValue("value", false);
+    }
+
+    @Test
+    public void testGetPublishedKeyForValue_valueIndex_tracksSetEntries() {
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        cake.publish("foo", "value");
+
+        Map<String,Object> entries = new HashMap<>();
+        entries.put("bar", "value");
+        cake.setEntries(entries);
+
+        assertEquals("bar", cake.getPublishedKeyForValue("value", false));
+    }
+
+    @Test
+    public void testGetPublishedKeyForValue_identityIndex_matchesSameInstanceOnly() {
+        cake.indexValues(Cake.ValueIndex.IDENTITY);
+        String value1 = new String("value");
+        String value2 = new String("value");
+        cake.publish("foo", value1);
+        cake.publish("bar", value2);
+
+        assertEquals("foo", cake.getPublishedKeyForValue(value1, false));
+        assertEquals("bar", cake.getPublishedKeyForValue(value2, false));
+    }
+
+    @Test
+    public void testGetPublishedKeyForValue_identityIndex_matchesNumberReadFromCake() {
+        cake.publish("before", 654321L);
+        cake.indexValues(Cake.ValueIndex.IDENTITY);
+        cake.publish("id", 123456L);
+
+        assertEquals("id", cake.getPublishedKeyForValue(cake.get("id"), false));
+        assertEquals("before", cake.getPublishedKeyForValue(cake.get("before"), false));
+    }
+
+    @Test
+    public void testFork_copiesEntriesIndependently() {
+        cake.inNamespace("a", () -> {
+            cake.publish("key", "foo");
+            Cake forked = cake.fork();
+            forked.publish("other", "bar");
+            cake.publish("key", "baz");
+
+            assertEquals("", forked.getNamespace());
+            assertEquals("foo", forked.get("a", "key"));
+            assertEquals("bar", forked.get("other"));
+        });
+
+        assertEquals("baz", cake.get("a", "key"));
+        assertEquals(1, cake.getEntries().size());
+    }
+
+    @Test
+    public void testFork_persistentCakeSharesEntriesUntilWritten() {
+        Cake persistent = Cake.persistent();
+        for (int i = 0; i < 100; i++) {
+            persistent.publish(Cake.key("ns" + i, "key"), i);
+        }
+
+        Cake forked = persistent.fork();
+        forked.publish(Cake.key("ns0", "key"), "changed");
+        forked.publish(Cake.key("ns100", "key"), 100);
+        persistent.publish(Cake.key("ns1", "key"), "changed");
+
+        assertEquals(0, (int)persistent.get("ns0", "key"));
+        assertEquals("changed", persistent.get("ns1", "key"));
+        assertEquals(100, persistent.getEntries().size());
+        assertEquals("changed", forked.get("ns0", "key"));
+        assertEquals(1, (int)forked.get("ns1", "key"));
+        assertEquals(100, (int)forked.get("ns100", "key"));
+        assertEquals(101, forked.getEntries().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFork_persistentCakeDetectsAmbiguousKey() {
+        Cake persistent = Cake.persistent();
+        persistent.publish(Cake.key("a", "key"), "foo");
+
+        Cake forked = persistent.fork();
+        forked.publish(Cake.key("b", "key"), "bar");
+
+        assertEquals("foo", persistent.get("key"));
+        forked.get("key");
+    }
+
+    @Test
+    public void testFork_keepsValueIndex() {
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        cake.publish("key", "value");
+
+        Cake forked = cake.fork();
+        forked.publish("other", "other value");
+
+        assertEquals("other", forked.getPublishedKeyForValue("other value", false));
+        assertEquals("key", forked.getPublishedKeyForValue("value", false));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testGetContext_throwsInRootNamespace() {
         cake.getContext();
@@ -290,6 +502,26 @@ public class CakeTest {
         });
     }
 
+    @Test
+    public void testTryGetContext_returnsNullAtRootNamespace() {
+        assertNull(cake.tryGetContext());
+    }
+
+    @Test
+    public void testTryGetContext_returnsNullWhenNoValueForNamespaceKey() {
+        cake.inNamespace("foo", () -> {
+            assertNull(cake.tryGetContext());
+        });
+    }
+
+    @Test
+    public void testTryGetContext_returnsValueForNamespaceKey() {
+        cake.publish("foo", "bar");
+        cake.inNamespace("foo", () -> {
+            assertEquals("bar", cake.tryGetContext());
+        });
+    }
+
     @Test
     public void testHasContext_returnsFalseAtRootNamespace() {
         assertFalse(cake.hasContext());
@@ -310,6 +542,15 @@ public class CakeTest {
         });
     }
 
+    @Test
+    public void testGetOrGetContext_typedFallsBackToContextWhenValueHasOtherType() {
+        cake.publish("foo", "bar");
+        cake.inNamespace("foo", () -> {
+            cake.publish("moo", 5);
+            assertEquals("bar", cake.getOrGetContext(String.class, "moo"));
+        });
+    }
+
     @Test
     public void testGetOrGetContext_emptyInputGetsContext() {
         cake.publish("foo", "bar");
@@ -322,7 +563,7 @@ public class CakeTest {
     public void testGetOrGetContext_nullInputGetsContext() {
         cake.publish("foo", "bar");
         cake.inNamespace("foo", () -> {
-            assertEquals("bar", cake.getOrGetContext(null));
+            assertEquals("bar", cake.getOrGetContext((String)null));
         });
     }
 
@@ -350,4 +591,271 @@ public class CakeTest {
             });
         });
     }
+
+    @Test
+    public void testGetEntriesChangedSince_returnsEntriesWrittenAfterVersion() {
+        cake.publish("foo", "bar");
+        cake.trackChanges();
+        long version = cake.getVersion();
+        cake.publish("moo", "cow");
+        cake.inNamespace("ns", () -> cake.publish("foo", "baz"));
+        cake.publish("moo", "calf");
+
+        Map<String,Object> expected = new HashMap<>();
+        expected.put("moo", "calf");
+        expected.put("ns.foo", "baz");
+        assertEquals(expected, cake.getEntriesChangedSince(version));
+        assertEquals(version + 3, cake.getVersion());
+        assertTrue(cake.getEntriesChangedSince(cake.getVersion()).isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetEntriesChangedSince_throwsWhenNotTrackingChanges() {
+        cake.getEntriesChangedSince(0);
+    }
+
+    @Test
+    public void testTryGet_returnsValue() {
+        cake.publish("foo", "bar");
+        assertEquals("bar", cake.tryGet("foo"));
+    }
+
+    @Test
+    public void testTryGet_searchesLikeGet() {
+        cake.inNamespace("a", () -> cake.publish("key", "value"));
+        cake.inNamespace("b", () -> {
+            assertEquals("value", cake.tryGet("key"));
+            assertEquals("value", cake.tryGet("a", "key"));
+        });
+    }
+
+    @Test
+    public void testTryGet_returnsNullForMissingKey() {
+        assertNull(cake.tryGet("foo"));
+    }
+
+    @Test
+    public void testTryGet_returnsNullForAmbiguousKey() {
+        cake.inNamespace("a", () -> cake.publish("key", "value1"));
+        cake.inNamespace("b", () -> cake.publish("key", "value2"));
+        assertNull(cake.tryGet("key"));
+    }
+
+    @Test
+    public void testTryGet_returnsNullForInvalidKey() {
+        assertNull(cake.tryGet());
+        assertNull(cake.tryGet((String)null));
+        assertNull(cake.tryGet(" "));
+    }
+
+    @Test
+    public void testTryResolve_returnsValue() {
+        cake.publish("foo.bar", "baz");
+        assertEquals("baz", cake.tryResolve(CakeKey.of("bar")));
+        assertNull(cake.tryResolve(CakeKey.of("baz")));
+    }
+
+    @Test
+    public void testFind_returnsValue() {
+        cake.publish("foo", "bar");
+        assertEquals(Optional.of("bar"), cake.find("foo"));
+        assertEquals(Optional.of("bar"), cake.find(String.class, "foo"));
+    }
+
+    @Test
+    public void testFind_returnsEmptyForMissingKeyOrNullValue() {
+        cake.publish("foo", null);
+        assertFalse(cake.find("foo").isPresent());
+        assertFalse(cake.find("moo").isPresent());
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testFind_throwsOnWrongType() {
+        cake.publish("foo", "bar");
+        cake.find(Integer.class, "foo");
+    }
+
+    @Test
+    public void testContainsResolvable() {
+        cake.publish("foo", null);
+        cake.inNamespace("a", () -> cake.publish("key", "value1"));
+        cake.inNamespace("b", () -> cake.publish("key", "value2"));
+
+        assertTrue(cake.containsResolvable("foo"));
+        assertTrue(cake.containsResolvable("a.key"));
+        assertFalse(cake.containsResolvable("key"));
+        assertFalse(cake.containsResolvable("moo"));
+        assertFalse(cake.containsResolvable((String)null));
+    }
+
+    @Test
+    public void testPublishLong_getReturnsLong() {
+        cake.publishLong("foo", 5000000000L);
+        cake.publishInt("bar", 7);
+        cake.publishDouble("baz", 1.5);
+
+        assertEquals(Long.valueOf(5000000000L), cake.get("foo"));
+        assertEquals(Integer.valueOf(7), cake.get("bar"));
+        assertEquals(Double.valueOf(1.5), cake.get("baz"));
+    }
+
+    @Test
+    public void testGetLong_resolvesLikeGet() {
+        cake.inNamespace("a", () -> cake.publishLong("id", 42));
+        cake.inNamespace("b", () -> {
+            assertEquals(42L, cake.getLong("id"));
+            assertEquals(42, cake.getInt("a.id"));
+            assertEquals(42.0, cake.getDouble("a", "id"), 0);
+        });
+    }
+
+    @Test
+    public void testPublishLongAt_publishesInNestedNamespace() {
+        CakeKey key = CakeKey.parse("x.id");
+        cake.inNamespace("a.b", () -> cake.publishLongAt(key, 7));
+        assertEquals(7L, cake.resolveLong(CakeKey.of("b", "x", "id")));
+        assertEquals(7L, (long)cake.get("a.b.x.id"));
+    }
+
+    @Test
+    public void testGetLong_convertsBoxedNumbers() {
+        cake.publish("foo", 3);
+        cake.publish("bar", 2.5f);
+        assertEquals(3L, cake.getLong("foo"));
+        assertEquals(2, cake.getInt("bar"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testGetLong_throwsOnMissingKey() {
+        cake.getLong("foo");
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testGetLong_throwsOnNonNumber() {
+        cake.publish("foo", "bar");
+        cake.getLong("foo");
+    }
+
+    @Test
+    public void testPublishLong_worksInPersistentCake() {
+        Cake persistent = Cake.persistent();
+        persistent.publishLong("foo", 5);
+        assertEquals(Long.valueOf(5), persistent.get("foo"));
+        assertEquals(5, persistent.getInt("foo"));
+    }
+
+    @Test
+    public void testPublishLong_indexesValue() {
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        cake.publishLong("foo", 5);
+        assertEquals("foo", cake.getPublishedKeyForValue(5L, true));
+    }
+
+    @Test
+    public void testJson_roundTripsNumbersWithTheirTypes() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        cake.publishInt("int", 1);
+        cake.publishLong("long", 5000000000L);
+        cake.publishDouble("double", 0.5);
+        cake.publish("boxedLong", 2L);
+        cake.publish("string", "foo");
+        cake.publish("null", null);
+        cake.publish("list", Arrays.asList(1, "a"));
+
+        String json = objectMapper.writeValueAsString(cake);
+        assertEquals("{\"int\":1,\"long\":5000000000,\"double\":0.5,\"boxedLong\":2,\"string\":\"foo\",\"null\":null,\"list\":[1,\"a\"]}", json);
+
+        Cake read = objectMapper.readValue(json, Cake.class);
+        assertEquals(Integer.valueOf(1), read.get("int"));
+        assertEquals(Long.valueOf(5000000000L), read.get("long"));
+        assertEquals(Double.valueOf(0.5), read.get("double"));
+        assertEquals(Integer.valueOf(2), read.get("boxedLong"));
+        assertEquals("foo", read.get("string"));
+        assertNull(read.get("null"));
+        assertEquals(Arrays.asList(1, "a"), read.get("list"));
+        assertEquals(new BigInteger("123456789012345678901234567890"), objectMapper.readValue("{\"big\":123456789012345678901234567890}", Cake.class).get("big"));
+    }
+
+    @Test
+    public void testJson_lazyValuesAreParsedOnRead() throws Exception {
+        Cake cake = readLazily("{\"ns.user\":{\"name\":\"bob\"},\"ids\":[1,2],\"foo\":\"bar\"}");
+
+        assertEquals(Arrays.asList(1, 2), cake.get("ids"));
+        assertEquals("bar", cake.get("foo"));
+        cake.inNamespace("ns.user", () -> assertEquals("bob", cake.<Map<String,Object>>getContext().get("name")));
+    }
+
+    @Test
+    public void testJson_lazyValuesAreReadAsRequestedClass() throws Exception {
+        Cake cake = readLazily("{\"user\":{\"name\":\"bob\"}}");
+
+        assertEquals("bob", cake.get(User.class, "user").name);
+        assertEquals("bob", cake.find(User.class, "user").get().name);
+        cake.inNamespace("user", () -> assertEquals("bob", cake.getContext(User.class).name));
+    }
+
+    @Test
+    public void testJson_lazyValuesAreWrittenAsRead() throws Exception {
+        String json = "{\"a\":{\"b\":[true,null,{\"c\":1.5}]},\"d\":2}";
+        Cake cake = readLazily(json);
+        assertEquals(json, new ObjectMapper().writeValueAsString(cake));
+    }
+
+    @Test
+    public void testJson_lazyValuesMatchValuesByEquality() throws Exception {
+        Cake cake = readLazily("{\"ids\":[1,2]}");
+        assertEquals("ids", cake.getPublishedKeyForValue(Arrays.asList(1, 2), false));
+    }
+
+    @Test
+    public void testJson_lazyValueDoesNotReplaceValuePublishedWhileItIsParsed() {
+        ObjectMapper objectMapper = new ObjectMapper() {
+            @Override
+            public <T> T readValue(JsonParser parser, Class<T> clazz) throws IOException {
+                cake.publish("foo", "baz");
+                return super.readValue(parser, clazz);
+            }
+        };
+        cake.putEntry("foo", new LazyValue("\"bar\"", objectMapper));
+
+        assertEquals("bar", cake.get("foo"));
+        assertEquals("baz", cake.get("foo"));
+    }
+
+    @Test
+    public void testJson_lazyValuesEqualLazyValuesParsingToSameValue() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        LazyValue value = new LazyValue("[1,2]", objectMapper);
+
+        assertEquals(value, new LazyValue("[1,2]", objectMapper));
+        assertEquals(value, new LazyValue("[1, 2]", objectMapper));
+        assertEquals(value, Arrays.asList(1, 2));
+        assertEquals(new LazyValue("[1, 2]", objectMapper).hashCode(), value.hashCode());
+        assertFalse(value.equals(new LazyValue("[2,1]", objectMapper)));
+    }
+
+    @Test
+    public void testJson_lazyValuesAreParsedForValueIndex() throws Exception {
+        Cake cake = readLazily("{\"ids\":[1,2]}");
+        cake.indexValues(Cake.ValueIndex.EQUALITY);
+        assertEquals("ids", cake.getPublishedKeyForValue(Arrays.asList(1, 2), false));
+    }
+
+    @Test
+    public void testJson_readsIntoExistingCake() throws Exception {
+        cake.publish("foo", "bar");
+        new ObjectMapper().readerForUpdating(cake).readValue("{\"moo\":1,\"ns.id\":2}");
+
+        assertEquals("bar", cake.get("foo"));
+        assertEquals(1, cake.getInt("moo"));
+        assertEquals(2L, cake.getLong("id"));
+    }
+
+    private Cake readLazily(String json) throws Exception {
+        return new ObjectMapper().readerFor(Cake.class).withAttribute(CakeDeserializer.LAZY_SOURCE, json).readValue(json);
+    }
+
+    public static class User {
+        public String name;
+    }
 }
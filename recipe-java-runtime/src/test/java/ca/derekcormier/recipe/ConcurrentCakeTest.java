@@ -0,0 +1,128 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentCakeTest {
+    private ConcurrentCake cake;
+
+    @Before
+    public void before() {
+        cake = new ConcurrentCake();
+    }
+
+    @Test
+    public void testPublish_publishesFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String thread = "thread" + t;
+                futures.add(executor.submit(() -> cake.inNamespace(thread, () -> {
+                    for (int i = 0; i < 500; i++) {
+                        cake.publish("key" + i, i);
+                    }
+                })));
+            }
+            for (Future<?> future: futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(8 * 500, cake.getEntries().size());
+        assertEquals(499, (int)cake.get("thread7", "key499"));
+        assertEquals("", cake.getNamespace());
+    }
+
+    @Test
+    public void testInNamespace_namespacesOnDifferentThreadsDoNotInterfere() throws Exception {
+        CountDownLatch bothInNamespace = new CountDownLatch(2);
+        List<String> namespaces = new ArrayList<>();
+
+        Runnable task1 = () -> cake.inNamespace("a", () -> {
+            awaitQuietly(bothInNamespace);
+            cake.publish("key", "foo");
+            synchronized (namespaces) {
+                namespaces.add(cake.getNamespace());
+            }
+        });
+        Runnable task2 = () -> cake.inNamespace("b", () -> {
+            awaitQuietly(bothInNamespace);
+            cake.publish("key", "bar");
+            synchronized (namespaces) {
+                namespaces.add(cake.getNamespace());
+            }
+        });
+
+        Thread thread1 = new Thread(task1);
+        Thread thread2 = new Thread(task2);
+        thread1.start();
+        thread2.start();
+        thread1.join(10000);
+        thread2.join(10000);
+
+        assertTrue(namespaces.contains("a"));
+        assertTrue(namespaces.contains("b"));
+        assertEquals("foo", cake.get("a", "key"));
+        assertEquals("bar", cake.get("b", "key"));
+    }
+
+    @Test
+    public void testBindNamespace_runsTaskInCallersNamespace() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        cake.inNamespace("a", () -> {
+            tasks.add(cake.bindNamespace(() -> cake.publish("key", "foo")));
+        });
+
+        Thread thread = new Thread(tasks.get(0));
+        thread.start();
+        thread.join(10000);
+
+        assertEquals("foo", cake.get(Cake.key("a", "key")));
+    }
+
+    @Test
+    public void testPublish_acceptsNullValue() {
+        cake.publish("key", null);
+        cake.inNamespace("key", () -> {
+            assertTrue(cake.hasContext());
+        });
+        assertNull(cake.get("key"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testGet_throwsOnAmbiguousPartialKey() {
+        cake.inNamespace("a", () -> {
+            cake.publish("key", "foo");
+        });
+        cake.inNamespace("b", () -> {
+            cake.publish("key", "foo");
+        });
+        cake.get("key");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
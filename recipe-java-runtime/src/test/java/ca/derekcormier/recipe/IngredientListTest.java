@@ -0,0 +1,200 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class IngredientListTest {
+    @Test
+    public void testAdd_keepsOrder() {
+        IngredientList list = new IngredientList();
+        List<Ingredient> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Ingredient ingredient = ingredient(i);
+            list.add(ingredient);
+            expected.add(ingredient);
+        }
+
+        assertEquals(expected, list);
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), list.get(i));
+        }
+    }
+
+    @Test
+    public void testAdd_toListWithNoCapacity() {
+        IngredientList list = new IngredientList(0);
+        list.add(ingredient(1));
+        list.add(ingredient(2));
+
+        assertEquals(Arrays.asList(ingredient(1), ingredient(2)), list);
+    }
+
+    @Test
+    public void testAddAll_laterChangesToEitherListDoNotShowInTheOther() {
+        IngredientList list1 = new IngredientList();
+        list1.add(ingredient(1));
+        list1.add(ingredient(2));
+        IngredientList list2 = new IngredientList();
+        list2.add(ingredient(3));
+
+        list2.addAll(list1);
+        list1.add(ingredient(4));
+        list1.set(0, ingredient(5));
+        list2.add(ingredient(6));
+
+        assertEquals(Arrays.asList(ingredient(5), ingredient(2), ingredient(4)), list1);
+        assertEquals(Arrays.asList(ingredient(3), ingredient(1), ingredient(2), ingredient(6)), list2);
+    }
+
+    @Test
+    public void testAddAll_listToItself() {
+        IngredientList list = new IngredientList();
+        list.add(ingredient(1));
+        list.add(ingredient(2));
+
+        list.addAll(list);
+
+        assertEquals(Arrays.asList(ingredient(1), ingredient(2), ingredient(1), ingredient(2)), list);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable_cannotBeModified() {
+        IngredientList list = new IngredientList();
+        list.add(ingredient(1));
+        list.unmodifiable().add(ingredient(2));
+    }
+
+    @Test
+    public void testUnmodifiable_doesNotShowLaterChanges() {
+        IngredientList list = new IngredientList();
+        list.add(ingredient(1));
+        List<Ingredient> unmodifiable = list.unmodifiable();
+        list.add(ingredient(2));
+
+        assertEquals(Arrays.asList(ingredient(1)), unmodifiable);
+    }
+
+    @Test
+    public void testIterator_notAffectedBySharingList() {
+        IngredientList list = new IngredientList();
+        list.add(ingredient(1));
+        list.add(ingredient(2));
+
+        List<Ingredient> iterated = new ArrayList<>();
+        for (Ingredient ingredient: list) {
+            iterated.add(ingredient);
+            // moves the list's tail into its tree
+            new IngredientList().addAll(list);
+        }
+
+        assertEquals(Arrays.asList(ingredient(1), ingredient(2)), iterated);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIterator_failsIfListIsModified() {
+        IngredientList list = new IngredientList();
+        list.add(ingredient(1));
+        list.add(ingredient(2));
+
+        Iterator<Ingredient> iterator = list.iterator();
+        iterator.next();
+        list.add(ingredient(3));
+        iterator.next();
+    }
+
+    @Test
+    public void testRandomOperations_sameAsArrayList() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            IngredientList list = new IngredientList();
+            List<Ingredient> expected = new ArrayList<>();
+            List<IngredientList> others = new ArrayList<>();
+            List<List<Ingredient>> othersExpected = new ArrayList<>();
+
+            for (int op = 0; op < 200; op++) {
+                int index = expected.isEmpty() ? 0 : random.nextInt(expected.size());
+                Ingredient ingredient = ingredient(random.nextInt(1000));
+                switch (random.nextInt(7)) {
+                    case 0:
+                        list.add(ingredient);
+                        expected.add(ingredient);
+                        break;
+                    case 1:
+                        list.add(index, ingredient);
+                        expected.add(index, ingredient);
+                        break;
+                    case 2:
+                        if (!expected.isEmpty()) {
+                            assertSame(expected.remove(index), list.remove(index));
+                        }
+                        break;
+                    case 3:
+                        if (!expected.isEmpty()) {
+                            assertSame(expected.set(index, ingredient), list.set(index, ingredient));
+                        }
+                        break;
+                    case 4:
+                        if (!others.isEmpty()) {
+                            int other = random.nextInt(others.size());
+                            list.addAll(others.get(other));
+                            expected.addAll(othersExpected.get(other));
+                        }
+                        break;
+                    case 5:
+                        List<Ingredient> plain = new ArrayList<>();
+                        for (int i = random.nextInt(100); i > 0; i--) {
+                            plain.add(ingredient(i));
+                        }
+                        list.addAll(plain);
+                        expected.addAll(plain);
+                        break;
+                    default:
+                        IngredientList copy = new IngredientList();
+                        copy.addAll(list);
+                        others.add(copy);
+                        othersExpected.add(new ArrayList<>(expected));
+                        break;
+                }
+                assertEquals(expected.size(), list.size());
+            }
+
+            assertEquals(expected, list);
+            assertEquals(expected, new ArrayList<>(list));
+            for (int i = 0; i < others.size(); i++) {
+                assertEquals(othersExpected.get(i), others.get(i));
+            }
+        }
+    }
+
+    private static Ingredient ingredient(int i) {
+        return new TestIngredient(i);
+    }
+
+    private static class TestIngredient extends Ingredient {
+        private final int id;
+
+        TestIngredient(int id) {
+            super("TestIngredient", "A");
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TestIngredient && ((TestIngredient)other).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package ca.derekcormier.recipe;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -9,9 +14,34 @@ import static org.mockito.Mockito.when;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
 public class OvenTest {
     private Oven oven;
 
@@ -114,6 +144,543 @@ public class OvenTest {
         orderVerifier.verify(spyA).dispatch(anyString());
     }
 
+    @Test
+    public void testBake_bakesFrozenPlanRepeatedly() {
+        Dispatcher spyA = setupDispatcherSpy("A");
+        Dispatcher spyB = setupDispatcherSpy("B");
+
+        BakePlan plan = Recipe.prepare(
+            new Ingredient("TestIngredient1", "A") {},
+            new Ingredient("TestIngredient2", "B") {}
+        ).freeze();
+        oven.bake(plan);
+        oven.bake(plan);
+
+        verify(spyA, times(2)).dispatch(payloadJsonWithCake("{}", "{\"TestIngredient1\":{}}"));
+        verify(spyB, times(2)).dispatch(payloadJsonWithCake("{}", "{\"TestIngredient2\":{}}"));
+    }
+
+    @Test
+    public void testBake_segmentOptimizerMergesSegmentsOfIndependentIngredients() {
+        Dispatcher spyA = setupDispatcherSpy("A");
+        Dispatcher spyB = setupDispatcherSpy("B");
+        oven.enableSegmentOptimizer();
+
+        Recipe recipe = Recipe.prepare(
+            new IndependentIngredient("A"),
+            new IndependentIngredient("B"),
+            new IndependentIngredient("A")
+        );
+        assertEquals(1, oven.plan(recipe).getRoundTripsSaved());
+        oven.bake(recipe);
+
+        verify(spyA).dispatch(payloadJsonWithCake("{}", "{\"Independent\":{}}", "{\"Independent\":{}}"));
+        verify(spyB).dispatch(payloadJsonWithCake("{}", "{\"Independent\":{}}"));
+    }
+
+    @Test
+    public void testBake_parallelDispatch_dispatchesIndependentSegmentsConcurrently() {
+        CountDownLatch bothDispatched = new CountDownLatch(2);
+        oven.addDispatcher("A", awaiting(bothDispatched, "{\"a\":1}"));
+        oven.addDispatcher("B", awaiting(bothDispatched, "{\"b\":2}"));
+        oven.enableParallelDispatch(Executors.newFixedThreadPool(2));
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new IndependentIngredient("A"),
+            new IndependentIngredient("B")
+        ));
+
+        assertEquals(1, (int)cake.get("a"));
+        assertEquals(2, (int)cake.get("b"));
+    }
+
+    @Test
+    public void testBake_parallelDispatch_dispatchesBranchesOfParallelRecipeConcurrently() {
+        CountDownLatch bothDispatched = new CountDownLatch(2);
+        oven.addDispatcher("A", awaiting(bothDispatched, "{}"));
+        oven.addDispatcher("B", awaiting(bothDispatched, "{}"));
+        oven.enableParallelDispatch(Executors.newFixedThreadPool(2));
+
+        oven.bake(Recipe.parallel(
+            new Ingredient("TestIngredient1", "A") {},
+            new Ingredient("TestIngredient2", "B") {}
+        ));
+    }
+
+    @Test
+    public void testBake_parallelDispatch_waitsForSegmentsPublishingKeysItReads() {
+        Dispatcher spyA = setupDispatcherSpy("A", "{\"a\":1}");
+        Dispatcher spyB = setupDispatcherSpy("B", "{\"a\":1}");
+        oven.enableParallelDispatch(Executors.newFixedThreadPool(2));
+
+        oven.bake(Recipe.prepare(
+            new IndependentIngredient("A"),
+            new Ingredient("TestIngredient2", "B") {}
+        ));
+
+        InOrder inOrder = Mockito.inOrder(spyA, spyB);
+        inOrder.verify(spyA).dispatch(payloadJsonWithCake("{}", "{\"Independent\":{}}"));
+        inOrder.verify(spyB).dispatch(payloadJsonWithCake("{\"a\":1}", "{\"TestIngredient2\":{}}"));
+    }
+
+    @Test
+    public void testBake_parallelDispatch_throwsOnConflictingValuesFromConcurrentSegments() {
+        setupDispatcherSpy("A", "{\"key\":1}");
+        setupDispatcherSpy("B", "{\"key\":2}");
+        oven.enableParallelDispatch(Executors.newFixedThreadPool(2));
+
+        try {
+            oven.bake(Recipe.prepare(
+                new IndependentIngredient("A"),
+                new IndependentIngredient("B")
+            ));
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().contains("published different values for cake key 'key'"));
+        }
+    }
+
+    @Test
+    public void testBake_parallelDispatch_waitsForDispatchedSegmentsBeforeThrowing() {
+        List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch aDispatched = new CountDownLatch(1);
+        oven.addDispatcher("A", (Dispatcher)payload -> {
+            aDispatched.countDown();
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            dispatched.add("A");
+            return "{}";
+        });
+        oven.addDispatcher("B", (Dispatcher)payload -> {
+            try {
+                aDispatched.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new IllegalStateException("dispatch failed");
+        });
+        oven.enableParallelDispatch(Executors.newFixedThreadPool(2));
+
+        try {
+            oven.bake(Recipe.prepare(
+                new IndependentIngredient("A"),
+                new IndependentIngredient("B")
+            ));
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertEquals(Collections.singletonList("A"), dispatched);
+        }
+    }
+
+    @Test
+    public void testBake_concurrentBakesOnSameOven() throws Exception {
+        // returns the ingredient type in the payload as the cake
+        oven.addDispatcher("A", payload -> "{\"type\":\"" + StringUtils.substringBetween(payload, "\"ingredients\":[{\"", "\"") + "\"}");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Supplier<Ingredient>> ingredients = Arrays.asList(
+                () -> new Ingredient("TestIngredient1", "A") {},
+                () -> new Ingredient("TestIngredient2", "A") {},
+                () -> new Ingredient("TestIngredient3", "A") {},
+                // one class with many types
+                () -> typed("TestIngredient" + ThreadLocalRandom.current().nextInt(4, 100), "A")
+            );
+
+            List<Callable<Boolean>> bakes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                Ingredient ingredient = ingredients.get(i % ingredients.size()).get();
+                bakes.add(() -> ingredient.getIngredientType().equals(oven.bake(Recipe.prepare(ingredient)).get("type")));
+            }
+
+            for (Future<Boolean> bake: executor.invokeAll(bakes)) {
+                assertTrue(bake.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBake_classBakedWithOtherTypeBeforeIsSerializedWithItsType() {
+        Dispatcher spy = setupDispatcherSpy("A");
+
+        oven.bake(Recipe.prepare(typed("TestIngredient1", "A")));
+        oven.bake(Recipe.prepare(typed("TestIngredient2", "A")));
+
+        verify(spy).dispatch(payloadJson("{\"TestIngredient1\":{}}"));
+        verify(spy).dispatch(payloadJson("{\"TestIngredient2\":{}}"));
+    }
+
+    @Test
+    public void testBakeAsync_dispatchesNextSegmentOnceStageCompletes() throws Exception {
+        CompletableFuture<String> replyA = new CompletableFuture<>();
+        List<String> payloadsB = new ArrayList<>();
+        oven.addAsyncDispatcher("A", payload -> replyA);
+        oven.addAsyncDispatcher("B", payload -> {
+            payloadsB.add(payload);
+            return CompletableFuture.completedFuture("{\"a\":1,\"b\":2}");
+        });
+
+        CompletableFuture<Cake> cake = oven.bakeAsync(Recipe.prepare(
+            new Ingredient("TestIngredient1", "A") {},
+            new Ingredient("TestIngredient2", "B") {}
+        ));
+        assertFalse(cake.isDone());
+        assertTrue(payloadsB.isEmpty());
+
+        replyA.complete("{\"a\":1}");
+        assertEquals(payloadJsonWithCake("{\"a\":1}", "{\"TestIngredient2\":{}}"), payloadsB.get(0));
+        assertEquals(2, (int)cake.get().get("b"));
+    }
+
+    @Test
+    public void testBakeAsync_callsSynchronousDispatchersOnDispatchExecutor() {
+        Dispatcher spy = setupDispatcherSpy("A", "{\"a\":1}");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        oven.setDispatchExecutor(executor);
+
+        try {
+            Cake cake = oven.bakeAsync(Recipe.prepare(new Ingredient("TestIngredient", "A") {})).join();
+            verify(spy).dispatch(payloadJson("{\"TestIngredient\":{}}"));
+            assertEquals(1, (int)cake.get("a"));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBakeAsync_doesNotBlockOnSynchronousDispatchersByDefault() throws Exception {
+        CountDownLatch dispatching = new CountDownLatch(1);
+        oven.addDispatcher("A", (Dispatcher)payload -> {
+            try {
+                assertTrue(dispatching.await(5, TimeUnit.SECONDS));
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return "{\"a\":1}";
+        });
+
+        CompletableFuture<Cake> cake = oven.bakeAsync(Recipe.prepare(new Ingredient("TestIngredient", "A") {}));
+        assertFalse(cake.isDone());
+
+        dispatching.countDown();
+        assertEquals(1, (int)cake.get(5, TimeUnit.SECONDS).get("a"));
+    }
+
+    @Test
+    public void testBake_waitsForAsyncDispatchers() {
+        oven.addAsyncDispatcher("A", payload -> CompletableFuture.supplyAsync(() -> "{\"a\":1}"));
+
+        Cake cake = oven.bake(Recipe.prepare(new Ingredient("TestIngredient", "A") {}));
+        assertEquals(1, (int)cake.get("a"));
+    }
+
+    @Test
+    public void testBakeAsync_failsWhenDispatchFails() {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("unreachable"));
+        oven.addAsyncDispatcher("A", payload -> failed);
+
+        try {
+            oven.bakeAsync(Recipe.prepare(new Ingredient("TestIngredient", "A") {})).join();
+            fail();
+        }
+        catch (CompletionException e) {
+            assertEquals("could not bake cake", e.getCause().getMessage());
+            assertEquals("unreachable", e.getCause().getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testBakeAsync_sessionCakeExchange() {
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        backendA.enableSessions(Duration.ofMinutes(1), 10);
+        oven.addAsyncDispatcher("A", payload -> CompletableFuture.supplyAsync(() -> backendA.bake(payload)), CakeExchange.SESSION);
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        oven.addDispatcher("B", backendB::bake);
+
+        Cake cake = oven.bakeAsync(Recipe.prepare(
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {}
+        )).join();
+
+        assertEquals("x", cake.get("a0"));
+        assertEquals("y", cake.get("b1"));
+        assertEquals("x", cake.get("a2"));
+    }
+
+    @Test
+    public void testBakeAsync_manyBakesWaitingOnOneThread() throws Exception {
+        ExecutorService backend = Executors.newSingleThreadExecutor();
+        oven.addAsyncDispatcher("A", payload -> CompletableFuture.supplyAsync(() -> "{\"a\":1}", backend), CakeExchange.DELTA);
+        oven.addAsyncDispatcher("B", payload -> CompletableFuture.supplyAsync(() -> "{\"b\":2}", backend), CakeExchange.DELTA);
+
+        try {
+            List<CompletableFuture<Cake>> bakes = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                bakes.add(oven.bakeAsync(Recipe.prepare(
+                    new Ingredient("TestIngredient1", "A") {},
+                    new Ingredient("TestIngredient2", "B") {},
+                    new Ingredient("TestIngredient3", "A") {}
+                )));
+            }
+
+            CompletableFuture.allOf(bakes.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+            for (CompletableFuture<Cake> bake: bakes) {
+                assertEquals(1, (int)bake.get().get("a"));
+                assertEquals(2, (int)bake.get().get("b"));
+            }
+        }
+        finally {
+            backend.shutdown();
+        }
+    }
+
+    @Test
+    public void testBakeAll_sendsSegmentsOfSameDomainInOnePayload() {
+        List<String> payloadsA = new ArrayList<>();
+        List<String> payloadsB = new ArrayList<>();
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        oven.addDispatcher("A", payload -> {
+            payloadsA.add(payload);
+            return backendA.bake(payload);
+        });
+        oven.addDispatcher("B", payload -> {
+            payloadsB.add(payload);
+            return backendB.bake(payload);
+        }, CakeExchange.DELTA);
+
+        List<Recipe> recipes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            recipes.add(Recipe.prepare(
+                new Ingredient("Publishing", "A") {},
+                new Ingredient("Publishing", "B") {}
+            ));
+        }
+        List<Cake> cakes = oven.bakeAll(recipes);
+
+        assertEquals(1, payloadsA.size());
+        assertTrue(payloadsA.get(0).startsWith("{\"payloads\":[" + payloadJson("{\"Publishing\":{}}") + ","));
+        assertEquals(1, payloadsB.size());
+        assertEquals(3, cakes.size());
+        for (Cake cake: cakes) {
+            assertEquals(2, cake.getEntries().size());
+            assertEquals("x", cake.get("a0"));
+            assertEquals("y", cake.get("b1"));
+        }
+    }
+
+    @Test
+    public void testBakeAll_sendsSingleSegmentAsPlainPayload() {
+        Dispatcher spy = setupDispatcherSpy("A", "{\"a\":1}");
+
+        List<Cake> cakes = oven.bakeAll(Arrays.asList(Recipe.prepare(new Ingredient("TestIngredient", "A") {})));
+
+        verify(spy).dispatch(payloadJson("{\"TestIngredient\":{}}"));
+        assertEquals(1, (int)cakes.get(0).get("a"));
+    }
+
+    @Test
+    public void testBakeAll_recipesOfDifferentLengths() {
+        oven.enableLazyCake();
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), Arrays.asList(1, 2)));
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        Dispatcher spyA = Mockito.spy(Dispatcher.class);
+        when(spyA.dispatch(anyString())).then(invocation -> backendA.bake(invocation.<String>getArgument(0)));
+        oven.addDispatcher("A", spyA);
+        oven.addDispatcher("B", backendB::bake);
+
+        List<Cake> cakes = oven.bakeAll(Arrays.asList(
+            Recipe.prepare(
+                new Ingredient("Publishing", "A") {},
+                new Ingredient("Publishing", "B") {},
+                new Ingredient("Publishing", "A") {}
+            ),
+            Recipe.prepare(
+                new Ingredient("Publishing", "B") {},
+                new Ingredient("Publishing", "A") {}
+            )
+        ));
+
+        // each recipe moves on to its next segment every round
+        verify(spyA, times(3)).dispatch(anyString());
+        assertEquals(Arrays.asList(1, 2), cakes.get(0).get("a0"));
+        assertEquals("y", cakes.get(0).get("b1"));
+        assertEquals(Arrays.asList(1, 2), cakes.get(0).get("a2"));
+        assertEquals("y", cakes.get(1).get("b0"));
+        assertEquals(Arrays.asList(1, 2), cakes.get(1).get("a1"));
+    }
+
+    @Test
+    public void testBake_binaryDispatcher_exchangesPayloadsInItsCodec() throws Exception {
+        oven.enableLazyCake();
+        List<byte[]> payloadsA = new ArrayList<>();
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), Arrays.asList(1, 2)));
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        oven.addBinaryDispatcher("A", payload -> {
+            payloadsA.add(payload);
+            return backendA.bake(payload);
+        }, PayloadCodec.SMILE);
+        oven.addDispatcher("B", backendB::bake);
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {}
+        ));
+
+        assertEquals(1, payloadsA.size());
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        assertEquals(new ObjectMapper().readTree(payloadJsonWithCake("{\"b0\":\"y\"}", "{\"Publishing\":{}}")), smileMapper.readTree(payloadsA.get(0)));
+        assertEquals("y", cake.get("b0"));
+        assertEquals(Arrays.asList(1, 2), cake.get("a1"));
+        assertEquals("y", cake.get("b2"));
+    }
+
+    @Test
+    public void testBakeAll_binaryDispatcher_sendsBatchInItsCodec() {
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        oven.addBinaryDispatcher("A", backendA::bake, PayloadCodec.SMILE, CakeExchange.DELTA);
+
+        List<Cake> cakes = oven.bakeAll(Arrays.asList(
+            Recipe.prepare(new Ingredient("Publishing", "A") {}),
+            Recipe.prepare(new Ingredient("Publishing", "A") {}, new Ingredient("Publishing", "A") {})
+        ));
+
+        assertEquals("x", cakes.get(0).get("a0"));
+        assertEquals(1, cakes.get(0).getEntries().size());
+        assertEquals("x", cakes.get(1).get("a0"));
+        assertEquals("x", cakes.get(1).get("a1"));
+        assertEquals(2, cakes.get(1).getEntries().size());
+    }
+
+    @Test
+    public void testBake_streamDispatcher_streamsPayloadsAndCakes() {
+        List<String> payloadsA = new ArrayList<>();
+        List<Boolean> responsesClosed = new ArrayList<>();
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), Arrays.asList(1, 2)));
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        oven.addStreamDispatcher("A", payload -> {
+            byte[] bytes = new byte[payload.available()];
+            payload.read(bytes);
+            payloadsA.add(new String(bytes, StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            backendA.bake(new ByteArrayInputStream(bytes), response);
+            responsesClosed.add(false);
+            int index = responsesClosed.size() - 1;
+            return new ByteArrayInputStream(response.toByteArray()) {
+                @Override
+                public void close() {
+                    responsesClosed.set(index, true);
+                }
+            };
+        });
+        oven.addDispatcher("B", backendB::bake);
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {}
+        ));
+
+        assertEquals(Arrays.asList(
+            payloadJsonWithCake("{\"b0\":\"y\"}", "{\"Publishing\":{}}"),
+            payloadJsonWithCake("{\"b0\":\"y\",\"a1\":[1,2],\"b2\":\"y\"}", "{\"Publishing\":{}}")
+        ), payloadsA);
+        assertEquals(Arrays.asList(true, true), responsesClosed);
+        assertEquals(Arrays.asList(1, 2), cake.get("a3"));
+        assertEquals("y", cake.get("b2"));
+    }
+
+    @Test
+    public void testBakeAll_streamDispatcher_sendsBatchInItsCodec() {
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        oven.addStreamDispatcher("A", payload -> {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            backendA.bake(payload, response, PayloadCodec.SMILE);
+            return new ByteArrayInputStream(response.toByteArray());
+        }, PayloadCodec.SMILE);
+
+        List<Cake> cakes = oven.bakeAll(Arrays.asList(
+            Recipe.prepare(new Ingredient("Publishing", "A") {}),
+            Recipe.prepare(new Ingredient("Publishing", "A") {})
+        ));
+
+        assertEquals("x", cakes.get(0).get("a0"));
+        assertEquals("x", cakes.get(1).get("a0"));
+    }
+
+    @Test
+    public void testBake_localDispatcher_bakesIntoOvensCake() {
+        List<Object> published = new ArrayList<>();
+        BackendOven backendA = publishingBackend(cake -> {
+            Object value = Arrays.asList(1, 2);
+            published.add(value);
+            cake.publish("a" + cake.getEntries().size(), value);
+        });
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        oven.addLocalDispatcher("A", backendA::bakeLocal);
+        oven.addDispatcher("B", backendB::bake);
+        oven.setCakeFactory(ConcurrentCake::new);
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {}
+        ));
+
+        assertTrue(cake instanceof ConcurrentCake);
+        // values baked locally are kept as published, until a domain sent them in a payload returns them
+        assertEquals(published.get(0), cake.get("a0"));
+        assertEquals("y", cake.get("b1"));
+        assertSame(published.get(1), cake.get("a2"));
+    }
+
+    @Test
+    public void testBake_localDispatcher_parallelDispatchBakesIntoForksOfCake() {
+        oven.addLocalDispatcher("A", publishingBackend(cake -> cake.publish("a", cake.getEntries().size()))::bakeLocal);
+        oven.addLocalDispatcher("B", publishingBackend(cake -> cake.publish("b", cake.getEntries().size()))::bakeLocal);
+        oven.enableParallelDispatch(Executors.newFixedThreadPool(2));
+
+        Cake cake = oven.bake(Recipe.parallel(
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {}
+        ));
+
+        // neither segment saw the other's entry
+        assertEquals(0, (int)cake.get("a"));
+        assertEquals(0, (int)cake.get("b"));
+    }
+
+    @Test
+    public void testBakeAll_localDispatcher_bakesEachRecipeIntoItsCake() {
+        oven.addLocalDispatcher("A", publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"))::bakeLocal);
+
+        List<Cake> cakes = oven.bakeAll(Arrays.asList(
+            Recipe.prepare(new Ingredient("Publishing", "A") {}),
+            Recipe.prepare(new Ingredient("Publishing", "A") {}, new Ingredient("Publishing", "A") {})
+        ));
+
+        assertEquals(1, cakes.get(0).getEntries().size());
+        assertEquals(2, cakes.get(1).getEntries().size());
+        assertEquals("x", cakes.get(1).get("a1"));
+    }
+
     @Test
     public void testBake_callsDispatcherForContextIngredient() {
         Dispatcher spy = setupDispatcherSpy("A");
@@ -155,6 +722,146 @@ public class OvenTest {
         verify(spyB).dispatch(payloadJsonWithCake("{\"foo\":\"bar\"}", "{\"TestIngredient2\":{}}"));
     }
 
+    @Test
+    public void testBake_returnsCakeFromFactory() {
+        setupDispatcherSpy("A", "{\"foo\":\"bar\"}");
+        oven.setCakeFactory(Cake::persistent);
+
+        Ingredient ingredient = new Ingredient("TestIngredient", "A") {};
+        Cake cake = oven.bake(Recipe.prepare(ingredient));
+
+        assertEquals("bar", cake.get("foo"));
+        assertEquals("bar", cake.fork().get("foo"));
+    }
+
+    @Test
+    public void testBake_deltaCakeExchange_requestsDeltaAndMergesReturnedEntries() {
+        Dispatcher spyA = Mockito.spy(Dispatcher.class);
+        when(spyA.dispatch(anyString())).thenReturn("{\"foo\":\"bar\"}", "{\"foo\":\"baz\"}");
+        oven.addDispatcher("A", spyA, CakeExchange.DELTA);
+        Dispatcher spyB = setupDispatcherSpy("B", "{\"moo\":\"cow\"}");
+
+        Ingredient ingredient1 = new Ingredient("TestIngredient1", "A") {};
+        Ingredient ingredient2 = new Ingredient("TestIngredient2", "B") {};
+        Ingredient ingredient3 = new Ingredient("TestIngredient3", "A") {};
+
+        Cake cake = oven.bake(Recipe.prepare(ingredient1, ingredient2, ingredient3));
+        verify(spyA).dispatch("{\"cake\":{},\"cakeExchange\":\"DELTA\",\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"TestIngredient1\":{}}]}}}");
+        verify(spyB).dispatch(payloadJsonWithCake("{\"foo\":\"bar\"}", "{\"TestIngredient2\":{}}"));
+        verify(spyA).dispatch("{\"cake\":{\"moo\":\"cow\"},\"cakeExchange\":\"DELTA\",\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"TestIngredient3\":{}}]}}}");
+        assertEquals("baz", cake.get("foo"));
+        assertEquals("cow", cake.get("moo"));
+    }
+
+    @Test
+    public void testBake_lazyCake_passesValuesThroughUnparsed() {
+        oven.enableLazyCake();
+        setupDispatcherSpy("A", "{\"user\":{\"name\":\"bob\",\"tags\":[1,2.5]}}");
+        Dispatcher spyB = setupDispatcherSpy("B", "{\"user\":{\"name\":\"bob\",\"tags\":[1,2.5]}}");
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("TestIngredient1", "A") {},
+            new Ingredient("TestIngredient2", "B") {}
+        ));
+
+        verify(spyB).dispatch(payloadJsonWithCake("{\"user\":{\"name\":\"bob\",\"tags\":[1,2.5]}}", "{\"TestIngredient2\":{}}"));
+        assertEquals("bob", cake.get(User.class, "user").name);
+        assertEquals("bob", cake.<Map<String,Object>>get("user").get("name"));
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_sendsOnlyEntriesTheSessionHasNotSeen() {
+        List<String> payloadsA = new ArrayList<>();
+        BackendOven backendA = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        backendA.enableSessions(Duration.ofMinutes(1), 10);
+        oven.addDispatcher("A", payload -> {
+            payloadsA.add(payload);
+            return backendA.bake(payload);
+        }, CakeExchange.SESSION);
+        BackendOven backendB = publishingBackend(cake -> cake.publish("b" + cake.getEntries().size(), "y"));
+        oven.addDispatcher("B", backendB::bake);
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {}
+        ));
+
+        assertEquals(2, payloadsA.size());
+        assertTrue(payloadsA.get(0).contains("\"cake\":{},\"cakeExchange\":\"SESSION\""));
+        assertTrue(payloadsA.get(0).contains("\"epoch\":0"));
+        // the session already holds a0, so only b1 is sent
+        assertTrue(payloadsA.get(1).contains("\"cake\":{\"b1\":\"y\"},\"cakeExchange\":\"SESSION\""));
+        assertTrue(payloadsA.get(1).contains("\"close\":true"));
+
+        assertEquals("x", cake.get("a0"));
+        assertEquals("y", cake.get("b1"));
+        assertEquals("x", cake.get("a2"));
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_fallsBackToDeltaWhenBackendHasNoSessions() {
+        List<String> payloads = new ArrayList<>();
+        BackendOven backend = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        oven.addDispatcher("A", payload -> {
+            payloads.add(payload);
+            return backend.bake(payload);
+        }, CakeExchange.SESSION);
+        setupDispatcherSpy("B", "{\"b\":\"y\"}");
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {}
+        ));
+
+        assertTrue(payloads.get(0).contains("\"cakeExchange\":\"SESSION\""));
+        assertEquals("{\"cake\":{\"a0\":\"x\",\"b\":\"y\"},\"cakeExchange\":\"DELTA\",\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"Publishing\":{}}]}}}", payloads.get(1));
+        assertEquals("x", cake.get("a2"));
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_fallsBackToDeltaOnlyForTheBake() {
+        List<String> payloads = new ArrayList<>();
+        BackendOven backend = publishingBackend(cake -> cake.publish("a" + cake.getEntries().size(), "x"));
+        oven.addDispatcher("A", payload -> {
+            payloads.add(payload);
+            return backend.bake(payload);
+        }, CakeExchange.SESSION);
+
+        oven.bake(Recipe.prepare(new Ingredient("Publishing", "A") {}));
+        oven.bake(Recipe.prepare(new Ingredient("Publishing", "A") {}));
+
+        assertEquals(2, payloads.size());
+        assertTrue(payloads.get(0).contains("\"cakeExchange\":\"SESSION\""));
+        assertTrue(payloads.get(1).contains("\"cakeExchange\":\"SESSION\""));
+    }
+
+    @Test
+    public void testBake_sessionCakeExchange_reopensSessionOnResync() {
+        Dispatcher spy = Mockito.spy(Dispatcher.class);
+        when(spy.dispatch(anyString())).thenReturn(
+            "{\"cakeExchange\":\"SESSION\",\"cake\":{\"a\":1}}",
+            "{\"cakeExchange\":\"SESSION\",\"cake\":{},\"resync\":true}",
+            "{\"cakeExchange\":\"SESSION\",\"cake\":{\"a\":2}}"
+        );
+        oven.addDispatcher("A", spy, CakeExchange.SESSION);
+        setupDispatcherSpy("B", "{\"a\":1,\"b\":\"y\"}");
+
+        Cake cake = oven.bake(Recipe.prepare(
+            new Ingredient("Publishing", "A") {},
+            new Ingredient("Publishing", "B") {},
+            new Ingredient("Publishing", "A") {}
+        ));
+
+        ArgumentCaptor<String> payloads = ArgumentCaptor.forClass(String.class);
+        verify(spy, times(3)).dispatch(payloads.capture());
+        assertTrue(payloads.getAllValues().get(1).contains("\"cake\":{\"b\":\"y\"}"));
+        assertTrue(payloads.getAllValues().get(2).contains("\"epoch\":0"));
+        assertTrue(payloads.getAllValues().get(2).contains("\"cake\":{\"a\":1,\"b\":\"y\"}"));
+        assertEquals(2, (int)cake.get("a"));
+    }
+
     @Test
     public void testBake_serializesPayload_emptyIngredient() {
         Dispatcher spy = setupDispatcherSpy("A");
@@ -241,7 +948,7 @@ public class OvenTest {
         Ingredient ingredient = new Ingredient("EmptyIngredient", "A") {};
 
         oven.bake(Recipe.context("foo", ingredient));
-        verify(spy).dispatch("{\"recipe\":{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
+        verify(spy).dispatch("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":\"foo\",\"ingredients\":[{\"EmptyIngredient\":{}}]}}}");
     }
 
     @Test
@@ -253,7 +960,7 @@ public class OvenTest {
         Ingredient ingredient = new Ingredient("EmptyIngredient", "A") {};
 
         oven.bake(Recipe.context(keyedIngredient, ingredient));
-        verify(spy).dispatch("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyKeyedIngredient\":{\"key\":\"key\"}},{\"Recipe\":{\"context\":\"key\",\"ingredients\":[{\"EmptyIngredient\":{}}]}}]}},\"cake\":{}}");
+        verify(spy).dispatch("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"EmptyKeyedIngredient\":{\"key\":\"key\"}},{\"Recipe\":{\"context\":\"key\",\"ingredients\":[{\"EmptyIngredient\":{}}]}}]}}}");
     }
 
     @Test
@@ -263,7 +970,7 @@ public class OvenTest {
         KeyedIngredient keyedIngredient = new KeyedIngredient("EmptyKeyedIngredient", "A") {};
 
         oven.bake(Recipe.context(keyedIngredient));
-        verify(spy).dispatch("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyKeyedIngredient\":{}}]}},\"cake\":{}}");
+        verify(spy).dispatch("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"EmptyKeyedIngredient\":{}}]}}}");
     }
 
     @Test
@@ -279,16 +986,52 @@ public class OvenTest {
             Recipe.context(keyedIngredient)
         ));
 
-        verify(spyA).dispatch("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyIngredient\":{}}]}},\"cake\":{}}");
-        verify(spyB).dispatch("{\"recipe\":{\"Recipe\":{\"ingredients\":[{\"EmptyKeyedIngredient\":{}}]}},\"cake\":{}}");
+        verify(spyA).dispatch("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"EmptyIngredient\":{}}]}}}");
+        verify(spyB).dispatch("{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[{\"EmptyKeyedIngredient\":{}}]}}}");
     }
 
     private String payloadJson(String... ingredientJson) {
-        return "{\"recipe\":{\"Recipe\":{\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}},\"cake\":{}}";
+        return "{\"cake\":{},\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}}}";
     }
 
     private String payloadJsonWithCake(String cake, String... ingredientJson) {
-        return "{\"recipe\":{\"Recipe\":{\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}},\"cake\":" + cake + "}";
+        return "{\"cake\":" + cake + ",\"recipe\":{\"Recipe\":{\"context\":null,\"ingredients\":[" + StringUtils.join(ingredientJson, ",") + "]}}}";
+    }
+
+    private BackendOven publishingBackend(Consumer<Cake> publish) {
+        BackendOven backendOven = new BackendOven();
+        backendOven.registerHook(new BaseIngredientHook<PublishingIngredientData>("Publishing", PublishingIngredientData.class) {
+            @Override
+            public void bake(PublishingIngredientData ingredient, Cake cake) {
+                publish.accept(cake);
+            }
+        });
+        return backendOven;
+    }
+
+    public static class PublishingIngredientData extends IngredientSnapshot {
+        public PublishingIngredientData() {
+            super("Publishing");
+        }
+    }
+
+    public static class User {
+        public String name;
+        public List<Double> tags;
+    }
+
+    // a dispatcher that only returns once the latch's other dispatchers have been called too
+    private Dispatcher awaiting(CountDownLatch latch, String returnedCakeJson) {
+        return payload -> {
+            latch.countDown();
+            try {
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+            }
+            catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return returnedCakeJson;
+        };
     }
 
     private Dispatcher setupDispatcherSpy(String domain) {
@@ -301,4 +1044,26 @@ public class OvenTest {
         oven.addDispatcher(domain, spy);
         return spy;
     }
+
+    // ingredients of the same class with the given type
+    private static Ingredient typed(String type, String domain) {
+        return new Ingredient(type, domain) {};
+    }
+
+    // an ingredient that declares it neither reads nor publishes cake keys
+    private static class IndependentIngredient extends Ingredient {
+        IndependentIngredient(String domain) {
+            super("Independent", domain);
+        }
+
+        @Override
+        public List<String> getCakeReads() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<String> getCakePublishes() {
+            return new ArrayList<>();
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PersistentHashMapTest {
+    @Test
+    public void testPut_returnsNewMapAndLeavesOriginalUnchanged() {
+        PersistentHashMap<String,Object> map1 = PersistentHashMap.<String,Object>empty().put("a", 1);
+        PersistentHashMap<String,Object> map2 = map1.put("b", 2).put("a", 3);
+
+        assertEquals(1, map1.size());
+        assertEquals(1, map1.get("a"));
+        assertFalse(map1.containsKey("b"));
+        assertEquals(2, map2.size());
+        assertEquals(3, map2.get("a"));
+        assertEquals(2, map2.get("b"));
+    }
+
+    @Test
+    public void testPut_sameValueReturnsSameMap() {
+        PersistentHashMap<String,Object> map = PersistentHashMap.<String,Object>empty().put("a", "b");
+        assertSame(map, map.put("a", "b"));
+    }
+
+    @Test
+    public void testPut_storesNullValues() {
+        PersistentHashMap<String,Object> map = PersistentHashMap.<String,Object>empty().put("a", null);
+
+        assertTrue(map.containsKey("a"));
+        assertNull(map.get("a"));
+        assertFalse(map.containsKey("b"));
+    }
+
+    @Test
+    public void testPut_handlesHashCollisions() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        PersistentHashMap<String,Object> map = PersistentHashMap.<String,Object>empty().put("Aa", 1).put("BB", 2);
+        PersistentHashMap<String,Object> updated = map.put("Aa", 3).put("C", 4);
+
+        assertEquals(2, map.size());
+        assertEquals(1, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        assertEquals(3, updated.size());
+        assertEquals(3, updated.get("Aa"));
+        assertEquals(2, updated.get("BB"));
+        assertEquals(4, updated.get("C"));
+    }
+
+    @Test
+    public void testIterator_visitsEveryEntry() {
+        PersistentHashMap<String,Object> map = PersistentHashMap.empty();
+        Map<String,Object> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            map = map.put("key" + i, i);
+            expected.put("key" + i, i);
+        }
+
+        Map<String,Object> actual = new HashMap<>();
+        for (Map.Entry<String,Object> entry: map) {
+            actual.put(entry.getKey(), entry.getValue());
+        }
+
+        assertEquals(5000, map.size());
+        assertEquals(expected, actual);
+    }
+}
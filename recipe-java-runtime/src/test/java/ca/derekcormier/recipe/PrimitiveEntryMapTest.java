@@ -0,0 +1,164 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class PrimitiveEntryMapTest {
+    @Test
+    public void testPut_boxesNumbersAsTheyWerePut() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.put("int", 1);
+        map.put("long", 2L);
+        map.put("double", 3.5);
+        map.put("short", (short)4);
+        map.put("string", "foo");
+        map.put("null", null);
+
+        assertEquals(Integer.valueOf(1), map.get("int"));
+        assertEquals(Long.valueOf(2), map.get("long"));
+        assertEquals(Double.valueOf(3.5), map.get("double"));
+        assertEquals(Short.valueOf((short)4), map.get("short"));
+        assertEquals("foo", map.get("string"));
+        assertNull(map.get("null"));
+        assertTrue(map.containsKey("null"));
+        assertFalse(map.containsKey("missing"));
+        assertEquals(6, map.size());
+    }
+
+    @Test
+    public void testPut_returnsPreviousValue() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        assertNull(map.put("a", 1L));
+        assertEquals(Long.valueOf(1), map.put("a", "foo"));
+        assertEquals("foo", map.put("a", 2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testGetPrimitive_convertsNumbers() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.putLong("long", 5000000000L);
+        map.putInt("int", 7);
+        map.putDouble("double", 2.75);
+        map.put("short", (short)3);
+
+        assertEquals(5000000000L, map.getLong("long"));
+        assertEquals(7, map.getInt("int"));
+        assertEquals(7L, map.getLong("int"));
+        assertEquals(2, map.getInt("double"));
+        assertEquals(2.75, map.getDouble("double"), 0);
+        assertEquals(7.0, map.getDouble("int"), 0);
+        assertEquals(3, map.getInt("short"));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testGetPrimitive_throwsOnNonNumber() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.put("a", "foo");
+        map.getLong("a");
+    }
+
+    @Test
+    public void testEntrySet_iteratesInInsertionOrder() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("key" + (99 - i));
+            map.putInt("key" + (99 - i), i);
+        }
+        map.put("key50", "overwritten");
+
+        assertEquals(keys, new ArrayList<>(map.keySet()));
+        assertEquals("overwritten", map.get("key50"));
+        assertEquals(Integer.valueOf(0), map.get("key99"));
+    }
+
+    @Test
+    public void testRemove_keepsOtherEntriesFindable() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        for (int i = 0; i < 50; i++) {
+            map.putInt("key" + i, i);
+        }
+        for (int i = 0; i < 50; i += 2) {
+            assertEquals(i, map.remove("key" + i));
+        }
+        for (int i = 50; i < 100; i++) {
+            map.putInt("key" + i, i);
+        }
+
+        assertEquals(75, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1 || i >= 50, map.containsKey("key" + i));
+        }
+        assertNull(map.remove("key0"));
+    }
+
+    @Test
+    public void testIteratorRemove_removesEntry() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.put("a", 1);
+        map.put("b", "foo");
+        map.put("c", 2.0);
+
+        Iterator<Map.Entry<String,Object>> iterator = map.entrySet().iterator();
+        iterator.next();
+        iterator.next();
+        iterator.remove();
+
+        assertEquals(Arrays.asList("a", "c"), new ArrayList<>(map.keySet()));
+    }
+
+    @Test
+    public void testClear_removesEverything() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.put("a", 1);
+        map.put("b", "foo");
+        map.clear();
+        map.put("c", 3L);
+
+        assertEquals(1, map.size());
+        assertFalse(map.containsKey("a"));
+        assertEquals(Long.valueOf(3), map.get("c"));
+    }
+
+    @Test
+    public void testCopyFrom_copiesEntries() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.putLong("a", 1);
+        map.put("b", "foo");
+        map.put("c", null);
+        PrimitiveEntryMap copy = new PrimitiveEntryMap();
+        copy.put("b", "bar");
+        copy.copyFrom(map);
+
+        Map<String,Object> expected = new HashMap<>();
+        expected.put("a", 1L);
+        expected.put("b", "foo");
+        expected.put("c", null);
+        assertEquals(expected, copy);
+    }
+
+    @Test
+    public void testEquals_matchesOtherMaps() {
+        PrimitiveEntryMap map = new PrimitiveEntryMap();
+        map.put("a", 1);
+        map.put("b", "foo");
+
+        Map<String,Object> other = new HashMap<>();
+        other.put("a", 1);
+        other.put("b", "foo");
+        assertEquals(other, map);
+        assertEquals(other.hashCode(), map.hashCode());
+    }
+}
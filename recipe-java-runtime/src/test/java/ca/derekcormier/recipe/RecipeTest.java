@@ -1,10 +1,17 @@
 package ca.derekcormier.recipe;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class RecipeTest {
 
@@ -25,6 +32,43 @@ public class RecipeTest {
         assertEquals(ingredient2, recipe.getIngredients().get(1));
     }
 
+    @Test
+    public void testPrepare_laterChangesToFlattenedRecipeDoNotShow() {
+        Ingredient ingredient1 = new Ingredient("TestIngredient1", "A") {};
+        Ingredient ingredient2 = new Ingredient("TestIngredient2", "A") {};
+        Recipe nested = Recipe.prepare(ingredient1);
+
+        Recipe recipe = Recipe.prepare(nested);
+        nested.getIngredients().add(ingredient2);
+        recipe.getIngredients().add(ingredient2);
+        recipe.getIngredients().set(0, ingredient2);
+
+        assertEquals(2, nested.getIngredients().size());
+        assertEquals(ingredient1, nested.getIngredients().get(0));
+        assertEquals(2, recipe.getIngredients().size());
+        assertEquals(ingredient2, recipe.getIngredients().get(0));
+    }
+
+    @Test
+    public void testPrepare_doesNotFlattenParallelRecipe() {
+        Ingredient ingredient1 = new Ingredient("TestIngredient1", "A") {};
+        Ingredient ingredient2 = new Ingredient("TestIngredient2", "B") {};
+
+        Recipe recipe = Recipe.prepare(
+            Recipe.parallel(
+                Recipe.prepare(ingredient1),
+                ingredient2
+            )
+        );
+
+        assertEquals(1, recipe.getIngredients().size());
+        Recipe parallel = (Recipe)recipe.getIngredients().get(0);
+        assertTrue(parallel.isParallel());
+        assertEquals(2, parallel.getIngredients().size());
+        assertEquals(ingredient1, ((Recipe)parallel.getIngredients().get(0)).getIngredients().get(0));
+        assertEquals(ingredient2, parallel.getIngredients().get(1));
+    }
+
     @Test
     public void testPrepare_preservesStructureOfContextfulRecipes() {
         Ingredient ingredient1 = new Ingredient("TestIngredient1", "A") {};
@@ -356,4 +400,195 @@ public class RecipeTest {
         assertEquals(1, ((Recipe)segments.get(2).recipe.getIngredients().get(0)).getIngredients().size());
         assertEquals("TestIngredient2", ((Recipe)segments.get(2).recipe.getIngredients().get(0)).getIngredients().get(0).getIngredientType());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFreeze_returnsSamePlan() {
+        Recipe recipe = Recipe.prepare(new Ingredient("TestIngredient", "A") {});
+        assertFalse(recipe.isFrozen());
+        BakePlan plan = recipe.freeze();
+        assertTrue(recipe.isFrozen());
+        assertSame(plan, recipe.freeze());
+        assertSame(plan, recipe.plan());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFreeze_makesNestedIngredientListsUnmodifiable() {
+        Recipe nested = Recipe.context("key", new Ingredient("TestIngredient", "A") {});
+        Recipe.prepare(nested).freeze();
+        nested.getIngredients().add(new Ingredient("TestIngredient", "A") {});
+    }
+
+    @Test
+    public void testFreeze_planHasSameSegmentsAsRecipe() {
+        Supplier<Recipe> recipe = () -> Recipe.context("key1",
+            new Ingredient("TestIngredient1", "A") {},
+            Recipe.context("key2",
+                new Ingredient("TestIngredient2", "B") {},
+                Recipe.context("key3",
+                    new Ingredient("TestIngredient3", "A") {}
+                ),
+                new Ingredient("TestIngredient4", "B") {}
+            ),
+            new Ingredient("TestIngredient5", "A") {}
+        );
+
+        assertEquals(describe(recipe.get().segment()), describe(recipe.get().freeze().getSegments()));
+    }
+
+    @Test
+    public void testFreeze_nestedFrozenRecipesGiveSameSegmentsInEachDomain() {
+        Supplier<Recipe> shared = () -> Recipe.context("shared",
+            new Ingredient("TestIngredient1", "A") {},
+            Recipe.context("inner",
+                new Ingredient("TestIngredient2", "B") {}
+            ),
+            new Ingredient("TestIngredient3", "A") {}
+        );
+        Recipe frozen = shared.get();
+        frozen.freeze();
+
+        for (String domain: new String[]{"A", "B", "C"}) {
+            Recipe expected = Recipe.context("outer",
+                new Ingredient("TestIngredient0", domain) {},
+                shared.get(),
+                new Ingredient("TestIngredient4", domain) {},
+                shared.get()
+            );
+            Recipe actual = Recipe.context("outer",
+                new Ingredient("TestIngredient0", domain) {},
+                frozen,
+                new Ingredient("TestIngredient4", domain) {},
+                frozen
+            );
+            assertEquals(describe(expected.segment()), describe(actual.segment()));
+            assertEquals(describe(expected.segment()), describe(actual.freeze().getSegments()));
+        }
+    }
+
+    @Test
+    public void testFreeze_nestedFrozenRecipeIsSegmentedOncePerDomain() {
+        Recipe frozen = Recipe.context("shared", new Ingredient("TestIngredient1", "A") {});
+        frozen.freeze();
+
+        Recipe recipe1 = Recipe.prepare(new Ingredient("TestIngredient0", "A") {}, frozen);
+        Recipe recipe2 = Recipe.prepare(new Ingredient("TestIngredient0", "A") {}, frozen);
+        assertSame(recipe1.segment().get(0).recipe.getIngredients().get(1), recipe2.segment().get(0).recipe.getIngredients().get(1));
+    }
+
+    @Test
+    public void testSegment_sameSegmentsAsRecursiveSegmentation() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            Recipe recipe = randomRecipe(random, 4, new int[]{0});
+            assertEquals(describe(recursiveSegment(recipe)), describe(recipe.segment()));
+        }
+    }
+
+    @Test
+    public void testSegment_deeplyNestedRecipe() {
+        Ingredient ingredient = new Ingredient("TestIngredient1", "A") {};
+        Recipe recipe = Recipe.context("key", ingredient);
+        for (int i = 0; i < 100000; i++) {
+            recipe = Recipe.context("key", new Ingredient("TestIngredient2", "B") {}, recipe);
+        }
+
+        List<Recipe.Segment> segments = recipe.segment();
+        assertEquals(2, segments.size());
+        Ingredient innermost = segments.get(1).recipe;
+        while (innermost instanceof Recipe) {
+            List<Ingredient> ingredients = ((Recipe)innermost).getIngredients();
+            innermost = ingredients.get(ingredients.size() - 1);
+        }
+        assertSame(ingredient, innermost);
+    }
+
+    // random nested recipes over three domains, some of them frozen or parallel, with numbered ingredient types
+    private Recipe randomRecipe(Random random, int depth, int[] count) {
+        List<Ingredient> ingredients = new ArrayList<>();
+        int size = random.nextInt(6);
+        for (int i = 0; i < size; i++) {
+            if (depth > 0 && random.nextInt(3) == 0) {
+                Recipe nested = randomRecipe(random, depth - 1, count);
+                if (random.nextInt(4) == 0) {
+                    nested.freeze();
+                }
+                ingredients.add(nested);
+            }
+            else {
+                ingredients.add(new Ingredient("TestIngredient" + count[0]++, new String[]{"A", "B", "C"}[random.nextInt(3)]) {});
+            }
+        }
+
+        switch (random.nextInt(4)) {
+            case 0:
+                return Recipe.prepare(ingredients.toArray(new Ingredient[0]));
+            case 1:
+                return Recipe.parallel(ingredients.toArray(new Ingredient[0]));
+            default:
+                return Recipe.context("key" + depth, ingredients.toArray(new Ingredient[0]));
+        }
+    }
+
+    // segmentation as it was before it walked recipes with an explicit stack, recursing into nested recipes
+    private List<Recipe.Segment> recursiveSegment(Recipe recipe) {
+        List<Recipe.Segment> segments = new ArrayList<>();
+        List<Recipe> recipeStack = new ArrayList<>();
+        recipeStack.add(recipe);
+        recursiveSegment(recipe, Recipe.prepare(), recipeStack, null, segments);
+        return segments;
+    }
+
+    private void recursiveSegment(Recipe root, Recipe currRecipe, List<Recipe> recipeStack, String currDomain, List<Recipe.Segment> segments) {
+        for (Ingredient ingredient: recipeStack.get(0).getIngredients()) {
+            if (ingredient instanceof Recipe) {
+                Recipe recipe = Recipe.context(((Recipe)ingredient).getContext());
+                recipeStack.add(0, (Recipe)ingredient);
+                recursiveSegment(root, recipe, recipeStack, currDomain, segments);
+
+                if (!recipe.getIngredients().isEmpty()) {
+                    currRecipe.getIngredients().add(recipe);
+                }
+            }
+            else {
+                if (!ingredient.getDomain().equals(currDomain)) {
+                    Recipe outerRecipe = null;
+                    Recipe recipe = null;
+                    for (Recipe r: recipeStack) {
+                        if (recipe == null) {
+                            outerRecipe = Recipe.context(r.getContext());
+                            recipe = outerRecipe;
+                        }
+                        else {
+                            Recipe enclosing = Recipe.context(r.getContext());
+                            enclosing.getIngredients().add(outerRecipe);
+                            outerRecipe = enclosing;
+                        }
+                    }
+
+                    Recipe.Segment segment = root.new Segment();
+                    segment.domain = ingredient.getDomain();
+                    segment.recipe = outerRecipe;
+                    segments.add(segment);
+
+                    currRecipe = recipe;
+                    currDomain = ingredient.getDomain();
+                }
+
+                currRecipe.getIngredients().add(ingredient);
+            }
+        }
+        recipeStack.remove(0);
+    }
+
+    private String describe(List<Recipe.Segment> segments) {
+        return segments.stream().map(segment -> segment.domain + ":" + describe(segment.recipe)).collect(Collectors.joining(" "));
+    }
+
+    private String describe(Ingredient ingredient) {
+        if (!(ingredient instanceof Recipe)) {
+            return ingredient.getIngredientType();
+        }
+        Recipe recipe = (Recipe)ingredient;
+        return recipe.getContext() + recipe.getIngredients().stream().map(this::describe).collect(Collectors.joining(",", "[", "]"));
+    }
+}
@@ -0,0 +1,98 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SegmentDependenciesTest {
+    @Test
+    public void testOf_segmentsOfSameDomainDependOnEachOther() {
+        int[][] dependencies = dependencies(Recipe.prepare(
+            declared("TestIngredient1", "A", null),
+            declared("TestIngredient2", "B", null),
+            declared("TestIngredient3", "A", null)
+        ));
+
+        assertArrayEquals(new int[][]{{}, {}, {0}}, dependencies);
+    }
+
+    @Test
+    public void testOf_segmentReadingKeyDependsOnSegmentPublishingIt() {
+        int[][] dependencies = dependencies(Recipe.prepare(
+            declared("TestIngredient1", "A", null),
+            Recipe.context("user",
+                declared("TestIngredient2", "B", "publishes", "id")
+            ),
+            declared("TestIngredient3", "C", "reads", "user.id"),
+            declared("TestIngredient4", "D", "reads", "group.id")
+        ));
+
+        assertArrayEquals(new int[][]{{}, {}, {1}, {}}, dependencies);
+    }
+
+    @Test
+    public void testOf_segmentDependsOnSegmentPublishingKeyWithinKeyItReads() {
+        int[][] dependencies = dependencies(Recipe.prepare(
+            declared("TestIngredient1", "A", "publishes", "user.id"),
+            declared("TestIngredient2", "B", "publishes", "user.name"),
+            declared("TestIngredient3", "C", "reads", "org.user.id.value"),
+            Recipe.context("org.user",
+                declared("TestIngredient4", "D", "publishes", "name")
+            ),
+            declared("TestIngredient5", "E", "reads", "org")
+        ));
+
+        assertArrayEquals(new int[][]{{}, {}, {0}, {1}, {3}}, dependencies);
+    }
+
+    @Test
+    public void testOf_undeclaredIngredientsDependOnEverything() {
+        int[][] dependencies = dependencies(Recipe.prepare(
+            declared("TestIngredient1", "A", null),
+            new Ingredient("TestIngredient2", "B") {},
+            declared("TestIngredient3", "C", null)
+        ));
+
+        assertArrayEquals(new int[][]{{}, {0}, {1}}, dependencies);
+    }
+
+    @Test
+    public void testOf_branchesOfParallelRecipeDoNotDependOnEachOther() {
+        int[][] dependencies = dependencies(Recipe.prepare(
+            Recipe.parallel(
+                new Ingredient("TestIngredient1", "A") {},
+                Recipe.prepare(
+                    new Ingredient("TestIngredient2", "B") {},
+                    new Ingredient("TestIngredient3", "C") {}
+                )
+            ),
+            new Ingredient("TestIngredient4", "D") {}
+        ));
+
+        assertArrayEquals(new int[][]{{}, {}, {1}, {0, 1, 2}}, dependencies);
+    }
+
+    private int[][] dependencies(Recipe recipe) {
+        return new SegmentDependencies(recipe).of(recipe.segment());
+    }
+
+    // an ingredient that only reads or publishes the given key
+    private Ingredient declared(String type, String domain, String access, String... keys) {
+        List<String> reads = "reads".equals(access) ? Arrays.asList(keys) : Arrays.asList();
+        List<String> publishes = "publishes".equals(access) ? Arrays.asList(keys) : Arrays.asList();
+        return new Ingredient(type, domain) {
+            @Override
+            public List<String> getCakeReads() {
+                return reads;
+            }
+
+            @Override
+            public List<String> getCakePublishes() {
+                return publishes;
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SegmentOptimizerTest {
+    @Test
+    public void testOptimize_mergesIndependentIngredientsOfSameDomain() {
+        Recipe recipe = Recipe.prepare(
+            declared("TestIngredient1", "A"),
+            declared("TestIngredient2", "B"),
+            declared("TestIngredient3", "A"),
+            declared("TestIngredient4", "B")
+        );
+
+        BakePlan plan = recipe.optimizedPlan();
+        assertEquals("A:null[TestIngredient1,TestIngredient3] B:null[TestIngredient2,TestIngredient4]", describe(plan.getSegments()));
+        assertEquals(2, plan.getRoundTrips());
+        assertEquals(2, plan.getRoundTripsSaved());
+    }
+
+    @Test
+    public void testOptimize_doesNotMoveIngredientBeforeIngredientPublishingKeyItReads() {
+        Recipe recipe = Recipe.prepare(
+            declared("TestIngredient1", "A"),
+            declared("TestIngredient2", "B", "publishes", "user.id"),
+            declared("TestIngredient3", "A", "reads", "id")
+        );
+
+        BakePlan plan = recipe.optimizedPlan();
+        assertEquals(describe(recipe.segment()), describe(plan.getSegments()));
+        assertEquals(0, plan.getRoundTripsSaved());
+    }
+
+    @Test
+    public void testOptimize_doesNotReorderIngredientsPublishingSameKey() {
+        Recipe recipe = Recipe.prepare(
+            declared("TestIngredient1", "A", "publishes", "user"),
+            declared("TestIngredient2", "B", "publishes", "user.id"),
+            declared("TestIngredient3", "A")
+        );
+
+        BakePlan plan = recipe.optimizedPlan();
+        assertEquals("A:null[TestIngredient1,TestIngredient3] B:null[TestIngredient2]", describe(plan.getSegments()));
+
+        Recipe conflicting = Recipe.prepare(
+            declared("TestIngredient1", "A"),
+            declared("TestIngredient2", "B", "publishes", "user.id"),
+            declared("TestIngredient3", "A", "publishes", "user")
+        );
+        assertEquals(0, conflicting.optimizedPlan().getRoundTripsSaved());
+    }
+
+    @Test
+    public void testOptimize_doesNotMoveIngredientsPastUndeclaredIngredient() {
+        Recipe recipe = Recipe.prepare(
+            declared("TestIngredient1", "A"),
+            new Ingredient("TestIngredient2", "B") {},
+            declared("TestIngredient3", "A")
+        );
+
+        BakePlan plan = recipe.optimizedPlan();
+        assertEquals(describe(recipe.segment()), describe(plan.getSegments()));
+        assertEquals(0, plan.getRoundTripsSaved());
+    }
+
+    @Test
+    public void testOptimize_keepsIngredientsInTheirContext() {
+        Recipe recipe = Recipe.prepare(
+            Recipe.context("user",
+                declared("TestIngredient1", "A"),
+                declared("TestIngredient2", "B"),
+                declared("TestIngredient3", "A")
+            )
+        );
+
+        BakePlan plan = recipe.optimizedPlan();
+        assertEquals("A:null[user[TestIngredient1,TestIngredient3]] B:null[user[TestIngredient2]]", describe(plan.getSegments()));
+        assertEquals(1, plan.getRoundTripsSaved());
+    }
+
+    @Test
+    public void testOptimize_keyedIngredientsPublishTheirKey() {
+        Recipe independent = Recipe.prepare(
+            declared("TestIngredient1", "B"),
+            keyed("TestIngredient2", "A", "other"),
+            Recipe.context("user",
+                declared("TestIngredient3", "B")
+            )
+        );
+        assertEquals("B:null[TestIngredient1,user[TestIngredient3]] A:null[TestIngredient2]", describe(independent.optimizedPlan().getSegments()));
+
+        Recipe dependent = Recipe.prepare(
+            declared("TestIngredient1", "B"),
+            keyed("TestIngredient2", "A", "user"),
+            Recipe.context("user",
+                declared("TestIngredient3", "B")
+            )
+        );
+        assertEquals(describe(dependent.segment()), describe(dependent.optimizedPlan().getSegments()));
+    }
+
+    @Test
+    public void testOptimize_qualifiesPublishedKeysWithContext() {
+        Recipe independent = Recipe.prepare(
+            declared("TestIngredient1", "A"),
+            declared("TestIngredient2", "B", "reads", "other.user"),
+            declared("TestIngredient3", "A"),
+            Recipe.context("group",
+                declared("TestIngredient4", "A", "publishes", "user")
+            )
+        );
+        assertEquals("A:null[TestIngredient1,TestIngredient3,group[TestIngredient4]] B:null[TestIngredient2]", describe(independent.optimizedPlan().getSegments()));
+
+        Recipe dependent = Recipe.prepare(
+            declared("TestIngredient1", "A"),
+            declared("TestIngredient2", "B", "reads", "group.user"),
+            declared("TestIngredient3", "A"),
+            Recipe.context("group",
+                declared("TestIngredient4", "A", "publishes", "user")
+            )
+        );
+        assertEquals(0, dependent.optimizedPlan().getRoundTripsSaved());
+    }
+
+    @Test
+    public void testOptimize_movesFrozenRecipeAsAWhole() {
+        Recipe frozen = Recipe.context("shared",
+            declared("TestIngredient3", "B"),
+            declared("TestIngredient4", "B")
+        );
+        frozen.freeze();
+
+        Recipe recipe = Recipe.prepare(
+            declared("TestIngredient1", "B"),
+            declared("TestIngredient2", "A"),
+            frozen
+        );
+
+        BakePlan plan = recipe.optimizedPlan();
+        assertEquals("B:null[TestIngredient1,shared[TestIngredient3,TestIngredient4]] A:null[TestIngredient2]", describe(plan.getSegments()));
+        assertEquals(1, plan.getRoundTripsSaved());
+    }
+
+    private Ingredient declared(String type, String domain) {
+        return declared(type, domain, null, null);
+    }
+
+    // an ingredient that only reads or publishes the given keys
+    private Ingredient declared(String type, String domain, String access, String key) {
+        List<String> reads = "reads".equals(access) ? Arrays.asList(key) : Arrays.asList();
+        List<String> publishes = "publishes".equals(access) ? Arrays.asList(key) : Arrays.asList();
+        return new Ingredient(type, domain) {
+            @Override
+            public List<String> getCakeReads() {
+                return reads;
+            }
+
+            @Override
+            public List<String> getCakePublishes() {
+                return publishes;
+            }
+        };
+    }
+
+    private Ingredient keyed(String type, String domain, String key) {
+        return new KeyedIngredient(type, domain) {
+            @Override
+            public List<String> getCakeReads() {
+                return Arrays.asList();
+            }
+
+            @Override
+            public List<String> getCakePublishes() {
+                return Arrays.asList();
+            }
+        }.keyed(key);
+    }
+
+    private String describe(List<Recipe.Segment> segments) {
+        return segments.stream().map(segment -> segment.domain + ":" + describe(segment.recipe)).collect(Collectors.joining(" "));
+    }
+
+    private String describe(Ingredient ingredient) {
+        if (!(ingredient instanceof Recipe)) {
+            return ingredient.getIngredientType();
+        }
+        Recipe recipe = (Recipe)ingredient;
+        return recipe.getContext() + recipe.getIngredients().stream().map(this::describe).collect(Collectors.joining(",", "[", "]"));
+    }
+}
@@ -0,0 +1,64 @@
+package ca.derekcormier.recipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+
+public class SubtypeRegistryTest {
+    private final SubtypeRegistry registry = new SubtypeRegistry();
+
+    @Test
+    public void testMapperFor_registeredSubtypesShareMapper() {
+        ObjectMapper mapper = registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")});
+
+        assertSame(mapper, registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")}));
+        assertSame(mapper, registry.mapperFor(new NamedType[0]));
+    }
+
+    @Test
+    public void testMapperFor_newSubtypesKeepEarlierSubtypes() throws Exception {
+        registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")});
+        ObjectMapper mapper = registry.mapperFor(new NamedType[]{new NamedType(Ingredient2.class, "Ingredient2")});
+
+        assertEquals("{\"Ingredient1\":{}}", mapper.writeValueAsString(new Ingredient1()));
+        assertEquals("{\"Ingredient2\":{}}", mapper.writeValueAsString(new Ingredient2()));
+        assertSame(mapper, registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")}));
+    }
+
+    @Test
+    public void testMapperFor_classWithOtherTypeNameGetsMapperOfItsOwn() throws Exception {
+        ObjectMapper mapper = registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")});
+        ObjectMapper otherMapper = registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Other")});
+
+        assertNotSame(mapper, otherMapper);
+        assertEquals("{\"Other\":{}}", otherMapper.writeValueAsString(new Ingredient1()));
+        assertSame(mapper, registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")}));
+    }
+
+    @Test
+    public void testMapperFor_codecMapperKeepsSubtypesOfMapper() throws Exception {
+        ObjectMapper mapper = registry.mapperFor(new NamedType[]{new NamedType(Ingredient1.class, "Ingredient1")});
+        ObjectMapper smileMapper = registry.mapperFor(mapper, PayloadCodec.SMILE);
+
+        assertSame(smileMapper, registry.mapperFor(mapper, PayloadCodec.SMILE));
+        assertSame(registry.mapperFor(mapper, PayloadCodec.JSON), registry.mapperFor(mapper, PayloadCodec.JSON));
+        assertEquals("{\"Ingredient1\":{}}", mapper.writeValueAsString(smileMapper.readTree(smileMapper.writeValueAsBytes(new Ingredient1()))));
+    }
+
+    private static class Ingredient1 extends Ingredient {
+        Ingredient1() {
+            super("Ingredient1", "A");
+        }
+    }
+
+    private static class Ingredient2 extends Ingredient {
+        Ingredient2() {
+            super("Ingredient2", "A");
+        }
+    }
+}